@@ -1,14 +1,25 @@
 package com.mystic.tarotboard;
 
+import com.mystic.tarotboard.board.BoardSnapshot;
+import com.mystic.tarotboard.board.SnapshotCodec;
 import com.mystic.tarotboard.items.Cards;
 import com.mystic.tarotboard.items.Chips;
 import com.mystic.tarotboard.items.Dice;
+import com.mystic.tarotboard.network.BoardHash;
+import com.mystic.tarotboard.network.BoardSnapshots;
+import com.mystic.tarotboard.network.DeckOrders;
+import com.mystic.tarotboard.network.EncodedMessage;
 import com.mystic.tarotboard.network.NetworkMessage;
 import com.mystic.tarotboard.network.NetworkMessage.Msg;
+import com.mystic.tarotboard.network.PileRegistry;
 import com.mystic.tarotboard.network.ServerAddress;
+import com.mystic.tarotboard.network.SyncChunks;
 import com.mystic.tarotboard.network.UpdateManager;
+import com.mystic.tarotboard.network.client.ChunkedSync;
 import com.mystic.tarotboard.network.client.GameClient;
+import com.mystic.tarotboard.network.client.InboundMessagePump;
 import com.mystic.tarotboard.network.server.GameServer;
+import com.mystic.tarotboard.network.server.RoomServer;
 import com.mystic.tarotboard.scenes.GameScene;
 import com.mystic.tarotboard.scenes.HostGameScene;
 import com.mystic.tarotboard.scenes.JoinGameScene;
@@ -21,6 +32,7 @@ import com.mystic.tarotboard.utils.CardCatalog;
 import com.mystic.tarotboard.utils.CardDataHelper;
 import com.mystic.tarotboard.utils.LogWindow;
 import com.mystic.tarotboard.utils.OcclusionCuller;
+import com.mystic.tarotboard.utils.PieceHandles;
 import com.mystic.tarotboard.utils.PlatformPaths;
 import com.mystic.tarotboard.utils.SaveData;
 import com.mystic.tarotboard.utils.Styles;
@@ -34,6 +46,7 @@ import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.geometry.Bounds;
 import javafx.geometry.Point2D;
 import javafx.geometry.Pos;
 import javafx.geometry.Rectangle2D;
@@ -46,6 +59,8 @@ import javafx.scene.image.ImageView;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Text;
+import javafx.scene.transform.NonInvertibleTransformException;
+import javafx.scene.transform.Transform;
 import javafx.stage.FileChooser;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
@@ -55,6 +70,7 @@ import java.io.ByteArrayInputStream;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -105,6 +121,28 @@ public class TarotBoard extends Application {
     private static final double CARD_HEIGHT = 200;
     /** Stand-in stored as the saved server address when the session was hosted, not joined. */
     private static final String HOST_SAVE_MARKER = "HOST";
+    // The save's properties, kept beside the board itself; see BoardSnapshot.
+    private static final String SAVE_RESHUFFLED = "reshuffled";
+    private static final String SAVE_CARD_FRONT = "customCardFrontPath";
+    private static final String SAVE_CARD_BACK = "customCardBackPath";
+    private static final String SAVE_CHIP_FRONT = "customChipFrontPath";
+    private static final String SAVE_CHIP_BACK = "customChipBackPath";
+    private static final String SAVE_BACKGROUND = "customBackgroundPath";
+    private static final String SAVE_THEME = "theme";
+    private static final String SAVE_MULTIPLAYER = "multiplayer";
+    private static final String SAVE_SERVER_IP = "serverIp";
+    private static final String SAVE_SERVER_PORT = "serverPort";
+
+    /** Appended to the in-game network status while this client's sends are backed up. */
+    private static final String SEND_BACKLOG_TAG = " [Slow connection]";
+    /** Matches what {@link #showSyncProgress} appends to the in-game network status. */
+    private static final String SYNC_PROGRESS_TAG = " \\[Loading table \\d+%]";
+    /** Board messages a hosted game keeps for joiners resuming after a dropped connection. */
+    private static final int HOST_RESUME_LOG_SIZE = 4096;
+    /** How long a joined player keeps trying to get back into a game whose connection dropped. */
+    private static final long RECONNECT_WINDOW_MS = 30_000;
+    /** Pause between reconnect attempts. */
+    private static final long RECONNECT_RETRY_MS = 1_000;
     private static Stage primaryStage;
     private GameScene gameScene;
     private StartScene startScene;
@@ -118,6 +156,11 @@ public class TarotBoard extends Application {
     private final List<Dice> dice = new ArrayList<>();
     private static boolean reshuffled = false;
     private static final ObservableList<String> cardNames = FXCollections.observableArrayList();
+    /**
+     * The seed {@link #cardNames} was dealt from, so a host can send the deck as just that; null
+     * once the deck has come from anywhere else — a save, or another player.
+     */
+    private Long deckSeed;
     private Color currentColor = Color.WHITE;
     private ThemeConfiguration currentCardTheme = initDefaultTheme();
 
@@ -133,10 +176,10 @@ public class TarotBoard extends Application {
     private String customChipBackPath = null;
     private String customBackgroundPath = null;
 
-    private static final double DEFAULT_DECK_X = 50;
-    private static final double DEFAULT_DECK_Y = 50;
+    private static final double DEFAULT_DECK_X = CardCatalog.DECK_X;
+    private static final double DEFAULT_DECK_Y = CardCatalog.DECK_Y;
 
-    /** Node property under which every piece pane carries its own piece id. */
+    /** Node property under which every piece pane carries its own piece handle, as an Integer. */
     private static final String PIECE_ID_KEY = "tb_pieceId";
 
     private GameServer gameServer;
@@ -159,11 +202,47 @@ public class TarotBoard extends Application {
     private boolean isOperator;
     private byte[] myCursorImage;
     private final Map<Integer, RemoteCursor> remoteCursors = new HashMap<>();
-    private final Map<String, StackPane> pieceMap = new HashMap<>();
+    /** Carries messages from the network threads onto the FX thread, a pulse's worth at a time. Made in {@link #start}. */
+    private InboundMessagePump inbound;
+    /**
+     * Every piece pane on the board indexed by its handle (see {@link PieceHandles}): cards at
+     * their deck index, chips and dice above them. A network move finds its piece here by array
+     * index. Grown on demand; a null slot is a handle with no piece behind it.
+     */
+    private StackPane[] pieceByHandle = new StackPane[NUM_CARDS + 64];
     private final List<NetworkMessage.PlayerInfo> playerList = new ArrayList<>();
-    private final Map<String, Long> lastPieceMoveTime = new HashMap<>();
+    /** When each piece last sent a throttled move, indexed and grown like {@link #pieceByHandle}. */
+    private long[] lastPieceMoveTime = new long[NUM_CARDS + 64];
+    /**
+     * The spawn handles this player may still give out: {@code spawnHandleNext} up to but not
+     * including {@code spawnHandleEnd}. Offline that is everything above the deck; a joined
+     * client only has what the server last granted it. A host asks its own server directly.
+     */
+    private int spawnHandleNext = PieceHandles.FIRST_SPAWNED;
+    private int spawnHandleEnd = PieceHandles.MAX_HANDLE;
+    /** Whether a {@link Msg.HandleRequest} is in flight, so a burst of spawns only asks once. */
+    private boolean handleRequestPending;
     /** Single throttle clock for a pile drag: the whole pile shares one send, so one timestamp. */
     private long lastPileMoveTime;
+    /**
+     * The pile of the drag in progress and the number its {@link Msg.PileGrab} gave it, or -1 if
+     * it holds no cards and nothing was sent. A new gesture resolves a new list, which is how a
+     * frame tells it is the first of its drag.
+     */
+    private List<StackPane> draggedPile;
+    private int draggedPileId = -1;
+    private int pileCounter;
+    /** The pile each other player is dragging, for applying their {@link Msg.PileMove}s. */
+    private final PileRegistry remotePiles = new PileRegistry();
+    /** The board sync arriving from the server, chunk by chunk, and what has changed live meanwhile. */
+    private final ChunkedSync boardSync = new ChunkedSync();
+    /**
+     * The dropped client a reconnect is under way for, or null. Read by the reconnect thread,
+     * which gives up once this is no longer its client.
+     */
+    private volatile GameClient reconnectingFor;
+    /** The room of a multi-room server last joined, or empty; reconnects ask for it again. */
+    private volatile String joinRoom = "";
     /** Keeps the stacked-away bulk of the deck out of the render and pick passes. */
     private OcclusionCuller cardCuller;
 
@@ -307,6 +386,7 @@ public class TarotBoard extends Application {
         }
 
         TarotBoard.primaryStage = primaryStage;
+        inbound = new InboundMessagePump(this::handleNetworkMessage);
         Rectangle2D screenBounds = Screen.getPrimary().getVisualBounds();
         double baseWidth = DESIGN_WIDTH;
         double baseHeight = DESIGN_HEIGHT;
@@ -322,7 +402,7 @@ public class TarotBoard extends Application {
         updateStartSceneBackground();
 
         CardDataHelper.addCardNames(cardNames, wilds, suits, values);
-        CardDataHelper.generateShuffledCardNames(cardNames);
+        deckSeed = CardDataHelper.generateShuffledCardNames(cardNames);
         cards = new Cards[NUM_CARDS];
 
         // Building all NUM_CARDS (thousands) of card panes takes a couple of seconds. Doing it here,
@@ -409,7 +489,7 @@ public class TarotBoard extends Application {
      *
      * <p>Pieces overlap heavily, most of all on the deck, so the search walks the game
      * content's children from last to first: the last child is the one drawn on top, and
-     * so the one the player is pointing at. Scanning {@code pieceMap} instead would hand
+     * so the one the player is pointing at. Scanning the piece table instead would hand
      * back whichever overlapping piece the hash order reached first.</p>
      *
      * @param mouseX the scene X coordinate
@@ -420,10 +500,10 @@ public class TarotBoard extends Application {
         List<Node> content = gameScene.getGameContent().getChildren();
         for (int i = content.size() - 1; i >= 0; i--) {
             Node node = content.get(i);
-            // A piece is known by the id its own pane carries. Collecting the piece map into
+            // A piece is known by the handle its own pane carries. Collecting the piece map into
             // a set to test against rebuilt a set of every piece on the board on each call,
             // and this runs on every click, keypress and touch.
-            if (!(node instanceof StackPane pane) || pieceIdOf(pane) == null) continue;
+            if (!(node instanceof StackPane pane) || pieceIdOf(pane) < 0) continue;
             // A piece the culler has hidden is one an identical piece is sitting on top of;
             // that top piece is reached first and is the one the player is pointing at.
             if (!pane.isVisible()) continue;
@@ -461,6 +541,10 @@ public class TarotBoard extends Application {
             Color c = hostGameScene.getPlayerColorPicker().getValue();
             GameServer server = new GameServer(requestedPort, name, c.getRed(), c.getGreen(), c.getBlue());
             gameServer = server;
+            // The chips and dice already on the board keep their handles; joiners must not be
+            // granted any of them.
+            server.reserveHandlesBelow(Math.max(spawnHandleNext, pieceHandleBound()));
+            server.setResumeLog(HOST_RESUME_LOG_SIZE);
             // The bound port is the one that matters: with port 0 the OS picks it, so the
             // requested port is not what players need to connect to.
             int port = server.getPort();
@@ -475,7 +559,8 @@ public class TarotBoard extends Application {
             playerList.clear();
             playerList.addAll(gameServer.getPlayers());
 
-            gameServer.setOnMessage(msg -> Platform.runLater(() -> handleNetworkMessage(msg)));
+            inbound.start();
+            gameServer.setOnMessage(inbound::offer);
             server.setOnPortForwarded(external -> Platform.runLater(() -> onPortForwarded(server, port, external)));
             gameServer.start();
             startHostAutosave();
@@ -529,14 +614,22 @@ public class TarotBoard extends Application {
         // connect and ask for state, in case the deferred warm-up has not run yet.
         ensureCardsBuilt();
         if (gameClient != null && gameClient.isConnected()) leaveGame();
-        String name = joinGameScene.getPlayerNameField().getText().trim();
-        if (name.isEmpty()) name = "Player";
+        reconnectingFor = null;
         ServerAddress address;
+        String room;
         try {
             // The port field is only a fallback: an address like "eu.example.com:7777" carries
-            // the port a hosting provider allocated, and that wins.
+            // the port a hosting provider allocated, and that wins. A "/name" after it picks a
+            // room of a server that hosts several tables.
+            String text = joinGameScene.getJoinAddressField().getText().trim();
+            int slash = text.indexOf('/');
+            room = slash < 0 ? "" : text.substring(slash + 1).trim();
+            if (!room.isEmpty() && !RoomServer.isValidName(room)) {
+                throw new IllegalArgumentException("Room names are letters, digits, '-' and '_', up to "
+                        + RoomServer.MAX_NAME_LENGTH + " of them");
+            }
             int fallbackPort = ServerAddress.parsePort(joinGameScene.getJoinPortField().getText());
-            address = ServerAddress.parse(joinGameScene.getJoinAddressField().getText(), fallbackPort);
+            address = ServerAddress.parse(slash < 0 ? text : text.substring(0, slash), fallbackPort);
         } catch (IllegalArgumentException e) {
             joinGameScene.getNetworkStatusLabel().setText(e.getMessage());
             joinGameScene.getNetworkStatusLabel().setStyle(Styles.mpStatusErr());
@@ -545,20 +638,21 @@ public class TarotBoard extends Application {
         String ip = address.host();
         int port = address.port();
         // Reflect what we actually parsed, so a pasted "host:port" splits into the two fields.
-        joinGameScene.getJoinAddressField().setText(ip);
+        joinGameScene.getJoinAddressField().setText(room.isEmpty() ? ip : ip + "/" + room);
         joinGameScene.getJoinPortField().setText(String.valueOf(port));
         try {
-            gameClient = new GameClient(ip, port);
+            gameClient = new GameClient(ip, port, room);
+            joinRoom = room;
             isHost = false;
             isMultiplayer = true;
+            // Spawn handles now come only from this server's grants; the first is already on its way.
+            spawnHandleNext = spawnHandleEnd = 0;
+            handleRequestPending = true;
 
-            gameClient.setOnMessage(msg -> Platform.runLater(() -> handleNetworkMessage(msg)));
+            inbound.start();
+            attach(gameClient, ip, port);
             gameClient.start();
-
-            Color pc = joinGameScene.getPlayerColorPicker().getValue();
-            gameClient.send(NetworkMessage.of(new Msg.PlayerJoin(name, pc.getRed(), pc.getGreen(), pc.getBlue())));
-
-            gameClient.send(NetworkMessage.of(new Msg.SendState(myPlayerId)));
+            sendPlayerJoin();
 
             joinGameScene.getNetworkStatusLabel().setText("Connected to " + ip + ":" + port);
             joinGameScene.getNetworkStatusLabel().setStyle(Styles.mpStatusOk());
@@ -569,6 +663,9 @@ public class TarotBoard extends Application {
 
             primaryStage.setScene(gameScene.getScene());
             primaryStage.setTitle("Game Scene - Connected to " + ip + ":" + port);
+
+            // Asked for only now the board is on screen, so it can say what part of it shows.
+            requestBoard();
         } catch (IOException e) {
             failJoin("Failed to connect: " + e.getMessage(), e);
         } catch (Throwable t) {
@@ -579,6 +676,108 @@ public class TarotBoard extends Application {
         }
     }
 
+    /** Routes a joined client's messages, backlog and dropped connection to this board. */
+    private void attach(GameClient client, String ip, int port) {
+        client.setOnMessage(inbound::offer);
+        client.setOnBackpressure(backlogged -> Platform.runLater(() -> {
+            if (gameClient == client) showSendBacklog(backlogged);
+        }));
+        client.setOnConnectionLost(() -> Platform.runLater(() -> {
+            if (gameClient == client) reconnect(client, ip, port);
+        }));
+    }
+
+    /** Introduces this player to the server, with the name and colour from the join screen. */
+    private void sendPlayerJoin() {
+        String name = joinGameScene.getPlayerNameField().getText().trim();
+        if (name.isEmpty()) name = "Player";
+        Color pc = joinGameScene.getPlayerColorPicker().getValue();
+        gameClient.send(NetworkMessage.of(new Msg.PlayerJoin(name, pc.getRed(), pc.getGreen(), pc.getBlue())));
+    }
+
+    /**
+     * Asks the server for the board, the part of it on screen first. Only what differs from the
+     * board already here is sent: after a dropped connection, or a re-join from a save, that is
+     * usually a small part of it.
+     */
+    private void requestBoard() {
+        Bounds view = gameScene.visibleBoardBounds();
+        var request = new Msg.SendState(myPlayerId, view.getMinX(), view.getMinY(), view.getWidth(), view.getHeight());
+        gameClient.send(NetworkMessage.of(BoardHash.of(boardSnapshot()).request(request)));
+    }
+
+    /**
+     * Tries to get back into the game after the connection to it dropped, for up to
+     * {@link #RECONNECT_WINDOW_MS}.
+     * <p>
+     * A blip used to end the session: the player had to join again, as a new player, and wait
+     * for the whole board. Now the board stays up while a background thread reconnects, and the
+     * new connection {@link GameClient#resume resumes} as the old player, so the server sends
+     * only what was missed. If the server cannot do that — it keeps no log, too much happened
+     * meanwhile, or the board was still arriving when the connection dropped — the player joins
+     * again and is sent the board, without having had to do anything.
+     */
+    private void reconnect(GameClient lost, String ip, int port) {
+        Msg.Resume resume = lost.getResumeToken() != 0 && !boardSync.active()
+                ? new Msg.Resume(lost.getPlayerId(), lost.getResumeToken(), lost.getLastSeq()) : null;
+        reconnectingFor = lost;
+        gameScene.getNetworkStatusInGame().setText("Connection lost, reconnecting to " + ip + ":" + port + "...");
+        System.out.println("Connection to " + ip + ":" + port + " lost; reconnecting");
+        Thread t = new Thread(() -> {
+            long deadline = System.currentTimeMillis() + RECONNECT_WINDOW_MS;
+            while (reconnectingFor == lost && System.currentTimeMillis() < deadline) {
+                try {
+                    GameClient client = new GameClient(ip, port, joinRoom);
+                    Platform.runLater(() -> reconnected(lost, client, resume, ip, port));
+                    return;
+                } catch (IOException e) {
+                    try {
+                        Thread.sleep(RECONNECT_RETRY_MS);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+            }
+            Platform.runLater(() -> {
+                if (gameClient != lost) return;
+                leaveGame();
+                joinGameScene.getNetworkStatusLabel().setText("Lost connection to " + ip + ":" + port);
+                joinGameScene.getNetworkStatusLabel().setStyle(Styles.mpStatusErr());
+            });
+        }, "tarotboard-reconnect");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Takes a reconnected client into use, unless the player has left or joined elsewhere meanwhile. */
+    private void reconnected(GameClient lost, GameClient client, Msg.Resume resume, String ip, int port) {
+        if (gameClient != lost) {
+            client.disconnect();
+            return;
+        }
+        reconnectingFor = null;
+        gameClient = client;
+        attach(client, ip, port);
+        if (resume != null) client.resume(resume);
+        client.start();
+        gameScene.getNetworkStatusInGame().setText("Connected to " + ip + ":" + port);
+        if (resume == null) {
+            sendPlayerJoin();
+            requestBoard();
+        }
+    }
+
+    private void handleResumeResult(Msg.ResumeResult r) {
+        if (r.resumed()) {
+            System.out.println("Resumed as player " + myPlayerId);
+            return;
+        }
+        // The server has welcomed this connection as a new player; introduce it and catch up in full.
+        System.out.println("Could not resume; fetching the board again");
+        sendPlayerJoin();
+        requestBoard();
+    }
+
     private void failJoin(String status, Throwable cause) {
         cause.printStackTrace();
         if (gameClient != null) {
@@ -605,6 +804,7 @@ public class TarotBoard extends Application {
      *                  snapshot records the multiplayer details needed to offer a re-join.
      */
     private void leaveGame(boolean saveBoard) {
+        reconnectingFor = null;
         if (gameClient != null) {
             gameClient.disconnect();
             gameClient = null;
@@ -613,12 +813,20 @@ public class TarotBoard extends Application {
             gameServer.stop();
             gameServer = null;
         }
+        inbound.stop();
+        remotePiles.clear();
+        boardSync.reset();
+        draggedPile = null;
         stopHostAutosave();
         isMultiplayer = false;
         isHost = false;
         isOperator = false;
         myPlayerId = -1;
         operators.clear();
+        // Back offline every handle above the board's pieces is free again.
+        spawnHandleNext = pieceHandleBound();
+        spawnHandleEnd = PieceHandles.MAX_HANDLE;
+        handleRequestPending = false;
         for (var cursor : remoteCursors.values()) {
             cursor.removeFrom(gameScene.getCursorOverlay());
         }
@@ -632,6 +840,7 @@ public class TarotBoard extends Application {
             joinGameScene.getNetworkStatusLabel().setText("Offline");
             joinGameScene.getNetworkStatusLabel().setStyle(Styles.mpLabel());
             joinGameScene.getOperatorStatusLabel().setText("");
+            joinGameScene.hideSyncProgress();
         }
         if (gameScene != null) {
             gameScene.getNetworkStatusInGame().setText("");
@@ -719,16 +928,22 @@ public class TarotBoard extends Application {
     }
 
     private void handleNetworkMessage(NetworkMessage msg) {
+        if (boardSync.active()) boardSync.noteLive(msg.data(), remotePiles);
         switch (msg.data()) {
             case Msg.YourId y -> myPlayerId = y.playerId();
+            case Msg.HandleGrant g -> handleHandleGrant(g);
             case Msg.OperatorStatus o -> handleOperatorStatus(o);
             case Msg.PlayerList p -> handlePlayerList(p);
             case Msg.PlayerLeave l -> handlePlayerLeave(l);
             case Msg.CardNamesSync c -> handleCardNamesSync(c);
+            case Msg.DeckOrder d -> handleDeckOrder(d);
             case Msg.CursorMove c -> handleCursorMove(c);
+            case Msg.CursorFrame c -> handleCursorFrame(c);
             case Msg.CursorImage c -> handleCursorImage(c);
             case Msg.PieceMove m -> handlePieceMove(m);
             case Msg.PieceMoveBatch m -> handlePieceMoveBatch(m);
+            case Msg.PileGrab m -> handlePileGrab(m);
+            case Msg.PileMove m -> handlePileMove(m);
             case Msg.PieceRotate m -> handlePieceRotate(m);
             case Msg.PieceFlip m -> handlePieceFlip(m);
             case Msg.PieceToFront m -> handlePieceToFront(m);
@@ -741,13 +956,23 @@ public class TarotBoard extends Application {
             case Msg.ResetDice m -> handleResetDice(m);
             case Msg.ResetChips m -> handleResetChips(m);
             case Msg.NewGame m -> handleNewGame(m);
-            case Msg.SendState m -> handleSendState(m);
+            case Msg.SendState m -> sendBoard(m.playerId(), sync -> SyncChunks.split(sync, m));
+            case Msg.SendDiff m -> sendBoard(m.playerId(), sync -> SyncChunks.split(sync, m));
+            case Msg.SyncBegin b -> handleSyncBegin(b);
             case Msg.StateSync s -> handleStateSync(s);
+            case Msg.ResumeResult r -> handleResumeResult(r);
             default -> {
             }
         }
     }
 
+    private void handleHandleGrant(Msg.HandleGrant g) {
+        // A grant replaces whatever was left of the previous one; those few handles just go unused.
+        spawnHandleNext = g.first();
+        spawnHandleEnd = g.first() + g.count();
+        handleRequestPending = false;
+    }
+
     private void handleRequestOperator(Msg.RequestOperator m) {
         boolean granted = !hostOperatorPassword.isEmpty() && hostOperatorPassword.equals(m.password());
         if (granted) {
@@ -765,6 +990,8 @@ public class TarotBoard extends Application {
     private void handlePlayerList(Msg.PlayerList p) {
         playerList.clear();
         playerList.addAll(p.players());
+        // A host hears of departures only through the list, never a PlayerLeave.
+        remotePiles.retain(p.players());
         Set<Integer> activeIds = new HashSet<>();
         for (var pi : p.players()) {
             activeIds.add(pi.id());
@@ -790,6 +1017,7 @@ public class TarotBoard extends Application {
     }
 
     private void handlePlayerLeave(Msg.PlayerLeave l) {
+        remotePiles.forget(l.playerId());
         var cursor = remoteCursors.remove(l.playerId());
         if (cursor != null) cursor.removeFrom(gameScene.getCursorOverlay());
     }
@@ -821,6 +1049,17 @@ public class TarotBoard extends Application {
         }
     }
 
+    /**
+     * Tags the in-game network status while sends are queueing up behind a slow connection, the
+     * way {@code [Operator]} is tagged on, so a player whose moves seem not to land can see why.
+     */
+    private void showSendBacklog(boolean backlogged) {
+        if (gameScene == null) return;
+        Label inGame = gameScene.getNetworkStatusInGame();
+        String current = inGame.getText().replace(SEND_BACKLOG_TAG, "");
+        inGame.setText(backlogged ? current + SEND_BACKLOG_TAG : current);
+    }
+
     private void handleCursorMove(Msg.CursorMove m) {
         if (m.playerId() == myPlayerId) return;
         var cursor = remoteCursors.get(m.playerId());
@@ -835,6 +1074,30 @@ public class TarotBoard extends Application {
         }
     }
 
+    private void handleCursorFrame(Msg.CursorFrame f) {
+        int[] ids = f.playerIds();
+        double[] xs = f.x();
+        double[] ys = f.y();
+        // Same mapping as handleCursorMove, but the board-to-overlay transform is worked out
+        // once for the whole frame rather than walked up the scene graph per cursor.
+        Transform toScene = gameScene.getGameContent().getLocalToSceneTransform();
+        Transform toOverlay;
+        try {
+            toOverlay = gameScene.getCursorOverlay().getLocalToSceneTransform().createInverse()
+                    .createConcatenation(toScene);
+        } catch (NonInvertibleTransformException e) {
+            return;
+        }
+        int n = Math.min(ids.length, Math.min(xs.length, ys.length));
+        for (int i = 0; i < n; i++) {
+            if (ids[i] == myPlayerId) continue;
+            var cursor = remoteCursors.get(ids[i]);
+            if (cursor == null) continue;
+            Point2D overlayPt = toOverlay.transform(xs[i], ys[i]);
+            cursor.setPosition(overlayPt.getX(), overlayPt.getY());
+        }
+    }
+
     private void handleCursorImage(Msg.CursorImage m) {
         if (m.playerId() == myPlayerId) return;
         var cursor = remoteCursors.get(m.playerId());
@@ -845,7 +1108,7 @@ public class TarotBoard extends Application {
 
     private void handlePieceMove(Msg.PieceMove m) {
         if (m.playerId() == myPlayerId) return;
-        var pane = pieceMap.get(m.pieceId());
+        var pane = pieceAt(m.piece());
         if (pane != null) {
             pane.setTranslateX(m.x());
             pane.setTranslateY(m.y());
@@ -855,11 +1118,27 @@ public class TarotBoard extends Application {
 
     private void handlePieceMoveBatch(Msg.PieceMoveBatch m) {
         if (m.playerId() == myPlayerId) return;
-        for (String pieceId : m.pieceIds()) {
-            var pane = pieceMap.get(pieceId);
+        movePieces(m.pieces(), m.x(), m.y());
+    }
+
+    private void handlePileGrab(Msg.PileGrab m) {
+        if (m.playerId() == myPlayerId) return;
+        remotePiles.grab(m);
+        movePieces(m.pieces(), m.x(), m.y());
+    }
+
+    private void handlePileMove(Msg.PileMove m) {
+        if (m.playerId() == myPlayerId) return;
+        int[] pieces = remotePiles.resolve(m);
+        if (pieces != null) movePieces(pieces, m.x(), m.y());
+    }
+
+    private void movePieces(int[] pieces, double x, double y) {
+        for (int piece : pieces) {
+            var pane = pieceAt(piece);
             if (pane != null) {
-                pane.setTranslateX(m.x());
-                pane.setTranslateY(m.y());
+                pane.setTranslateX(x);
+                pane.setTranslateY(y);
                 pane.toFront();
             }
         }
@@ -867,7 +1146,7 @@ public class TarotBoard extends Application {
 
     private void handlePieceRotate(Msg.PieceRotate m) {
         if (m.playerId() == myPlayerId) return;
-        var pane = pieceMap.get(m.pieceId());
+        var pane = pieceAt(m.piece());
         if (pane != null) {
             pane.setRotate(m.rotation());
             pane.toFront();
@@ -876,12 +1155,12 @@ public class TarotBoard extends Application {
 
     private void handlePieceFlip(Msg.PieceFlip m) {
         if (m.playerId() == myPlayerId) return;
-        var pane = pieceMap.get(m.pieceId());
+        var pane = pieceAt(m.piece());
         if (pane == null || pane.getChildren().size() < 2) return;
         // Cards stack their images back-then-front, chips the other way round, so the
         // sender's index convention has to be mirrored here or a chip flip lands on the
         // wrong image. A chip pane has no third child; only cards carry the name node.
-        boolean isCard = m.pieceId().startsWith("card:");
+        boolean isCard = PieceHandles.isCard(m.piece());
         pane.getChildren().get(isCard ? 1 : 0).setVisible(m.frontVisible());
         pane.getChildren().get(isCard ? 0 : 1).setVisible(m.backVisible());
         if (pane.getChildren().size() > 2) {
@@ -892,14 +1171,14 @@ public class TarotBoard extends Application {
 
     private void handlePieceToFront(Msg.PieceToFront m) {
         if (m.playerId() == myPlayerId) return;
-        var pane = pieceMap.get(m.pieceId());
+        var pane = pieceAt(m.piece());
         if (pane != null) pane.toFront();
     }
 
     private void handleSpawnChip(Msg.SpawnChip m) {
-        if (m.playerId() == myPlayerId) return;
+        if (m.playerId() == myPlayerId || !isSpawnHandle(m.piece())) return;
         Color color = Color.color(m.red(), m.green(), m.blue(), m.opacity());
-        Chips chip = new Chips(color, bwFrontImage, bwBackImage, m.pieceId());
+        Chips chip = new Chips(color, bwFrontImage, bwBackImage, m.piece());
         StackPane chipPane = chip.getChipPane();
         chipPane.setTranslateX(m.x());
         chipPane.setTranslateY(m.y());
@@ -908,14 +1187,14 @@ public class TarotBoard extends Application {
         chip.getChipPane().getChildren().get(1).setVisible(false);
         chips.add(chip);
         gameScene.getGameContent().getChildren().add(chipPane);
-        pieceMap.put(chip.getPieceId(), chipPane);
+        putPiece(chip.getPieceId(), chipPane);
         gameScene.bringCursorOverlayToFront();
     }
 
     private void handleSpawnDie(Msg.SpawnDie m) {
-        if (m.playerId() == myPlayerId) return;
+        if (m.playerId() == myPlayerId || !isSpawnHandle(m.piece())) return;
         Color color = Color.color(m.red(), m.green(), m.blue(), m.opacity());
-        Dice die = new Dice(m.sides(), color, m.pieceId());
+        Dice die = new Dice(m.sides(), color, m.piece());
         die.setCurrentValue((int) m.value());
         StackPane diePane = die.getPane();
         diePane.setTranslateX(m.x());
@@ -923,23 +1202,25 @@ public class TarotBoard extends Application {
         setupPieceInteractions(diePane, die.getPieceId(), false);
         dice.add(die);
         gameScene.getGameContent().getChildren().add(diePane);
-        pieceMap.put(die.getPieceId(), diePane);
+        putPiece(die.getPieceId(), diePane);
         gameScene.bringCursorOverlayToFront();
     }
 
     private void handleDeletePiece(Msg.DeletePiece m) {
         if (m.playerId() == myPlayerId) return;
-        var pane = pieceMap.remove(m.pieceId());
+        // Cards are never deleted, only sent back to the deck.
+        if (PieceHandles.isCard(m.piece())) return;
+        var pane = removePiece(m.piece());
         if (pane == null) return;
         gameScene.getGameContent().getChildren().remove(pane);
-        chips.removeIf(c -> c.getPieceId().equals(m.pieceId()));
-        dice.removeIf(d -> d.getPieceId().equals(m.pieceId()));
+        chips.removeIf(c -> c.getPieceId() == m.piece());
+        dice.removeIf(d -> d.getPieceId() == m.piece());
     }
 
     private void handleDieRoll(Msg.DieRoll m) {
         if (m.playerId() == myPlayerId) return;
         for (Dice die : dice) {
-            if (die.getPieceId().equals(m.pieceId())) {
+            if (die.getPieceId() == m.piece()) {
                 die.setCurrentValue(m.value());
                 break;
             }
@@ -968,7 +1249,7 @@ public class TarotBoard extends Application {
         if (m.playerId() == myPlayerId) return;
         for (Dice die : dice) {
             gameScene.getGameContent().getChildren().remove(die.getPane());
-            pieceMap.remove(die.getPieceId());
+            removePiece(die.getPieceId());
         }
         dice.clear();
     }
@@ -977,7 +1258,7 @@ public class TarotBoard extends Application {
         if (m.playerId() == myPlayerId) return;
         for (Chips chip : chips) {
             gameScene.getGameContent().getChildren().remove(chip.getChipPane());
-            pieceMap.remove(chip.getPieceId());
+            removePiece(chip.getPieceId());
         }
         chips.clear();
     }
@@ -989,15 +1270,14 @@ public class TarotBoard extends Application {
         } else {
             for (Chips chip : chips) {
                 gameScene.getGameContent().getChildren().remove(chip.getChipPane());
-                pieceMap.remove(chip.getPieceId());
+                removePiece(chip.getPieceId());
             }
             chips.clear();
             for (Dice die : dice) {
                 gameScene.getGameContent().getChildren().remove(die.getPane());
-                pieceMap.remove(die.getPieceId());
+                removePiece(die.getPieceId());
             }
             dice.clear();
-            pieceMap.clear();
             for (int a = 0; a < NUM_CARDS; a++) {
                 if (cards[a] != null) {
                     StackPane pane = cards[a].getCardPane();
@@ -1024,7 +1304,19 @@ public class TarotBoard extends Application {
                     + ". The server is built from a different card list.");
             return;
         }
+        applyCardNames(names, null);
+    }
+
+    private void handleDeckOrder(Msg.DeckOrder m) {
+        // Refused for the same reason as a CardNamesSync of the wrong size, and logged inside.
+        var names = DeckOrders.names(m);
+        if (names != null) applyCardNames(names, m.shuffle() == Msg.DeckOrder.SEEDED ? m.seed() : null);
+    }
+
+    /** Adopts a deck received from the server, relabelling every card to match. */
+    private void applyCardNames(List<String> names, Long seed) {
         cardNames.setAll(names);
+        deckSeed = seed;
         for (int i = 0; i < NUM_CARDS; i++) {
             if (cards[i] == null) continue;
             String logicalName = cardNames.get(i);
@@ -1043,9 +1335,21 @@ public class TarotBoard extends Application {
         }
     }
 
-    private void handleSendState(Msg.SendState m) {
-        if (!isHost) return;
-        gameServer.sendTo(m.playerId(), NetworkMessage.of(new Msg.CardNamesSync(new ArrayList<>(cardNames))));
+    /**
+     * Sends a joiner the deck and the board, or what of the board it asked for.
+     *
+     * @param split cuts the snapshot into what is sent, as {@link SyncChunks} does
+     */
+    private void sendBoard(int playerId, Function<Msg.StateSync, List<NetworkMessage>> split) {
+        if (!isHost || gameServer == null) return;
+        gameServer.sendTo(playerId, DeckOrders.message(cardNames, deckSeed));
+        List<EncodedMessage> frames = new ArrayList<>();
+        for (var chunk : split.apply(boardSnapshot())) frames.add(EncodedMessage.of(chunk));
+        gameServer.sendPaced(playerId, frames);
+    }
+
+    /** Returns the whole board as a full sync would carry it, every card by its index. */
+    private Msg.StateSync boardSnapshot() {
         int nCards = cards.length;
         int[] cardIds = new int[nCards];
         double[] cardX = new double[nCards];
@@ -1056,9 +1360,9 @@ public class TarotBoard extends Application {
         boolean[] cardTextVis = new boolean[nCards];
 
         for (int i = 0; i < nCards; i++) {
+            cardIds[i] = i;
             if (cards[i] == null) continue;
             var pane = cards[i].getCardPane();
-            cardIds[i] = i;
             cardX[i] = pane.getTranslateX();
             cardY[i] = pane.getTranslateY();
             cardRot[i] = pane.getRotate();
@@ -1068,7 +1372,7 @@ public class TarotBoard extends Application {
         }
 
         int nChips = chips.size();
-        String[] chipIds = new String[nChips];
+        int[] chipIds = new int[nChips];
         double[] chipX = new double[nChips];
         double[] chipY = new double[nChips];
         double[] chipRot = new double[nChips];
@@ -1096,7 +1400,7 @@ public class TarotBoard extends Application {
         }
 
         int nDice = dice.size();
-        String[] dieIds = new String[nDice];
+        int[] dieIds = new int[nDice];
         double[] dieX = new double[nDice];
         double[] dieY = new double[nDice];
         double[] dieRot = new double[nDice];
@@ -1123,35 +1427,39 @@ public class TarotBoard extends Application {
             dieO[i] = c.getOpacity();
         }
 
-        var sync = new Msg.StateSync(cardIds, cardX, cardY, cardRot, cardBackVis, cardFrontVis, cardTextVis,
+        return new Msg.StateSync(cardIds, cardX, cardY, cardRot, cardBackVis, cardFrontVis, cardTextVis,
                 chipIds, chipX, chipY, chipRot, chipFrontVis, chipBackVis,
                 chipR, chipG, chipB, chipO,
                 dieIds, dieX, dieY, dieRot, dieSides, dieVals,
                 dieR, dieG, dieB, dieO);
+    }
 
-        if (gameServer != null) {
-            gameServer.sendTo(m.playerId(), NetworkMessage.of(sync));
-        }
+    private void handleSyncBegin(Msg.SyncBegin m) {
+        // The chunks bring back whichever table they carry; what was on the board before is not the table's.
+        if (m.chips()) clearChips();
+        if (m.dice()) clearDice();
+        boardSync.begin(m.chunks());
+        showSyncProgress();
     }
 
+    /**
+     * Applies one chunk of a board sync. Live messages that arrived since the sync began are
+     * newer than any chunk, so the pieces they changed keep what those said; see {@link ChunkedSync}.
+     */
     private void handleStateSync(Msg.StateSync s) {
-        for (Chips chip : chips) {
-            gameScene.getGameContent().getChildren().remove(chip.getChipPane());
-            pieceMap.remove(chip.getPieceId());
-        }
-        chips.clear();
-        for (Dice die : dice) {
-            gameScene.getGameContent().getChildren().remove(die.getPane());
-            pieceMap.remove(die.getPieceId());
-        }
-        dice.clear();
-
-        for (int i = 0; i < s.cardIds().length && i < cards.length; i++) {
-            if (cards[i] == null) continue;
-            var pane = cards[i].getCardPane();
-            pane.setTranslateX(s.cardX()[i]);
-            pane.setTranslateY(s.cardY()[i]);
-            pane.setRotate(s.cardRot()[i]);
+        // Not announced by a SyncBegin: the whole board in one.
+        if (!boardSync.active()) handleSyncBegin(new Msg.SyncBegin(1, true, true));
+
+        for (int i = 0; i < s.cardIds().length; i++) {
+            int id = s.cardIds()[i];
+            if (id < 0 || id >= cards.length || cards[id] == null) continue;
+            var pane = cards[id].getCardPane();
+            if (boardSync.takesMove(id)) {
+                pane.setTranslateX(s.cardX()[i]);
+                pane.setTranslateY(s.cardY()[i]);
+            }
+            if (boardSync.takesRotation(id)) pane.setRotate(s.cardRot()[i]);
+            if (!boardSync.takesFlip(id)) continue;
             if (pane.getChildren().size() >= 2) {
                 pane.getChildren().get(0).setVisible(s.cardBackVis()[i]);
                 pane.getChildren().get(1).setVisible(s.cardFrontVis()[i]);
@@ -1162,6 +1470,9 @@ public class TarotBoard extends Application {
         }
 
         for (int i = 0; i < s.chipIds().length; i++) {
+            // Already here if it was spawned live after the snapshot was taken.
+            if (!isSpawnHandle(s.chipIds()[i]) || pieceAt(s.chipIds()[i]) != null
+                    || !boardSync.takesChip(s.chipIds()[i])) continue;
             Color color = Color.color(s.chipR()[i], s.chipG()[i], s.chipB()[i], s.chipO()[i]);
             Chips chip = new Chips(color, bwFrontImage, bwBackImage, s.chipIds()[i]);
             StackPane chipPane = chip.getChipPane();
@@ -1173,10 +1484,12 @@ public class TarotBoard extends Application {
             setupPieceInteractions(chipPane, chip.getPieceId(), true);
             chips.add(chip);
             gameScene.getGameContent().getChildren().add(chipPane);
-            pieceMap.put(chip.getPieceId(), chipPane);
+            putPiece(chip.getPieceId(), chipPane);
         }
 
         for (int i = 0; i < s.dieIds().length; i++) {
+            if (!isSpawnHandle(s.dieIds()[i]) || pieceAt(s.dieIds()[i]) != null
+                    || !boardSync.takesDie(s.dieIds()[i])) continue;
             Color color = Color.color(s.dieR()[i], s.dieG()[i], s.dieB()[i], s.dieO()[i]);
             Dice die = new Dice(s.dieSides()[i], color, s.dieIds()[i]);
             die.setCurrentValue(s.dieVals()[i]);
@@ -1187,18 +1500,50 @@ public class TarotBoard extends Application {
             setupPieceInteractions(diePane, die.getPieceId(), false);
             dice.add(die);
             gameScene.getGameContent().getChildren().add(diePane);
-            pieceMap.put(die.getPieceId(), diePane);
+            putPiece(die.getPieceId(), diePane);
         }
 
+        boardSync.chunkApplied();
+        showSyncProgress();
         gameScene.bringCursorOverlayToFront();
     }
 
-    private void setupPieceInteractions(StackPane pane, String pieceId, boolean isChipOrCard) {
-        // The pane carries its own id, so the handlers below can name the piece they are
+    private void clearChips() {
+        for (Chips chip : chips) {
+            gameScene.getGameContent().getChildren().remove(chip.getChipPane());
+            removePiece(chip.getPieceId());
+        }
+        chips.clear();
+    }
+
+    private void clearDice() {
+        for (Dice die : dice) {
+            gameScene.getGameContent().getChildren().remove(die.getPane());
+            removePiece(die.getPieceId());
+        }
+        dice.clear();
+    }
+
+    /** Shows how far the board sync has got, on the join screen and in the in-game status. */
+    private void showSyncProgress() {
+        Label inGame = gameScene.getNetworkStatusInGame();
+        String current = inGame.getText().replaceAll(SYNC_PROGRESS_TAG, "");
+        if (boardSync.active()) {
+            joinGameScene.showSyncProgress(boardSync.applied(), boardSync.total());
+            int percent = 100 * boardSync.applied() / boardSync.total();
+            inGame.setText(current + " [Loading table " + percent + "%]");
+        } else {
+            joinGameScene.hideSyncProgress();
+            inGame.setText(current);
+        }
+    }
+
+    private void setupPieceInteractions(StackPane pane, int pieceId, boolean isChipOrCard) {
+        // The pane carries its own handle, so the handlers below can name the piece they are
         // acting on without searching the board for it. The searches this replaces ran per
         // event and per pile member, over a deck of thousands.
         pane.getProperties().put(PIECE_ID_KEY, pieceId);
-        if (pieceId.startsWith("card:")) {
+        if (PieceHandles.isCard(pieceId)) {
             cardCuller.track(pane);
         }
 
@@ -1213,24 +1558,40 @@ public class TarotBoard extends Application {
                     if (!isMultiplayer) return;
                     // One message for the whole pile, not one per card: a per-card send is a
                     // blocking socket write, and thousands of them per frame is exactly what
-                    // made the main pile lag behind the pointer. The throttle also gates the
-                    // id-gathering below, but the resting position must never be dropped by it.
+                    // made the main pile lag behind the pointer. Nor are the pile's handles
+                    // sent more than once: the first frame names them in a PileGrab, and every
+                    // frame after only numbers the pile, however big it is.
+                    if (pile != draggedPile) {
+                        draggedPile = pile;
+                        lastPileMoveTime = System.currentTimeMillis();
+                        int[] handles = new int[pile.size()];
+                        int n = 0;
+                        for (StackPane p : pile) {
+                            int card = cardIndexOf(p);
+                            if (card >= 0) handles[n++] = card;
+                        }
+                        if (n == 0) {
+                            draggedPileId = -1;
+                            return;
+                        }
+                        draggedPileId = pileCounter++ & Integer.MAX_VALUE;
+                        sendNetworkMessage(NetworkMessage.of(new Msg.PileGrab(myPlayerId, draggedPileId,
+                                n == handles.length ? handles : Arrays.copyOf(handles, n), x, y)));
+                        return;
+                    }
+                    if (draggedPileId < 0) return;
+                    // The resting position must never be dropped by the throttle.
                     if (!isFinal) {
                         long now = System.currentTimeMillis();
                         if (now - lastPileMoveTime <= 50) return;
                         lastPileMoveTime = now;
                     }
-                    ArrayList<String> ids = new ArrayList<>(pile.size());
-                    for (StackPane p : pile) {
-                        String id = getCardId(p);
-                        if (id != null) ids.add(id);
-                    }
-                    if (!ids.isEmpty()) sendPieceMoveBatch(ids, x, y);
+                    sendNetworkMessage(NetworkMessage.of(new Msg.PileMove(myPlayerId, draggedPileId, x, y)));
                 }
         );
 
         if (isChipOrCard) {
-            boolean isCard = pieceId.startsWith("card:");
+            boolean isCard = PieceHandles.isCard(pieceId);
             UIUtils.makeFlippableAndRotatable(pane, !isCard,
                     (type, val) -> {
                         if ("rotate".equals(type)) sendPieceRotate(pieceId, val);
@@ -1249,37 +1610,31 @@ public class TarotBoard extends Application {
         this.makeDiscardable(pane, gameScene.getDiscardZone(), pieceId);
     }
 
-    public void sendPieceMove(String pieceId, double x, double y) {
+    public void sendPieceMove(int pieceId, double x, double y) {
         if (!isMultiplayer) return;
         sendNetworkMessage(NetworkMessage.of(new Msg.PieceMove(myPlayerId, pieceId, x, y)));
     }
 
-    public void sendPieceMoveBatch(ArrayList<String> pieceIds, double x, double y) {
-        if (!isMultiplayer) return;
-        sendNetworkMessage(NetworkMessage.of(new Msg.PieceMoveBatch(myPlayerId, pieceIds, x, y)));
-    }
-
-    private void sendPieceMoveThrottled(String pieceId, double x, double y) {
+    private void sendPieceMoveThrottled(int pieceId, double x, double y) {
         if (!isMultiplayer) return;
         long now = System.currentTimeMillis();
-        Long last = lastPieceMoveTime.get(pieceId);
-        if (last == null || now - last > 50) {
-            lastPieceMoveTime.put(pieceId, now);
+        if (pieceId < 0 || pieceId >= lastPieceMoveTime.length || now - lastPieceMoveTime[pieceId] > 50) {
+            if (pieceId >= 0 && pieceId < lastPieceMoveTime.length) lastPieceMoveTime[pieceId] = now;
             sendNetworkMessage(NetworkMessage.of(new Msg.PieceMove(myPlayerId, pieceId, x, y)));
         }
     }
 
-    private void sendPieceRotate(String pieceId, double rotation) {
+    private void sendPieceRotate(int pieceId, double rotation) {
         if (!isMultiplayer) return;
         sendNetworkMessage(NetworkMessage.of(new Msg.PieceRotate(myPlayerId, pieceId, rotation)));
     }
 
-    public void sendPieceFlip(String pieceId, boolean frontVis, boolean backVis, boolean textVis) {
+    public void sendPieceFlip(int pieceId, boolean frontVis, boolean backVis, boolean textVis) {
         if (!isMultiplayer) return;
         sendNetworkMessage(NetworkMessage.of(new Msg.PieceFlip(myPlayerId, pieceId, frontVis, backVis, textVis)));
     }
 
-    private void sendPieceToFront(String pieceId) {
+    private void sendPieceToFront(int pieceId) {
         if (!isMultiplayer) return;
         sendNetworkMessage(NetworkMessage.of(new Msg.PieceToFront(myPlayerId, pieceId)));
     }
@@ -1462,14 +1817,13 @@ public class TarotBoard extends Application {
                 card.getCardPane().getChildren().get(2).setStyle(cardNameText.getStyle());
             }
 
-            String pieceId = "card:" + i;
             cards[i] = card;
 
             cards[i].getCardPane().setTranslateX(DEFAULT_DECK_X);
             cards[i].getCardPane().setTranslateY(DEFAULT_DECK_Y);
-            setupPieceInteractions(cards[i].getCardPane(), pieceId, true);
+            setupPieceInteractions(cards[i].getCardPane(), i, true);
             gameScene.getGameContent().getChildren().add(cards[i].getCardPane());
-            pieceMap.put(pieceId, cards[i].getCardPane());
+            putPiece(i, cards[i].getCardPane());
         }
         cardBuildIndex = to;
     }
@@ -1486,7 +1840,7 @@ public class TarotBoard extends Application {
     public void resetChips() {
         for (Chips chip : chips) {
             gameScene.getGameContent().getChildren().remove(chip.getChipPane());
-            pieceMap.remove(chip.getPieceId());
+            removePiece(chip.getPieceId());
         }
         chips.clear();
         sendNetworkMessage(NetworkMessage.of(new Msg.ResetChips(myPlayerId)));
@@ -1498,53 +1852,48 @@ public class TarotBoard extends Application {
     public void resetDice() {
         for (Dice die : dice) {
             gameScene.getGameContent().getChildren().remove(die.getPane());
-            pieceMap.remove(die.getPieceId());
+            removePiece(die.getPieceId());
         }
         dice.clear();
         sendNetworkMessage(NetworkMessage.of(new Msg.ResetDice(myPlayerId)));
     }
 
-    private void makeDiscardable(Pane pane, StackPane discardZone, String pieceId) {
+    private void makeDiscardable(Pane pane, StackPane discardZone, int pieceId) {
         pane.setOnMouseReleased(event -> {
             double sx = event.getSceneX();
             double sy = event.getSceneY();
             var bounds = discardZone.localToScene(discardZone.getBoundsInLocal());
 
-            if (isMultiplayer && pieceId != null) {
+            if (isMultiplayer) {
                 sendPieceMove(pieceId, pane.getTranslateX(), pane.getTranslateY());
             }
 
             if (bounds.contains(sx, sy)) {
-                boolean isCard = false;
-                for (Cards card : cards) {
-                    if (card != null && card.getCardPane() == pane) {
-                        pane.setTranslateX(DEFAULT_DECK_X);
-                        pane.setTranslateY(DEFAULT_DECK_Y);
-                        pane.setRotate(0);
-                        ImageView backView = (ImageView) pane.getChildren().get(0);
-                        ImageView frontView = (ImageView) pane.getChildren().get(1);
-                        Node textNode = pane.getChildren().size() > 2 ? pane.getChildren().get(2) : null;
-                        backView.setVisible(true);
-                        frontView.setVisible(false);
-                        if (textNode != null) {
-                            textNode.setVisible(false);
-                        }
-                        pane.toBack();
-                        isCard = true;
-                        if (isMultiplayer && pieceId != null) {
-                            sendNetworkMessage(NetworkMessage.of(new Msg.PieceMove(myPlayerId, pieceId, DEFAULT_DECK_X, DEFAULT_DECK_Y)));
-                            sendPieceFlip(pieceId, false, true, false);
-                            sendPieceRotate(pieceId, 0);
-                        }
-                        break;
+                if (PieceHandles.isCard(pieceId)) {
+                    pane.setTranslateX(DEFAULT_DECK_X);
+                    pane.setTranslateY(DEFAULT_DECK_Y);
+                    pane.setRotate(0);
+                    ImageView backView = (ImageView) pane.getChildren().get(0);
+                    ImageView frontView = (ImageView) pane.getChildren().get(1);
+                    Node textNode = pane.getChildren().size() > 2 ? pane.getChildren().get(2) : null;
+                    backView.setVisible(true);
+                    frontView.setVisible(false);
+                    if (textNode != null) {
+                        textNode.setVisible(false);
+                    }
+                    pane.toBack();
+                    if (isMultiplayer) {
+                        sendNetworkMessage(NetworkMessage.of(new Msg.PieceMove(myPlayerId, pieceId, DEFAULT_DECK_X, DEFAULT_DECK_Y)));
+                        sendPieceFlip(pieceId, false, true, false);
+                        sendPieceRotate(pieceId, 0);
                     }
+                    return;
                 }
-                if (isCard) return;
 
                 for (int i = 0; i < dice.size(); i++) {
                     if (dice.get(i).getPane() == pane) {
                         gameScene.getGameContent().getChildren().remove(pane);
-                        pieceMap.remove(dice.get(i).getPieceId());
+                        removePiece(dice.get(i).getPieceId());
                         sendNetworkMessage(NetworkMessage.of(new Msg.DeletePiece(myPlayerId, dice.get(i).getPieceId())));
                         dice.remove(i);
                         return;
@@ -1560,7 +1909,7 @@ public class TarotBoard extends Application {
                 }
                 if (idx >= 0) {
                     gameScene.getGameContent().getChildren().remove(pane);
-                    pieceMap.remove(chips.get(idx).getPieceId());
+                    removePiece(chips.get(idx).getPieceId());
                     sendNetworkMessage(NetworkMessage.of(new Msg.DeletePiece(myPlayerId, chips.get(idx).getPieceId())));
                     chips.remove(idx);
                 }
@@ -1574,7 +1923,7 @@ public class TarotBoard extends Application {
      */
     public void reshuffleCards() {
         if (isHost || !isMultiplayer) {
-            CardDataHelper.generateShuffledCardNames(cardNames);
+            deckSeed = CardDataHelper.generateShuffledCardNames(cardNames);
             reshuffled = true;
 
             for (int a = 0; a < NUM_CARDS; a++) {
@@ -1608,13 +1957,12 @@ public class TarotBoard extends Application {
                     }
 
 
-                    String pieceId = "card:" + a;
-                    setupPieceInteractions(cards[a].getCardPane(), pieceId, true);
+                    setupPieceInteractions(cards[a].getCardPane(), a, true);
                 }
             }
             reshuffled = false;
             sendNetworkMessage(NetworkMessage.of(new Msg.ReshuffleCards(myPlayerId)));
-            sendNetworkMessage(NetworkMessage.of(new Msg.CardNamesSync(new ArrayList<>(cardNames))));
+            sendNetworkMessage(DeckOrders.message(cardNames, deckSeed));
         } else {
             sendNetworkMessage(NetworkMessage.of(new Msg.ReshuffleCards(myPlayerId)));
         }
@@ -1628,9 +1976,10 @@ public class TarotBoard extends Application {
         File file = new File(saveFile);
         if (!file.exists()) return;
 
-        SaveData save;
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(saveFile))) {
-            save = (SaveData) ois.readObject();
+        BoardSnapshot save;
+        try {
+            byte[] data = Files.readAllBytes(file.toPath());
+            save = SnapshotCodec.isSnapshot(data) ? SnapshotCodec.read(data) : migrate(data);
         } catch (IOException | ClassNotFoundException e) {
             System.err.println("Error loading save: " + e.getMessage());
             return;
@@ -1643,11 +1992,13 @@ public class TarotBoard extends Application {
             return;
         }
 
-        if (save.isMultiplayer()) {
-            hostGameScene.getHostPortField().setText(String.valueOf(save.serverPort()));
-            if (save.serverIp() != null && !save.serverIp().isEmpty() && !HOST_SAVE_MARKER.equals(save.serverIp())) {
-                joinGameScene.getJoinAddressField().setText(save.serverIp());
-                joinGameScene.getJoinPortField().setText(String.valueOf(save.serverPort()));
+        String serverIp = save.property(SAVE_SERVER_IP, null);
+        String serverPort = save.property(SAVE_SERVER_PORT, "0");
+        if (Boolean.parseBoolean(save.property(SAVE_MULTIPLAYER, "false"))) {
+            hostGameScene.getHostPortField().setText(serverPort);
+            if (serverIp != null && !serverIp.isEmpty() && !HOST_SAVE_MARKER.equals(serverIp)) {
+                joinGameScene.getJoinAddressField().setText(serverIp);
+                joinGameScene.getJoinPortField().setText(serverPort);
                 joinGameScene.getNetworkStatusLabel().setText("Saved multiplayer session - re-join");
                 joinGameScene.getNetworkStatusLabel().setStyle("-fx-font-size: 14pt; -fx-text-fill: #FFA500;");
                 switchToJoinGame();
@@ -1706,7 +2057,9 @@ public class TarotBoard extends Application {
      * @param dieColor the color of the die
      */
     public void spawnDie(int sides, Color dieColor) {
-        Dice die = new Dice(sides, dieColor);
+        int handle = nextSpawnHandle();
+        if (handle < 0) return;
+        Dice die = new Dice(sides, dieColor, handle);
         StackPane diePane = die.getPane();
         setupPieceInteractions(diePane, die.getPieceId(), false);
 
@@ -1717,7 +2070,7 @@ public class TarotBoard extends Application {
         diePane.setTranslateY(centre.getY() + randomY);
         gameScene.getGameContent().getChildren().add(diePane);
         dice.add(die);
-        pieceMap.put(die.getPieceId(), diePane);
+        putPiece(die.getPieceId(), diePane);
         gameScene.bringCursorOverlayToFront();
 
         sendNetworkMessage(NetworkMessage.of(new Msg.SpawnDie(myPlayerId, die.getPieceId(),
@@ -1732,7 +2085,9 @@ public class TarotBoard extends Application {
      * @param chipColor the color of the chip
      */
     public void spawnChip(Color chipColor) {
-        Chips chip = new Chips(chipColor, bwFrontImage, bwBackImage);
+        int handle = nextSpawnHandle();
+        if (handle < 0) return;
+        Chips chip = new Chips(chipColor, bwFrontImage, bwBackImage, handle);
         StackPane chipPane = chip.getChipPane();
 
         var centre = gameScene.visibleBoardCentre();
@@ -1745,7 +2100,7 @@ public class TarotBoard extends Application {
 
         chips.add(chip);
         gameScene.getGameContent().getChildren().add(chipPane);
-        pieceMap.put(chip.getPieceId(), chipPane);
+        putPiece(chip.getPieceId(), chipPane);
         gameScene.bringCursorOverlayToFront();
 
         sendNetworkMessage(NetworkMessage.of(new Msg.SpawnChip(myPlayerId, chip.getPieceId(),
@@ -1775,12 +2130,12 @@ public class TarotBoard extends Application {
                 gameScene.getGameContent().getChildren().remove(die.getPane());
             }
             dice.clear();
-            pieceMap.clear();
+            Arrays.fill(pieceByHandle, null);
 
             cards = new Cards[NUM_CARDS];
             loadAndCreateCards();
 
-            CardDataHelper.generateShuffledCardNames(cardNames);
+            deckSeed = CardDataHelper.generateShuffledCardNames(cardNames);
             reshuffled = true;
 
             for (int a = 0; a < NUM_CARDS; a++) {
@@ -1804,6 +2159,8 @@ public class TarotBoard extends Application {
             reshuffled = false;
             applyCurrentTheme();
             sendNetworkMessage(NetworkMessage.of(new Msg.NewGame(myPlayerId)));
+            // The new game dealt a new deck; without this, joined players kept the old one.
+            sendNetworkMessage(DeckOrders.message(cardNames, deckSeed));
         } else {
             sendNetworkMessage(NetworkMessage.of(new Msg.NewGame(myPlayerId)));
         }
@@ -1878,8 +2235,8 @@ public class TarotBoard extends Application {
         } catch (IOException e) {
             System.err.println("Error creating save directory: " + e.getMessage());
         }
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(saveFile))) {
-            oos.writeObject(getSaveData(new ArrayList<>()));
+        try {
+            Files.write(Path.of(saveFile), SnapshotCodec.write(getSnapshot(), true));
         } catch (IOException e) {
             System.err.println("Error saving game: " + e.getMessage());
         } catch (Throwable t) {
@@ -1913,46 +2270,19 @@ public class TarotBoard extends Application {
     }
 
     /**
-     * Builds a {@link SaveData} object from the current board state, including card,
-     * chip, and die positions, multiplayer connection info, and theme settings.
+     * Builds a snapshot of the current board state, the same columns a joiner is synced from, with
+     * the multiplayer connection info and theme settings beside it.
      *
-     * @param cardStates an initially empty list to populate with card states
      * @return the complete save data snapshot
      */
-    private SaveData getSaveData(List<SaveData.CardState> cardStates) {
-        for (Cards card : cards) {
-            if (card == null) continue;
-            StackPane pane = card.getCardPane();
-            double tx = pane.getTranslateX();
-            double ty = pane.getTranslateY();
-
-            ImageView backView = (ImageView) pane.getChildren().get(0);
-            ImageView frontView = (ImageView) pane.getChildren().get(1);
-            Text text = (Text) pane.getChildren().get(2);
-
-            cardStates.add(new SaveData.CardState(
-                    tx, ty,
-                    pane.getRotate(),
-                    backView.getRotate(), frontView.getRotate(), text.getRotate(),
-                    backView.isVisible(), frontView.isVisible(), text.isVisible()
-            ));
-        }
-
-        List<SaveData.ChipState> chipStates = getChipStates();
-        List<SaveData.DieState> dieStates = new ArrayList<>();
-        for (Dice die : dice) {
-            StackPane diePane = die.getPane();
-            double tx = diePane.getTranslateX();
-            double ty = diePane.getTranslateY();
-            Color dieColor = die.getDieColor();
-
-            dieStates.add(new SaveData.DieState(
-                    tx, ty,
-                    diePane.getRotate(),
-                    die.getSides(),
-                    die.getCurrentValue(),
-                    dieColor.getRed(), dieColor.getGreen(), dieColor.getBlue(), dieColor.getOpacity()
-            ));
+    private BoardSnapshot getSnapshot() {
+        var board = boardSnapshot();
+        for (int i = 0; i < cards.length; i++) {
+            // Not built yet by the warm-up: it would be, on the deck pile face down.
+            if (cards[i] != null) continue;
+            board.cardX()[i] = CardCatalog.DECK_X;
+            board.cardY()[i] = CardCatalog.DECK_Y;
+            board.cardBackVis()[i] = true;
         }
 
         String mpIp = null;
@@ -1970,57 +2300,121 @@ public class TarotBoard extends Application {
             }
         }
 
-        return new SaveData(cardStates, chipStates, dieStates, reshuffled, new ArrayList<>(cardNames),
-                customCardFrontPath, customCardBackPath, customChipFrontPath, customChipBackPath, customBackgroundPath,
-                currentCardTheme.getThemeName(),
-                isMultiplayer, mpIp, mpPort);
+        return BoardSnapshots.of(new ArrayList<>(cardNames), board,
+                saveProperties(reshuffled, customCardFrontPath, customCardBackPath, customChipFrontPath,
+                        customChipBackPath, customBackgroundPath, currentCardTheme.getThemeName(),
+                        isMultiplayer, mpIp, mpPort));
+    }
+
+    /** Returns what a save records beside the board, by the names {@link #loadGame} reads them by. */
+    private static Map<String, String> saveProperties(boolean reshuffled, String cardFront, String cardBack,
+                                                      String chipFront, String chipBack, String background,
+                                                      String theme, boolean multiplayer, String ip, int port) {
+        Map<String, String> p = new LinkedHashMap<>();
+        p.put(SAVE_RESHUFFLED, Boolean.toString(reshuffled));
+        p.put(SAVE_CARD_FRONT, cardFront);
+        p.put(SAVE_CARD_BACK, cardBack);
+        p.put(SAVE_CHIP_FRONT, chipFront);
+        p.put(SAVE_CHIP_BACK, chipBack);
+        p.put(SAVE_BACKGROUND, background);
+        p.put(SAVE_THEME, theme);
+        p.put(SAVE_MULTIPLAYER, Boolean.toString(multiplayer));
+        p.put(SAVE_SERVER_IP, ip);
+        p.put(SAVE_SERVER_PORT, Integer.toString(port));
+        return p;
     }
 
     /**
-     * Collects the current position, rotation, and color state of all chips on the board.
-     *
-     * @return a list of chip state snapshots
+     * Reads a save written before {@link SnapshotCodec}, one serialized {@link SaveData}, as a
+     * snapshot. The next save writes it in the new format.
      */
-    private List<SaveData.ChipState> getChipStates() {
-        List<SaveData.ChipState> chipStates = new ArrayList<>();
-        for (Chips chip : chips) {
-            StackPane chipPane = chip.getChipPane();
-            double tx = chipPane.getTranslateX();
-            double ty = chipPane.getTranslateY();
-
-            ImageView frontView = (ImageView) chipPane.getChildren().get(0);
-            ImageView backView = (ImageView) chipPane.getChildren().get(1);
-            Color chipColor = chip.getColor();
-
-            chipStates.add(new SaveData.ChipState(
-                    tx, ty,
-                    frontView.getRotate(), backView.getRotate(),
-                    frontView.isVisible(), backView.isVisible(),
-                    chipColor.getRed(), chipColor.getGreen(), chipColor.getBlue(), chipColor.getOpacity()
-            ));
+    private static BoardSnapshot migrate(byte[] data) throws IOException, ClassNotFoundException {
+        SaveData save;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            save = (SaveData) ois.readObject();
         }
-        return chipStates;
+        int nCards = save.cards().size();
+        double[] cardX = new double[nCards], cardY = new double[nCards], cardRot = new double[nCards];
+        boolean[] cardBackVis = new boolean[nCards], cardFrontVis = new boolean[nCards];
+        boolean[] cardTextVis = new boolean[nCards];
+        for (int i = 0; i < nCards; i++) {
+            var cs = save.cards().get(i);
+            cardX[i] = cs.translateX();
+            cardY[i] = cs.translateY();
+            cardRot[i] = cs.paneRotate();
+            cardBackVis[i] = cs.backVisible();
+            cardFrontVis[i] = cs.frontVisible();
+            cardTextVis[i] = cs.textVisible();
+        }
+
+        // Older saves kept no handles; loading gives every piece a fresh one anyway.
+        int nChips = save.chips().size();
+        int[] chipIds = new int[nChips];
+        double[] chipX = new double[nChips], chipY = new double[nChips], chipRot = new double[nChips];
+        boolean[] chipFrontVis = new boolean[nChips], chipBackVis = new boolean[nChips];
+        double[] chipR = new double[nChips], chipG = new double[nChips];
+        double[] chipB = new double[nChips], chipO = new double[nChips];
+        for (int i = 0; i < nChips; i++) {
+            var c = save.chips().get(i);
+            chipIds[i] = PieceHandles.FIRST_SPAWNED + i;
+            chipX[i] = c.translateX();
+            chipY[i] = c.translateY();
+            chipFrontVis[i] = c.frontVisible();
+            chipBackVis[i] = c.backVisible();
+            chipR[i] = c.red();
+            chipG[i] = c.green();
+            chipB[i] = c.blue();
+            chipO[i] = c.opacity();
+        }
+
+        int nDice = save.dice().size();
+        int[] dieIds = new int[nDice], dieSides = new int[nDice], dieVals = new int[nDice];
+        double[] dieX = new double[nDice], dieY = new double[nDice], dieRot = new double[nDice];
+        double[] dieR = new double[nDice], dieG = new double[nDice];
+        double[] dieB = new double[nDice], dieO = new double[nDice];
+        for (int i = 0; i < nDice; i++) {
+            var d = save.dice().get(i);
+            dieIds[i] = PieceHandles.FIRST_SPAWNED + nChips + i;
+            dieX[i] = d.translateX();
+            dieY[i] = d.translateY();
+            dieRot[i] = d.paneRotate();
+            dieSides[i] = d.sides();
+            dieVals[i] = d.currentValue();
+            dieR[i] = d.red();
+            dieG[i] = d.green();
+            dieB[i] = d.blue();
+            dieO[i] = d.opacity();
+        }
+
+        return new BoardSnapshot(save.cardNames(),
+                saveProperties(save.reshuffled(), save.customCardFrontPath(), save.customCardBackPath(),
+                        save.customChipFrontPath(), save.customChipBackPath(), save.customBackgroundPath(),
+                        save.themeName(), save.isMultiplayer(), save.serverIp(), save.serverPort()),
+                cardX, cardY, cardRot, cardBackVis, cardFrontVis, cardTextVis,
+                chipIds, chipX, chipY, chipRot, chipFrontVis, chipBackVis, chipR, chipG, chipB, chipO,
+                dieIds, dieX, dieY, dieRot, dieSides, dieVals, dieR, dieG, dieB, dieO);
     }
 
     /**
-     * Restores the board state from a {@link SaveData} object, including card names,
+     * Restores the board state from a saved snapshot, including card names,
      * piece positions, custom asset paths, theme, and multiplayer info.
      *
      * @param save the save data to restore
      */
-    private void loadGame(SaveData save) {
+    private void loadGame(BoardSnapshot save) {
         // This rebuilds the deck itself and replaces the cards array, so stop any in-flight warm-up
         // first — otherwise its next frame would write cards into the array we are about to discard.
         stopCardWarmUp();
-        reshuffled = save.reshuffled();
+        reshuffled = Boolean.parseBoolean(save.property(SAVE_RESHUFFLED, "false"));
         cardNames.setAll(save.cardNames());
-
-        customCardFrontPath = save.customCardFrontPath();
-        customCardBackPath = save.customCardBackPath();
-        customChipFrontPath = save.customChipFrontPath();
-        customChipBackPath = save.customChipBackPath();
-        customBackgroundPath = save.customBackgroundPath();
-        currentCardTheme = ThemeManager.getThemeByName(save.themeName());
+        deckSeed = null;
+
+        customCardFrontPath = save.property(SAVE_CARD_FRONT, null);
+        customCardBackPath = save.property(SAVE_CARD_BACK, null);
+        customChipFrontPath = save.property(SAVE_CHIP_FRONT, null);
+        customChipBackPath = save.property(SAVE_CHIP_BACK, null);
+        customBackgroundPath = save.property(SAVE_BACKGROUND, null);
+        currentCardTheme = ThemeManager.getThemeByName(save.property(SAVE_THEME, null));
         ThemeManager.setActiveTheme(currentCardTheme);
 
         if (cards != null) {
@@ -2031,7 +2425,7 @@ public class TarotBoard extends Application {
             }
         }
         cards = new Cards[NUM_CARDS];
-        pieceMap.clear();
+        Arrays.fill(pieceByHandle, null);
 
         Image cardFrontImage = loadImage(customCardFrontPath, currentCardTheme.getCardFrontPath(), currentCardTheme);
         Image cardBackImage = loadImage(customCardBackPath, currentCardTheme.getCardBackPath(), currentCardTheme);
@@ -2041,8 +2435,8 @@ public class TarotBoard extends Application {
         bwFrontImage = loadImage(customChipFrontPath, currentCardTheme.getChipFrontPath(), currentCardTheme);
         bwBackImage = loadImage(customChipBackPath, currentCardTheme.getChipBackPath(), currentCardTheme);
 
-        int idx = 0;
-        for (var cs : save.cards()) {
+        int nCards = Math.min(save.cardX().length, cardNames.size());
+        for (int idx = 0; idx < nCards; idx++) {
             Cards card;
             String cardLogicalName = cardNames.get(idx);
 
@@ -2057,7 +2451,6 @@ public class TarotBoard extends Application {
                 ((Text) card.getCardPane().getChildren().get(2)).setText(cardNameText.getText());
                 card.getCardPane().getChildren().get(2).setStyle(cardNameText.getStyle());
             }
-            String pieceId = "card:" + idx;
             cards[idx] = card;
 
             StackPane pane = cards[idx].getCardPane();
@@ -2067,18 +2460,15 @@ public class TarotBoard extends Application {
             Text text = (Text) pane.getChildren().get(2);
 
             pane.getTransforms().clear();
-            setupPieceInteractions(pane, pieceId, true);
+            setupPieceInteractions(pane, idx, true);
 
-            pane.setTranslateX(cs.translateX());
-            pane.setTranslateY(cs.translateY());
-            pane.setRotate(cs.paneRotate());
+            pane.setTranslateX(save.cardX()[idx]);
+            pane.setTranslateY(save.cardY()[idx]);
+            pane.setRotate(save.cardRot()[idx]);
 
-            backView.setRotate(cs.backRotate());
-            frontView.setRotate(cs.frontRotate());
-            text.setRotate(cs.textRotate());
-            backView.setVisible(cs.backVisible());
-            frontView.setVisible(cs.frontVisible());
-            text.setVisible(cs.textVisible());
+            backView.setVisible(save.cardBackVis()[idx]);
+            frontView.setVisible(save.cardFrontVis()[idx]);
+            text.setVisible(save.cardTextVis()[idx]);
 
             if (!wilds.contains(cardLogicalName)) {
                 Matcher matcher1 = CARD_PATTERN.matcher(cardLogicalName);
@@ -2092,28 +2482,29 @@ public class TarotBoard extends Application {
             }
 
             gameScene.getGameContent().getChildren().add(pane);
-            pieceMap.put(pieceId, pane);
-            idx++;
+            putPiece(idx, pane);
         }
 
-        for (var ds : save.dice()) {
-            Color loadedColor = new Color(ds.red(), ds.green(), ds.blue(), ds.opacity());
-            Dice die = new Dice(ds.sides(), loadedColor);
+        for (int i = 0; i < save.dieIds().length; i++) {
+            Color loadedColor = new Color(save.dieR()[i], save.dieG()[i], save.dieB()[i], save.dieO()[i]);
+            int handle = nextSpawnHandle();
+            if (handle < 0) break;
+            Dice die = new Dice(save.dieSides()[i], loadedColor, handle);
             StackPane diePane = die.getPane();
 
             diePane.translateXProperty().unbind();
             diePane.getTransforms().clear();
             setupPieceInteractions(diePane, die.getPieceId(), false);
 
-            diePane.setTranslateX(ds.translateX());
-            diePane.setTranslateY(ds.translateY());
-            diePane.setRotate(ds.paneRotate());
+            diePane.setTranslateX(save.dieX()[i]);
+            diePane.setTranslateY(save.dieY()[i]);
+            diePane.setRotate(save.dieRot()[i]);
 
-            die.setCurrentValue(ds.currentValue());
+            die.setCurrentValue(save.dieVals()[i]);
 
             dice.add(die);
             gameScene.getGameContent().getChildren().add(diePane);
-            pieceMap.put(die.getPieceId(), diePane);
+            putPiece(die.getPieceId(), diePane);
         }
         // loadGame builds the deck itself, so mark it built or a later ensureCardsBuilt() would
         // wipe this loaded board and rebuild a fresh deck over it.
@@ -2263,28 +2654,20 @@ public class TarotBoard extends Application {
     }
 
     /**
-     * Returns the piece id of any board piece, or null if the pane is not one.
+     * Returns the piece handle of any board piece, or -1 if the pane is not one.
      */
-    private static String pieceIdOf(StackPane pane) {
-        return pane == null ? null : (String) pane.getProperties().get(PIECE_ID_KEY);
-    }
-
-    public String getCardId(StackPane pane) {
-        String id = pieceIdOf(pane);
-        return id != null && id.startsWith("card:") ? id : null;
+    private static int pieceIdOf(StackPane pane) {
+        Object id = pane == null ? null : pane.getProperties().get(PIECE_ID_KEY);
+        return id instanceof Integer handle ? handle : -1;
     }
 
     /**
-     * Returns the deck index encoded in a card's piece id, or -1 if the pane is not a card.
+     * Returns the deck index of a card's pane — which is also its handle — or -1 if the pane is
+     * not a card.
      */
     private int cardIndexOf(StackPane pane) {
-        String id = getCardId(pane);
-        if (id == null) return -1;
-        try {
-            return Integer.parseInt(id.substring("card:".length()));
-        } catch (NumberFormatException e) {
-            return -1;
-        }
+        int id = pieceIdOf(pane);
+        return PieceHandles.isCard(id) ? id : -1;
     }
 
     /**
@@ -2294,8 +2677,70 @@ public class TarotBoard extends Application {
      * @return true if the pane belongs to a chip
      */
     public boolean isChip(StackPane pane) {
-        String id = pieceIdOf(pane);
-        return id != null && id.startsWith("chip:");
+        // Dice share the spawned handle range; only chips are made flippable as chips.
+        return pieceIdOf(pane) >= PieceHandles.FIRST_SPAWNED
+                && Boolean.TRUE.equals(pane.getProperties().get("tb_isChip"));
+    }
+
+    /** The piece pane with the given handle, or null if there is none. */
+    private StackPane pieceAt(int handle) {
+        return handle >= 0 && handle < pieceByHandle.length ? pieceByHandle[handle] : null;
+    }
+
+    /** Files a piece pane under its handle, growing the table if the handle is past its end. */
+    private void putPiece(int handle, StackPane pane) {
+        if (!PieceHandles.isValid(handle)) return;
+        if (handle >= pieceByHandle.length) {
+            int size = Math.min(PieceHandles.MAX_HANDLE, Math.max(pieceByHandle.length * 2, handle + 1));
+            pieceByHandle = Arrays.copyOf(pieceByHandle, size);
+            lastPieceMoveTime = Arrays.copyOf(lastPieceMoveTime, size);
+        }
+        pieceByHandle[handle] = pane;
+    }
+
+    /** Forgets the piece with the given handle, returning its pane, or null if there was none. */
+    private StackPane removePiece(int handle) {
+        StackPane pane = pieceAt(handle);
+        if (pane != null) pieceByHandle[handle] = null;
+        return pane;
+    }
+
+    /** One past the highest handle with a piece behind it, and never below the first spawn handle. */
+    private int pieceHandleBound() {
+        for (int h = pieceByHandle.length - 1; h >= PieceHandles.FIRST_SPAWNED; h--) {
+            if (pieceByHandle[h] != null) return h + 1;
+        }
+        return PieceHandles.FIRST_SPAWNED;
+    }
+
+    /** Whether a chip or die arriving from the network carries a handle it could legitimately have. */
+    private static boolean isSpawnHandle(int handle) {
+        return handle >= PieceHandles.FIRST_SPAWNED && PieceHandles.isValid(handle);
+    }
+
+    /**
+     * Takes the handle for a chip or die this player is about to spawn.
+     *
+     * <p>A host takes it straight from its own server; everyone else uses up the block the server
+     * last granted, asking for the next one before this one runs dry.</p>
+     *
+     * @return the handle, or -1 if none is available right now
+     */
+    private int nextSpawnHandle() {
+        if (isHost && gameServer != null) return gameServer.allocateHandles(1);
+        if (spawnHandleEnd - spawnHandleNext <= PieceHandles.GRANT_LOW_WATER) requestHandles();
+        if (spawnHandleNext >= spawnHandleEnd) {
+            System.err.println("No piece handle available yet; waiting on the server for more");
+            return -1;
+        }
+        return spawnHandleNext++;
+    }
+
+    /** Asks the server for another block of spawn handles, unless one is already on its way. */
+    private void requestHandles() {
+        if (!isMultiplayer || isHost || handleRequestPending || gameClient == null) return;
+        handleRequestPending = true;
+        gameClient.send(NetworkMessage.of(new Msg.HandleRequest(myPlayerId)));
     }
 
     public boolean isWildCard(StackPane pane) {
@@ -2335,7 +2780,7 @@ public class TarotBoard extends Application {
                     StackPane cardPane = card.getCardPane();
                     cardPane.setTranslateX(newX);
                     cardPane.setTranslateY(newY);
-                    sendPieceMove(getCardId(cardPane), newX, newY);
+                    sendPieceMove(cardIndexOf(cardPane), newX, newY);
                 }
             } catch (NumberFormatException e) {
                 // Ignore invalid input
@@ -2353,7 +2798,7 @@ public class TarotBoard extends Application {
                 // anything further than the pile tolerance apart cannot be dragged as one.
                 cardPane.setTranslateX(newX);
                 cardPane.setTranslateY(newY);
-                sendPieceMove(getCardId(cardPane), cardPane.getTranslateX(), cardPane.getTranslateY());
+                sendPieceMove(j, cardPane.getTranslateX(), cardPane.getTranslateY());
             }
         }
     }
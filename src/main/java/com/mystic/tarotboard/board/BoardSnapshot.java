@@ -0,0 +1,35 @@
+package com.mystic.tarotboard.board;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The whole of a board as one set of columns: what the client saves on quitting and what the
+ * dedicated server saves, read and written by {@link SnapshotCodec}.
+ *
+ * <p>The columns are those of a full {@code StateSync}, less its card ids: cards are listed by
+ * index from zero, the same index that is the card's piece handle. Chips and dice are listed with
+ * their handles, in no particular order. {@code properties} holds what only one kind of save
+ * needs, the client's theme or the server's journal generation; a value may be null.</p>
+ *
+ * @param cardNames  the deck, as card names, by index
+ * @param properties whatever else the save records, by name
+ */
+public record BoardSnapshot(
+        List<String> cardNames,
+        Map<String, String> properties,
+        double[] cardX, double[] cardY, double[] cardRot,
+        boolean[] cardBackVis, boolean[] cardFrontVis, boolean[] cardTextVis,
+        int[] chipIds, double[] chipX, double[] chipY, double[] chipRot,
+        boolean[] chipFrontVis, boolean[] chipBackVis,
+        double[] chipR, double[] chipG, double[] chipB, double[] chipO,
+        int[] dieIds, double[] dieX, double[] dieY, double[] dieRot,
+        int[] dieSides, int[] dieVals,
+        double[] dieR, double[] dieG, double[] dieB, double[] dieO
+) {
+
+    /** Returns a property, or {@code fallback} if there is none by that name. */
+    public String property(String name, String fallback) {
+        return properties.containsKey(name) ? properties.get(name) : fallback;
+    }
+}
@@ -0,0 +1,273 @@
+package com.mystic.tarotboard.board;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads and writes {@link BoardSnapshot}s as bytes, the format of the client's and the dedicated
+ * server's saves.
+ *
+ * <p>Both used to write their own records through Java serialization: the client one object per
+ * card, thousands of them, each with its class description and boxed fields; the server a
+ * different record of the same board. Here a snapshot is a header and then its columns, each
+ * written whole as raw big-endian numbers, the visibility flags as bitsets; optionally the columns
+ * are deflated. Nothing is looked up by reflection, so it is quick to write and to read, and
+ * several times smaller.</p>
+ *
+ * <p>The header starts with {@link #MAGIC}, so a save in this format is told from an older one,
+ * and carries the {@link #VERSION} of the layout. A later version reads the earlier layouts, so a
+ * save is migrated on load rather than thrown away; a save from a later version than this is
+ * refused.</p>
+ */
+public final class SnapshotCodec {
+    /** The first four bytes of every snapshot: {@code TBSN}. */
+    public static final int MAGIC = 0x5442534E;
+
+    /** The layout written; bumped, and the old one still read, whenever it changes. */
+    public static final int VERSION = 1;
+
+    private static final int FLAG_DEFLATED = 1;
+    private static final int HEADER = 7;
+
+    private SnapshotCodec() {
+    }
+
+    /** Returns whether bytes begin as a snapshot does, rather than as a save from before there were any. */
+    public static boolean isSnapshot(byte[] data) {
+        return data.length >= HEADER && ByteBuffer.wrap(data).getInt() == MAGIC;
+    }
+
+    /**
+     * Writes a snapshot.
+     *
+     * @param snapshot the board
+     * @param deflate  whether to deflate the columns; smaller, for a little time
+     * @return the bytes
+     */
+    public static byte[] write(BoardSnapshot snapshot, boolean deflate) {
+        Out out = new Out();
+        out.buf.putInt(MAGIC).putShort((short) VERSION).put((byte) (deflate ? FLAG_DEFLATED : 0));
+
+        out.ensure(4);
+        out.buf.putInt(snapshot.properties().size());
+        for (var e : snapshot.properties().entrySet()) {
+            out.string(e.getKey());
+            out.ensure(1);
+            out.buf.put((byte) (e.getValue() == null ? 0 : 1));
+            if (e.getValue() != null) out.string(e.getValue());
+        }
+        out.ensure(4);
+        out.buf.putInt(snapshot.cardNames().size());
+        for (String name : snapshot.cardNames()) out.string(name);
+
+        out.count(snapshot.cardX().length);
+        out.doubles(snapshot.cardX());
+        out.doubles(snapshot.cardY());
+        out.doubles(snapshot.cardRot());
+        out.bits(snapshot.cardBackVis());
+        out.bits(snapshot.cardFrontVis());
+        out.bits(snapshot.cardTextVis());
+
+        out.count(snapshot.chipIds().length);
+        out.ints(snapshot.chipIds());
+        out.doubles(snapshot.chipX());
+        out.doubles(snapshot.chipY());
+        out.doubles(snapshot.chipRot());
+        out.bits(snapshot.chipFrontVis());
+        out.bits(snapshot.chipBackVis());
+        out.doubles(snapshot.chipR());
+        out.doubles(snapshot.chipG());
+        out.doubles(snapshot.chipB());
+        out.doubles(snapshot.chipO());
+
+        out.count(snapshot.dieIds().length);
+        out.ints(snapshot.dieIds());
+        out.doubles(snapshot.dieX());
+        out.doubles(snapshot.dieY());
+        out.doubles(snapshot.dieRot());
+        out.ints(snapshot.dieSides());
+        out.ints(snapshot.dieVals());
+        out.doubles(snapshot.dieR());
+        out.doubles(snapshot.dieG());
+        out.doubles(snapshot.dieB());
+        out.doubles(snapshot.dieO());
+
+        byte[] bytes = new byte[out.buf.position()];
+        out.buf.flip().get(bytes);
+        if (!deflate) return bytes;
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream(bytes.length / 2);
+        zipped.write(bytes, 0, HEADER);
+        // The columns are mostly repeats, which even the fastest level finds.
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream z = new DeflaterOutputStream(zipped, deflater)) {
+            z.write(bytes, HEADER, bytes.length - HEADER);
+        } catch (IOException e) {
+            throw new IllegalStateException("in-memory deflate failed", e);
+        } finally {
+            deflater.end();
+        }
+        return zipped.toByteArray();
+    }
+
+    /**
+     * Reads a snapshot, of this version or any earlier one.
+     *
+     * @param data the bytes, as {@link #write} left them
+     * @return the board
+     * @throws IOException if the bytes are not a snapshot, are from a later version, or are cut short
+     */
+    public static BoardSnapshot read(byte[] data) throws IOException {
+        if (!isSnapshot(data)) throw new IOException("not a board snapshot");
+        ByteBuffer header = ByteBuffer.wrap(data, 4, HEADER - 4);
+        int version = header.getShort();
+        int flags = header.get();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("board snapshot version " + version + " is newer than this build reads (" + VERSION + ")");
+        }
+        byte[] body;
+        if ((flags & FLAG_DEFLATED) != 0) {
+            try (InflaterInputStream z = new InflaterInputStream(new ByteArrayInputStream(data, HEADER, data.length - HEADER))) {
+                body = z.readAllBytes();
+            }
+        } else {
+            body = Arrays.copyOfRange(data, HEADER, data.length);
+        }
+        try {
+            return read(ByteBuffer.wrap(body));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("board snapshot is cut short or corrupt", e);
+        }
+    }
+
+    /** Reads the columns, as every version so far has laid them out. */
+    private static BoardSnapshot read(ByteBuffer in) {
+        int nProps = count(in, 1);
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (int i = 0; i < nProps; i++) {
+            String key = string(in);
+            properties.put(key, in.get() == 0 ? null : string(in));
+        }
+        int nNames = count(in, 4);
+        List<String> names = new ArrayList<>(nNames);
+        for (int i = 0; i < nNames; i++) names.add(string(in));
+
+        int nCards = count(in, 24);
+        double[] cardX = doubles(in, nCards), cardY = doubles(in, nCards), cardRot = doubles(in, nCards);
+        boolean[] cardBackVis = bits(in, nCards), cardFrontVis = bits(in, nCards), cardTextVis = bits(in, nCards);
+
+        int nChips = count(in, 60);
+        int[] chipIds = ints(in, nChips);
+        double[] chipX = doubles(in, nChips), chipY = doubles(in, nChips), chipRot = doubles(in, nChips);
+        boolean[] chipFrontVis = bits(in, nChips), chipBackVis = bits(in, nChips);
+        double[] chipR = doubles(in, nChips), chipG = doubles(in, nChips);
+        double[] chipB = doubles(in, nChips), chipO = doubles(in, nChips);
+
+        int nDice = count(in, 68);
+        int[] dieIds = ints(in, nDice);
+        double[] dieX = doubles(in, nDice), dieY = doubles(in, nDice), dieRot = doubles(in, nDice);
+        int[] dieSides = ints(in, nDice), dieVals = ints(in, nDice);
+        double[] dieR = doubles(in, nDice), dieG = doubles(in, nDice);
+        double[] dieB = doubles(in, nDice), dieO = doubles(in, nDice);
+
+        return new BoardSnapshot(names, properties,
+                cardX, cardY, cardRot, cardBackVis, cardFrontVis, cardTextVis,
+                chipIds, chipX, chipY, chipRot, chipFrontVis, chipBackVis, chipR, chipG, chipB, chipO,
+                dieIds, dieX, dieY, dieRot, dieSides, dieVals, dieR, dieG, dieB, dieO);
+    }
+
+    /** Reads a count, checking it against what is left at the least bytes each of its items takes. */
+    private static int count(ByteBuffer in, int minBytesEach) {
+        int n = in.getInt();
+        if (n < 0 || (long) n * minBytesEach > in.remaining()) throw new IllegalArgumentException("bad count " + n);
+        return n;
+    }
+
+    private static String string(ByteBuffer in) {
+        int n = count(in, 1);
+        String s = new String(in.array(), in.arrayOffset() + in.position(), n, StandardCharsets.UTF_8);
+        in.position(in.position() + n);
+        return s;
+    }
+
+    private static double[] doubles(ByteBuffer in, int n) {
+        double[] a = new double[n];
+        in.asDoubleBuffer().get(a);
+        in.position(in.position() + n * Double.BYTES);
+        return a;
+    }
+
+    private static int[] ints(ByteBuffer in, int n) {
+        int[] a = new int[n];
+        in.asIntBuffer().get(a);
+        in.position(in.position() + n * Integer.BYTES);
+        return a;
+    }
+
+    private static boolean[] bits(ByteBuffer in, int n) {
+        long[] words = new long[(n + 63) / 64];
+        in.asLongBuffer().get(words);
+        in.position(in.position() + words.length * Long.BYTES);
+        BitSet set = BitSet.valueOf(words);
+        boolean[] a = new boolean[n];
+        for (int i = set.nextSetBit(0); i >= 0 && i < n; i = set.nextSetBit(i + 1)) a[i] = true;
+        return a;
+    }
+
+    /** A buffer that grows as columns are put in it. */
+    private static final class Out {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+
+        void ensure(int bytes) {
+            if (buf.remaining() >= bytes) return;
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + bytes));
+            grown.put(buf.flip());
+            buf = grown;
+        }
+
+        void count(int n) {
+            ensure(4);
+            buf.putInt(n);
+        }
+
+        void string(String s) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            ensure(4 + b.length);
+            buf.putInt(b.length).put(b);
+        }
+
+        void doubles(double[] a) {
+            ensure(a.length * Double.BYTES);
+            buf.asDoubleBuffer().put(a);
+            buf.position(buf.position() + a.length * Double.BYTES);
+        }
+
+        void ints(int[] a) {
+            ensure(a.length * Integer.BYTES);
+            buf.asIntBuffer().put(a);
+            buf.position(buf.position() + a.length * Integer.BYTES);
+        }
+
+        void bits(boolean[] a) {
+            BitSet set = new BitSet(a.length);
+            for (int i = 0; i < a.length; i++) if (a[i]) set.set(i);
+            long[] words = set.toLongArray();
+            int n = (a.length + 63) / 64;
+            ensure(n * Long.BYTES);
+            // toLongArray drops trailing zero words; the reader expects all of them.
+            for (int i = 0; i < n; i++) buf.putLong(i < words.length ? words[i] : 0);
+        }
+    }
+}
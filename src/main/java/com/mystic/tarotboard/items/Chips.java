@@ -19,8 +19,7 @@ import java.util.Map;
 public class Chips {
     private final StackPane chipPane;
     private final Color chipColor;
-    private final String pieceId;
-    private static int chipCounter = 0;
+    private final int pieceId;
 
     /** Tinted chip faces, keyed by source image and colour. See {@code tinted}. */
     private static final Map<String, Image> TINT_CACHE = new HashMap<>();
@@ -31,25 +30,14 @@ public class Chips {
     public static final double CHIP_RADIUS = 50;
 
     /**
-     * Constructs a Chips item with an auto-generated piece ID.
+     * Constructs a Chips item with a specified piece handle.
      *
      * @param chipColor    the tint color for the chip images
      * @param bwFrontImage the front face image (grayscale)
      * @param bwBackImage  the back face image (grayscale)
+     * @param pieceId      the piece handle; see {@link com.mystic.tarotboard.utils.PieceHandles}
      */
-    public Chips(Color chipColor, Image bwFrontImage, Image bwBackImage) {
-        this(chipColor, bwFrontImage, bwBackImage, "chip:" + (chipCounter++));
-    }
-
-    /**
-     * Constructs a Chips item with a specified piece ID.
-     *
-     * @param chipColor    the tint color for the chip images
-     * @param bwFrontImage the front face image (grayscale)
-     * @param bwBackImage  the back face image (grayscale)
-     * @param pieceId      the unique identifier for this chip piece
-     */
-    public Chips(Color chipColor, Image bwFrontImage, Image bwBackImage, String pieceId) {
+    public Chips(Color chipColor, Image bwFrontImage, Image bwBackImage, int pieceId) {
         this.chipColor = chipColor;
         this.pieceId = pieceId;
         this.chipPane = new StackPane();
@@ -130,9 +118,9 @@ public class Chips {
     /**
      * Returns the unique piece identifier for this chip.
      *
-     * @return the piece ID
+     * @return the piece handle
      */
-    public String getPieceId() {
+    public int getPieceId() {
         return pieceId;
     }
 
@@ -16,32 +16,21 @@ import java.util.Random;
 public class Dice {
     private static final Random RNG = new Random();
     private static final double SIZE = 60;
-    private static int dieCounter = 0;
     private final int sides;
     private final StackPane pane;
     private int currentValue;
     private final Text valueText;
     private final Color dieColor;
-    private final String pieceId;
+    private final int pieceId;
 
     /**
-     * Constructs a die item with an auto-generated piece ID.
+     * Constructs a die item with a specified piece handle.
      *
      * @param sides    the number of sides on the die
      * @param dieColor the background color of the die
+     * @param pieceId  the piece handle; see {@link com.mystic.tarotboard.utils.PieceHandles}
      */
-    public Dice(int sides, Color dieColor) {
-        this(sides, dieColor, "die:" + (dieCounter++));
-    }
-
-    /**
-     * Constructs a die item with a specified piece ID.
-     *
-     * @param sides    the number of sides on the die
-     * @param dieColor the background color of the die
-     * @param pieceId  the unique identifier for this die piece
-     */
-    public Dice(int sides, Color dieColor, String pieceId) {
+    public Dice(int sides, Color dieColor, int pieceId) {
         this.sides = sides;
         this.dieColor = dieColor;
         this.pieceId = pieceId;
@@ -127,9 +116,9 @@ public class Dice {
     /**
      * Returns the unique piece identifier for this die.
      *
-     * @return the piece ID
+     * @return the piece handle
      */
-    public String getPieceId() {
+    public int getPieceId() {
         return pieceId;
     }
 }
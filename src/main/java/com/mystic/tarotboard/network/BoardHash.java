@@ -0,0 +1,138 @@
+package com.mystic.tarotboard.network;
+
+import com.mystic.tarotboard.network.NetworkMessage.Msg;
+
+import java.util.stream.IntStream;
+
+/**
+ * A two-level hash tree over a board: one hash per run of {@link #RANGE_SIZE} cards, one for the
+ * chip table and one for the dice, and a root over all of them.
+ *
+ * <p>A rejoining player usually still has the table on screen, or in its save, nearly as the
+ * server has it: most of a big deck sits untouched where it was. Sending the server these hashes
+ * with the request lets it answer with only the card ranges, and the tables, that hash
+ * differently at its end (see {@link SyncChunks#split(Msg.StateSync, Msg.SendDiff)}); with an
+ * equal root, with nothing at all. Both ends hash a {@link Msg.StateSync} of their board, so what
+ * is compared is exactly what a sync would have sent.</p>
+ *
+ * <p>Chips and dice are hashed in handle order, whatever order their table lists them in. Their
+ * colours are hashed at float precision, which is all a JavaFX {@code Color} keeps, so a colour
+ * read back from a piece hashes the same as the one it was spawned with.</p>
+ */
+public final class BoardHash {
+    /** Cards per leaf: small enough that one moved card resends little, large enough that the hashes stay small. */
+    public static final int RANGE_SIZE = 64;
+
+    private static final long SEED = 0x6A09E667F3BCC908L;
+
+    private final long[] cardRanges;
+    private final long chips;
+    private final long dice;
+    private final long root;
+
+    private BoardHash(long[] cardRanges, long chips, long dice) {
+        this.cardRanges = cardRanges;
+        this.chips = chips;
+        this.dice = dice;
+        long h = SEED;
+        for (long r : cardRanges) h = mix(h, r);
+        this.root = mix(mix(h, chips), dice);
+    }
+
+    /**
+     * Hashes a board.
+     *
+     * @param board the whole board, its cards listed by index from zero as a full sync lists them
+     * @return its hashes
+     */
+    public static BoardHash of(Msg.StateSync board) {
+        int n = board.cardIds().length;
+        long[] ranges = new long[(n + RANGE_SIZE - 1) / RANGE_SIZE];
+        for (int k = 0; k < ranges.length; k++) {
+            long h = SEED;
+            for (int i = k * RANGE_SIZE; i < Math.min(n, (k + 1) * RANGE_SIZE); i++) {
+                h = mix(h, board.cardIds()[i]);
+                h = mix(h, Double.doubleToLongBits(board.cardX()[i]));
+                h = mix(h, Double.doubleToLongBits(board.cardY()[i]));
+                h = mix(h, Double.doubleToLongBits(board.cardRot()[i]));
+                h = mix(h, flags(board.cardBackVis()[i], board.cardFrontVis()[i], board.cardTextVis()[i]));
+            }
+            ranges[k] = h;
+        }
+
+        long chips = SEED;
+        for (int i : byHandle(board.chipIds())) {
+            chips = mix(chips, board.chipIds()[i]);
+            chips = mix(chips, Double.doubleToLongBits(board.chipX()[i]));
+            chips = mix(chips, Double.doubleToLongBits(board.chipY()[i]));
+            chips = mix(chips, Double.doubleToLongBits(board.chipRot()[i]));
+            chips = mix(chips, flags(board.chipFrontVis()[i], board.chipBackVis()[i], false));
+            chips = mix(chips, color(board.chipR()[i], board.chipG()[i], board.chipB()[i], board.chipO()[i]));
+        }
+
+        long dice = SEED;
+        for (int i : byHandle(board.dieIds())) {
+            dice = mix(dice, board.dieIds()[i]);
+            dice = mix(dice, Double.doubleToLongBits(board.dieX()[i]));
+            dice = mix(dice, Double.doubleToLongBits(board.dieY()[i]));
+            dice = mix(dice, Double.doubleToLongBits(board.dieRot()[i]));
+            dice = mix(dice, ((long) board.dieSides()[i] << 32) | (board.dieVals()[i] & 0xFFFFFFFFL));
+            dice = mix(dice, color(board.dieR()[i], board.dieG()[i], board.dieB()[i], board.dieO()[i]));
+        }
+        return new BoardHash(ranges, chips, dice);
+    }
+
+    /**
+     * Builds the request for what of the board differs from this one.
+     *
+     * @param view the plain request it stands in for, which says who is asking and what they can see
+     * @return the request
+     */
+    public Msg.SendDiff request(Msg.SendState view) {
+        return new Msg.SendDiff(view.playerId(), view.viewX(), view.viewY(), view.viewWidth(), view.viewHeight(),
+                root, cardRanges.clone(), chips, dice);
+    }
+
+    /** Returns whether the board hashed to the root a request carries: nothing needs sending. */
+    public boolean matches(Msg.SendDiff theirs) {
+        return root == theirs.root();
+    }
+
+    /** Returns whether card range {@code k} hashed the same in a request; false for a range it does not have. */
+    public boolean sameRange(Msg.SendDiff theirs, int k) {
+        return k < theirs.cardRanges().length && theirs.cardRanges().length == cardRanges.length
+                && cardRanges[k] == theirs.cardRanges()[k];
+    }
+
+    /** Returns whether the chip table hashed the same in a request. */
+    public boolean sameChips(Msg.SendDiff theirs) {
+        return chips == theirs.chips();
+    }
+
+    /** Returns whether the dice table hashed the same in a request. */
+    public boolean sameDice(Msg.SendDiff theirs) {
+        return dice == theirs.dice();
+    }
+
+    /** Folds one value into a running hash; a multiply-xorshift step, not meant to resist anyone choosing inputs. */
+    private static long mix(long h, long v) {
+        h = (h ^ v) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private static long flags(boolean a, boolean b, boolean c) {
+        return (a ? 1 : 0) | (b ? 2 : 0) | (c ? 4 : 0);
+    }
+
+    private static long color(double r, double g, double b, double o) {
+        long rg = ((long) Float.floatToIntBits((float) r) << 32) | (Float.floatToIntBits((float) g) & 0xFFFFFFFFL);
+        long bo = ((long) Float.floatToIntBits((float) b) << 32) | (Float.floatToIntBits((float) o) & 0xFFFFFFFFL);
+        return mix(rg, bo);
+    }
+
+    /** Returns the indexes of a table's rows, sorted by the handle in each. */
+    private static int[] byHandle(int[] ids) {
+        return IntStream.range(0, ids.length).boxed()
+                .sorted((a, b) -> Integer.compare(ids[a], ids[b])).mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,57 @@
+package com.mystic.tarotboard.network;
+
+import com.mystic.tarotboard.board.BoardSnapshot;
+import com.mystic.tarotboard.network.NetworkMessage.Msg;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns a full {@link Msg.StateSync}, the board as both ends already copy it out for a joiner,
+ * into the {@link BoardSnapshot} that is saved, and back.
+ *
+ * <p>The two have the same columns, so a save and a sync are one copy of the board; only the
+ * card ids, which in a full sync are just the indexes, are left out of a save.</p>
+ */
+public final class BoardSnapshots {
+
+    private BoardSnapshots() {
+    }
+
+    /**
+     * Returns a board as a snapshot.
+     *
+     * @param cardNames  the deck, as card names
+     * @param full       the whole board, every card by index as a full sync lists them
+     * @param properties whatever else the save records
+     * @return the snapshot, sharing {@code full}'s arrays
+     */
+    public static BoardSnapshot of(List<String> cardNames, Msg.StateSync full, Map<String, String> properties) {
+        return new BoardSnapshot(cardNames, properties,
+                full.cardX(), full.cardY(), full.cardRot(),
+                full.cardBackVis(), full.cardFrontVis(), full.cardTextVis(),
+                full.chipIds(), full.chipX(), full.chipY(), full.chipRot(), full.chipFrontVis(), full.chipBackVis(),
+                full.chipR(), full.chipG(), full.chipB(), full.chipO(),
+                full.dieIds(), full.dieX(), full.dieY(), full.dieRot(), full.dieSides(), full.dieVals(),
+                full.dieR(), full.dieG(), full.dieB(), full.dieO());
+    }
+
+    /**
+     * Returns a snapshot as the full sync of its board.
+     *
+     * @param snapshot the board
+     * @return the sync, sharing the snapshot's arrays
+     */
+    public static Msg.StateSync toSync(BoardSnapshot snapshot) {
+        int[] cardIds = new int[snapshot.cardX().length];
+        for (int i = 0; i < cardIds.length; i++) cardIds[i] = i;
+        return new Msg.StateSync(cardIds, snapshot.cardX(), snapshot.cardY(), snapshot.cardRot(),
+                snapshot.cardBackVis(), snapshot.cardFrontVis(), snapshot.cardTextVis(),
+                snapshot.chipIds(), snapshot.chipX(), snapshot.chipY(), snapshot.chipRot(),
+                snapshot.chipFrontVis(), snapshot.chipBackVis(),
+                snapshot.chipR(), snapshot.chipG(), snapshot.chipB(), snapshot.chipO(),
+                snapshot.dieIds(), snapshot.dieX(), snapshot.dieY(), snapshot.dieRot(),
+                snapshot.dieSides(), snapshot.dieVals(),
+                snapshot.dieR(), snapshot.dieG(), snapshot.dieB(), snapshot.dieO());
+    }
+}
@@ -0,0 +1,65 @@
+package com.mystic.tarotboard.network;
+
+import com.mystic.tarotboard.network.NetworkMessage.Msg;
+import com.mystic.tarotboard.utils.CardCatalog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns a deck into the message that describes it most cheaply, and a {@link Msg.DeckOrder} back
+ * into a deck.
+ *
+ * <p>A reshuffle, a new game and every join used to send the deck as a {@link Msg.CardNamesSync}:
+ * all four thousand names, about a hundred kilobytes, to every player. Both ends build the same
+ * {@link CardCatalog}, so the names themselves never needed to travel — the seed a deck was
+ * shuffled from is enough, and failing that, each card's position in the catalog.</p>
+ */
+public final class DeckOrders {
+
+    private DeckOrders() {
+    }
+
+    /**
+     * Returns the message to send a deck as.
+     *
+     * @param names the deck, as card names
+     * @param seed  the seed it was shuffled from by {@link CardCatalog#shuffledOrder}, or null if
+     *              it has been reordered since, or came from somewhere else
+     * @return a seeded {@link Msg.DeckOrder} when there is a seed; an explicit one when the deck is
+     * this catalog's cards; and only otherwise — a save from another card list — the names in full
+     */
+    public static NetworkMessage message(List<String> names, Long seed) {
+        if (seed != null) {
+            return NetworkMessage.of(new Msg.DeckOrder(CardCatalog.FINGERPRINT, Msg.DeckOrder.SEEDED, seed, new int[0]));
+        }
+        int[] order = CardCatalog.orderOf(names);
+        if (order == null) return NetworkMessage.of(new Msg.CardNamesSync(new ArrayList<>(names)));
+        return NetworkMessage.of(new Msg.DeckOrder(CardCatalog.FINGERPRINT, Msg.DeckOrder.EXPLICIT, 0, order));
+    }
+
+    /**
+     * Expands a deck order into card names, reporting why if it cannot.
+     *
+     * @param m the order received
+     * @return the deck, or null if the sender's catalog differs from this one or the order is not
+     * a valid one; the reason has then been logged
+     */
+    public static List<String> names(Msg.DeckOrder m) {
+        if (m.catalog() != CardCatalog.FINGERPRINT) {
+            System.err.println("Ignoring DeckOrder from a different card list; the other end is built"
+                    + " from another version of the deck.");
+            return null;
+        }
+        List<String> names = switch (m.shuffle()) {
+            case Msg.DeckOrder.SEEDED -> CardCatalog.namesInOrder(CardCatalog.shuffledOrder(m.seed()));
+            case Msg.DeckOrder.EXPLICIT -> CardCatalog.namesInOrder(m.order());
+            default -> null;
+        };
+        if (names == null) {
+            System.err.println("Ignoring DeckOrder with shuffle " + m.shuffle() + " and " + m.order().length
+                    + " positions; it does not describe a " + CardCatalog.NUM_CARDS + "-card deck.");
+        }
+        return names;
+    }
+}
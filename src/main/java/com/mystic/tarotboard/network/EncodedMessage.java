@@ -0,0 +1,74 @@
+package com.mystic.tarotboard.network;
+
+/**
+ * A {@link NetworkMessage} together with the bytes it goes onto the wire as, worked out once and
+ * shared by every connection it is sent to.
+ *
+ * <p>Sending the same message to a whole table used to encode it once per player, which for a
+ * full {@link NetworkMessage.Msg.StateSync} or {@link NetworkMessage.Msg.CardNamesSync} is most of
+ * the cost of the broadcast. Wrapping it in one of these instead encodes it the first time any
+ * connection asks, plain or compressed as that connection takes it, and hands every later one the
+ * same array. The arrays are never written to after they are built, so any number of writers may
+ * send them at once; nothing is pooled, so there is nothing to release either.</p>
+ *
+ * <p>Both encodings are built lazily, since a table whose players all have compression off never
+ * needs the compressed one. Two threads racing to build the same encoding just both build it; the
+ * results are identical, and one of them wins.</p>
+ */
+public final class EncodedMessage {
+    private final NetworkMessage message;
+    private volatile byte[] wireFrame;
+    private volatile byte[] compressedFrame;
+
+    private EncodedMessage(NetworkMessage message) {
+        this.message = message;
+    }
+
+    /**
+     * Wraps a message for sending; nothing is encoded until a connection asks for it.
+     *
+     * @param message the message
+     * @return the wrapper
+     */
+    public static EncodedMessage of(NetworkMessage message) {
+        return new EncodedMessage(message);
+    }
+
+    /**
+     * Returns the wrapped message.
+     *
+     * @return the message
+     */
+    public NetworkMessage message() {
+        return message;
+    }
+
+    /**
+     * Returns the message as a length-prefixed {@link WireCodec} frame.
+     *
+     * @return the frame; shared, so callers must not modify it
+     */
+    public byte[] wireFrame() {
+        byte[] frame = wireFrame;
+        if (frame == null) {
+            frame = WireCodec.encodeFrame(message);
+            wireFrame = frame;
+        }
+        return frame;
+    }
+
+    /**
+     * Returns the message as a {@link WireCodec} frame for a connection that accepts compressed
+     * ones: deflated if it is big enough for that to help, otherwise just {@link #wireFrame()}.
+     *
+     * @return the frame; shared, so callers must not modify it
+     */
+    public byte[] compressedFrame() {
+        byte[] frame = compressedFrame;
+        if (frame == null) {
+            frame = WireCodec.compressFrame(wireFrame());
+            compressedFrame = frame;
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,314 @@
+package com.mystic.tarotboard.network;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * One connection's flow of {@link NetworkMessage}s, as length-prefixed {@link WireCodec} frames.
+ *
+ * <p>A client opens with {@link #HELLO_MAGIC} and a version byte, the server answers with the
+ * same, and from then on both sides write frames. Builds from before the codec spoke Java
+ * serialization, and their messages no longer have the shapes this build's do: pieces went from
+ * {@code "card:N"} strings to int handles, and there are message types they never had. So a peer
+ * that turns out to be one of them is refused with an error saying it needs upgrading, rather
+ * than played with in a format that would garble its moves:</p>
+ * <ul>
+ *   <li>An older client opens with an {@code ObjectOutputStream} header instead of the greeting,
+ *   which starts with {@link ObjectStreamConstants#STREAM_MAGIC}. The server sees that in the
+ *   first two bytes.</li>
+ *   <li>An older server never waits to be greeted: it writes its own stream header the moment it
+ *   accepts. So a client that reads a stream header back knows the server is old.</li>
+ * </ul>
+ *
+ * <p>The greeting's version byte also carries {@link #FEATURE_COMPRESSION} in its top bit, set by
+ * an end that will inflate {@link WireCodec} frames compressed with {@link WireCodec#compressFrame}.
+ * Each end then compresses big frames only toward a peer that set it, so a build that leaves it
+ * off is never sent one.</p>
+ *
+ * <p>A client's greeting may also name a room, for a server that hosts several boards: the version
+ * byte then has {@link #FEATURE_ROOM} set, and a length byte and the name follow it. A server that
+ * hosts one board reads the name and ignores it. The server's reply never names one.</p>
+ *
+ * <p>Not thread-safe; callers serialise writes themselves.</p>
+ */
+public abstract class MessageStream {
+
+    /** Opens a wire-format handshake; chosen so its first two bytes can never be a stream header. */
+    private static final byte[] HELLO_MAGIC = {'T', 'B', 'W'};
+
+    /** The codec revision; both ends must speak the same one. */
+    public static final int WIRE_VERSION = 12;
+
+    /** Set on a greeting's version byte by an end that accepts compressed frames. */
+    private static final int FEATURE_COMPRESSION = 0x80;
+
+    /** Set on a client's greeting's version byte when a room name follows it. */
+    private static final int FEATURE_ROOM = 0x40;
+
+    /** The longest room name a greeting carries, in bytes of UTF-8. */
+    public static final int MAX_ROOM_NAME = 64;
+
+    /** Whether this build offers to accept compressed frames. See {@link #setCompression}. */
+    private static volatile boolean compression = true;
+
+    /** How many bytes a greeting takes: the magic, then one version byte. */
+    public static final int HELLO_LENGTH = HELLO_MAGIC.length + 1;
+
+    /** How long either end waits for the other's greeting before giving up on the connection. */
+    public static final int HANDSHAKE_TIMEOUT_MS = 10_000;
+
+    /**
+     * Sets whether connections made from now on use compression at all: whether they offer to
+     * accept compressed frames, and whether they send any to a peer that offers. On by default.
+     *
+     * @param enabled true to offer compression
+     */
+    public static void setCompression(boolean enabled) {
+        compression = enabled;
+    }
+
+    /**
+     * Writes one message and flushes it.
+     *
+     * @param msg the message to send
+     * @throws IOException if the connection fails
+     */
+    public void write(NetworkMessage msg) throws IOException {
+        write(EncodedMessage.of(msg));
+    }
+
+    /**
+     * Writes one already-wrapped message and flushes it, reusing its encoding if another
+     * connection has already asked for the same format.
+     *
+     * @param msg the message to send
+     * @throws IOException if the connection fails
+     */
+    public abstract void write(EncodedMessage msg) throws IOException;
+
+    /**
+     * Blocks until the next whole message arrives.
+     *
+     * @return the message
+     * @throws IOException if the connection fails or the stream is corrupt
+     */
+    public abstract NetworkMessage read() throws IOException;
+
+    /**
+     * Client side of the handshake.
+     *
+     * @param socket a freshly connected socket
+     * @return the negotiated stream
+     * @throws IOException if the connection fails, or the server predates the codec or answers
+     *                     with something unknown
+     */
+    public static MessageStream connect(Socket socket) throws IOException {
+        return connect(socket, "");
+    }
+
+    /**
+     * As {@link #connect(Socket)}, asking for a room of a server that hosts several.
+     *
+     * @param socket a freshly connected socket
+     * @param room   the room to join, or empty for the server's default one
+     * @return the negotiated stream
+     * @throws IOException as for {@link #connect(Socket)}
+     */
+    public static MessageStream connect(Socket socket, String room) throws IOException {
+        OutputStream rawOut = new BufferedOutputStream(socket.getOutputStream());
+        rawOut.write(hello(room));
+        rawOut.flush();
+
+        InputStream rawIn = new BufferedInputStream(socket.getInputStream());
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+        byte[] reply = new byte[HELLO_LENGTH];
+        new DataInputStream(rawIn).readFully(reply, 0, 2);
+        if (isStreamHeader(reply)) throw outdated("The server");
+        new DataInputStream(rawIn).readFully(reply, 2, reply.length - 2);
+        boolean compress = checkHello(reply);
+        socket.setSoTimeout(0);
+        return new Wire(rawIn, rawOut, compress);
+    }
+
+    /**
+     * Server side of the handshake: waits for the client's greeting and answers it.
+     *
+     * @param socket a freshly accepted socket
+     * @return the negotiated stream
+     * @throws IOException if the client predates the codec, sends something else, or a codec
+     *                     version this build does not speak
+     */
+    public static MessageStream accept(Socket socket) throws IOException {
+        BufferedInputStream rawIn = new BufferedInputStream(socket.getInputStream());
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+        byte[] hello = new byte[HELLO_LENGTH];
+        new DataInputStream(rawIn).readFully(hello, 0, 2);
+        if (isStreamHeader(hello)) throw outdated("The client");
+        new DataInputStream(rawIn).readFully(hello, 2, hello.length - 2);
+        boolean compress = checkHello(hello);
+        // One board only, so whatever room the client named is the one it gets.
+        if ((hello[HELLO_MAGIC.length] & FEATURE_ROOM) != 0) rawIn.skipNBytes(rawIn.read());
+        OutputStream rawOut = new BufferedOutputStream(socket.getOutputStream());
+        rawOut.write(hello());
+        rawOut.flush();
+        socket.setSoTimeout(0);
+        return new Wire(rawIn, rawOut, compress);
+    }
+
+    private static boolean isStreamHeader(byte[] b) {
+        return isStreamHeader(b[0], b[1]);
+    }
+
+    /**
+     * Returns whether a connection's first two bytes are an {@code ObjectOutputStream} header,
+     * meaning the peer predates the codec and must be refused with {@link #outdated}.
+     *
+     * @param first  the first byte received
+     * @param second the second byte received
+     * @return true for a Java-serialization peer
+     */
+    public static boolean isStreamHeader(byte first, byte second) {
+        return ((first & 0xFF) << 8 | (second & 0xFF)) == (ObjectStreamConstants.STREAM_MAGIC & 0xFFFF);
+    }
+
+    /**
+     * Returns the error a connection fails with when the peer predates the codec.
+     *
+     * @param peer which end is out of date, as the sentence's subject: "The server" or "The client"
+     * @return the error, saying the peer must be upgraded
+     */
+    public static IOException outdated(String peer) {
+        return new IOException(peer + " runs a TarotBoard from before the binary protocol, and must be"
+                + " upgraded to play with this one");
+    }
+
+    /**
+     * Returns the greeting this build sends, which is also the server's reply to a good one.
+     *
+     * @return a fresh {@link #HELLO_LENGTH}-byte array
+     */
+    public static byte[] hello() {
+        byte[] hello = Arrays.copyOf(HELLO_MAGIC, HELLO_LENGTH);
+        hello[HELLO_MAGIC.length] = (byte) (WIRE_VERSION | (compression ? FEATURE_COMPRESSION : 0));
+        return hello;
+    }
+
+    /**
+     * Returns the greeting a client sends to join a room.
+     *
+     * @param room the room's name, or empty for the server's default room
+     * @return the greeting; just {@link #hello()} when {@code room} is empty
+     * @throws IllegalArgumentException if the name is longer than {@link #MAX_ROOM_NAME} bytes
+     */
+    public static byte[] hello(String room) {
+        byte[] hello = hello();
+        if (room.isEmpty()) return hello;
+        byte[] name = room.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_ROOM_NAME) throw new IllegalArgumentException("Room name is too long: " + room);
+        byte[] greeting = Arrays.copyOf(hello, HELLO_LENGTH + 1 + name.length);
+        greeting[HELLO_MAGIC.length] |= (byte) FEATURE_ROOM;
+        greeting[HELLO_LENGTH] = (byte) name.length;
+        System.arraycopy(name, 0, greeting, HELLO_LENGTH + 1, name.length);
+        return greeting;
+    }
+
+    /**
+     * Returns how long the greeting at the start of a buffer is, room name and all, without
+     * moving the buffer's position.
+     *
+     * @param in bytes received, in read mode, from the start of the greeting
+     * @return the greeting's length, or -1 if not enough of it has arrived to tell
+     */
+    public static int greetingLength(ByteBuffer in) {
+        int at = in.position();
+        if (in.remaining() < HELLO_LENGTH) return -1;
+        if ((in.get(at + HELLO_MAGIC.length) & FEATURE_ROOM) == 0) return HELLO_LENGTH;
+        if (in.remaining() < HELLO_LENGTH + 1) return -1;
+        return HELLO_LENGTH + 1 + (in.get(at + HELLO_LENGTH) & 0xFF);
+    }
+
+    /**
+     * Returns the room a whole greeting asks for, without moving the buffer's position.
+     *
+     * @param in bytes received, in read mode, holding at least {@link #greetingLength} of them
+     * @return the room's name, or empty if the greeting names none
+     */
+    public static String room(ByteBuffer in) {
+        int at = in.position();
+        if ((in.get(at + HELLO_MAGIC.length) & FEATURE_ROOM) == 0) return "";
+        int length = in.get(at + HELLO_LENGTH) & 0xFF;
+        return new String(in.array(), in.arrayOffset() + at + HELLO_LENGTH + 1, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks a peer's greeting.
+     *
+     * @param hello the first {@link #HELLO_LENGTH} bytes received
+     * @return whether to send this peer compressed frames: it accepts them, and this end has
+     * compression on
+     * @throws IOException if it is not a TarotBoard greeting, or names a codec version this build
+     *                     does not speak
+     */
+    public static boolean checkHello(byte[] hello) throws IOException {
+        for (int i = 0; i < HELLO_MAGIC.length; i++) {
+            if (hello[i] != HELLO_MAGIC[i]) throw new StreamCorruptedException("Not a TarotBoard connection");
+        }
+        int version = hello[HELLO_MAGIC.length] & ~(FEATURE_COMPRESSION | FEATURE_ROOM) & 0xFF;
+        if (version != WIRE_VERSION) {
+            throw new IOException("Peer speaks protocol version " + version + ", this build speaks " + WIRE_VERSION);
+        }
+        return compression && (hello[HELLO_MAGIC.length] & FEATURE_COMPRESSION) != 0;
+    }
+
+    /** {@link WireCodec} payloads, each behind a varint length prefix. */
+    private static final class Wire extends MessageStream {
+        /**
+         * How much of a frame is made room for before any of it arrives. A longer frame's array
+         * doubles as its bytes come in, so a length prefix alone pins no more than this.
+         */
+        private static final int FIRST_READ_BYTES = 64 * 1024;
+
+        private final DataInputStream in;
+        private final OutputStream out;
+        /** Whether the peer said it accepts compressed frames. */
+        private final boolean compress;
+
+        Wire(InputStream in, OutputStream out, boolean compress) {
+            this.in = new DataInputStream(in);
+            this.out = out;
+            this.compress = compress;
+        }
+
+        @Override
+        public void write(EncodedMessage msg) throws IOException {
+            out.write(compress ? msg.compressedFrame() : msg.wireFrame());
+            out.flush();
+        }
+
+        @Override
+        public NetworkMessage read() throws IOException {
+            int length = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (shift >= 35) throw new StreamCorruptedException("Malformed frame length");
+                int b = in.readUnsignedByte();
+                length |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) break;
+            }
+            if (length <= 0 || length > WireCodec.MAX_FRAME_BYTES) {
+                throw new StreamCorruptedException("Bad frame length " + length);
+            }
+            byte[] payload = new byte[Math.min(length, FIRST_READ_BYTES)];
+            int read = 0;
+            while (read < length) {
+                if (read == payload.length) payload = Arrays.copyOf(payload, (int) Math.min(length, payload.length * 2L));
+                int n = in.read(payload, read, payload.length - read);
+                if (n < 0) throw new EOFException();
+                read += n;
+            }
+            return WireCodec.decode(payload, 0, length);
+        }
+    }
+}
@@ -41,6 +41,17 @@ public record NetworkMessage(String type, Msg data) implements Serializable {
         record CursorMove(int playerId, double x, double y) implements Msg {
         }
 
+        /**
+         * Where several players' cursors have moved since the last one, in parallel arrays.
+         *
+         * <p>A server relaying on a tick sends this once per tick in place of every
+         * {@link CursorMove} it received, so a table of N players costs each of them one message
+         * per tick rather than N - 1. Every player gets the same frame; a receiver skips its own
+         * entry.</p>
+         */
+        record CursorFrame(int[] playerIds, double[] x, double[] y) implements Msg {
+        }
+
         /**
          * A cursor image update from a player.
          */
@@ -49,8 +60,10 @@ public record NetworkMessage(String type, Msg data) implements Serializable {
 
         /**
          * A piece being moved to a new position.
+         *
+         * <p>Pieces are named by int handle throughout; see {@link com.mystic.tarotboard.utils.PieceHandles}.</p>
          */
-        record PieceMove(int playerId, String pieceId, double x, double y) implements Msg {
+        record PieceMove(int playerId, int piece, double x, double y) implements Msg {
         }
 
         /**
@@ -61,52 +74,74 @@ public record NetworkMessage(String type, Msg data) implements Serializable {
          * single blocking socket write per frame instead of thousands, which is what let the
          * big piles keep up with the pointer.</p>
          */
-        record PieceMoveBatch(int playerId, ArrayList<String> pieceIds, double x, double y) implements Msg {
+        record PieceMoveBatch(int playerId, int[] pieces, double x, double y) implements Msg {
+        }
+
+        /**
+         * The start of a pile drag: names the pieces in the pile once, under a number the
+         * dragging player picked, and moves them all to a first position.
+         *
+         * <p>Every later frame of the same drag is a {@link PileMove} naming only that number, so
+         * a drag of the whole deck costs its thousands of handles once rather than on every frame.
+         * Each player has at most one pile in hand; a new grab replaces the last. See
+         * {@link com.mystic.tarotboard.network.PileRegistry}.</p>
+         */
+        record PileGrab(int playerId, int pile, int[] pieces, double x, double y) implements Msg {
+        }
+
+        /**
+         * A pile named by an earlier {@link PileGrab} from the same player moving to a new
+         * position, the same size however many pieces the pile holds.
+         *
+         * <p>Ignored if the sender's current pile is not the one named: a move that outlived its
+         * pile has nothing left to move.</p>
+         */
+        record PileMove(int playerId, int pile, double x, double y) implements Msg {
         }
 
         /**
          * A piece being rotated to a new angle.
          */
-        record PieceRotate(int playerId, String pieceId, double rotation) implements Msg {
+        record PieceRotate(int playerId, int piece, double rotation) implements Msg {
         }
 
         /**
          * A piece having its face visibility toggled.
          */
-        record PieceFlip(int playerId, String pieceId, boolean frontVisible, boolean backVisible,
+        record PieceFlip(int playerId, int piece, boolean frontVisible, boolean backVisible,
                          boolean textVisible) implements Msg {
         }
 
         /**
          * A piece being brought to the front of the view.
          */
-        record PieceToFront(int playerId, String pieceId) implements Msg {
+        record PieceToFront(int playerId, int piece) implements Msg {
         }
 
         /**
          * A new chip being spawned on the board.
          */
-        record SpawnChip(int playerId, String pieceId, double x, double y, double red, double green, double blue,
+        record SpawnChip(int playerId, int piece, double x, double y, double red, double green, double blue,
                          double opacity) implements Msg {
         }
 
         /**
          * A new die being spawned on the board.
          */
-        record SpawnDie(int playerId, String pieceId, double x, double y, int sides, double value, double red,
+        record SpawnDie(int playerId, int piece, double x, double y, int sides, double value, double red,
                         double green, double blue, double opacity) implements Msg {
         }
 
         /**
          * A piece being deleted from the board.
          */
-        record DeletePiece(int playerId, String pieceId) implements Msg {
+        record DeletePiece(int playerId, int piece) implements Msg {
         }
 
         /**
          * A die roll result.
          */
-        record DieRoll(int playerId, String pieceId, int value) implements Msg {
+        record DieRoll(int playerId, int piece, int value) implements Msg {
         }
 
         /**
@@ -135,14 +170,61 @@ public record NetworkMessage(String type, Msg data) implements Serializable {
 
         /**
          * Assigns a player ID to a newly connected client.
+         *
+         * <p>{@code resumeToken} is the secret the client presents in a {@link Resume} to be this
+         * player again after its connection drops, and {@code seq} the {@link Sequenced} number
+         * of the last message sent before it joined, which it has therefore not missed. A server
+         * that keeps no log for resuming sends zero for both.</p>
+         */
+        record YourId(int playerId, long resumeToken, long seq) implements Msg {
+        }
+
+        /**
+         * A message that changes the board, numbered in the order the server relayed it to the
+         * table, so a client that reconnects can say how far it had got.
+         *
+         * <p>Only ever sent by a server that keeps a log to resume from, and unwrapped by the
+         * client's connection before the message is handed on; nothing else sees one.</p>
+         */
+        record Sequenced(long seq, Msg message) implements Msg {
+        }
+
+        /**
+         * Sent by a client that has reconnected, asking to be the player it was before and to be
+         * sent what it missed: everything after {@code lastSeq}.
+         */
+        record Resume(int playerId, long resumeToken, long lastSeq) implements Msg {
+        }
+
+        /**
+         * The answer to a {@link Resume}. If {@code resumed}, the client is its old player again
+         * and has been sent every message it missed. If not — the server never heard of it, or
+         * has since forgotten what it missed — it is a new player and must ask for the board.
          */
-        record YourId(int playerId) implements Msg {
+        record ResumeResult(boolean resumed) implements Msg {
         }
 
         /**
          * Request to receive the full board state.
+         *
+         * <p>The rest is the part of the board the requester can see, in board coordinates, so
+         * the pieces there can be sent first; a width or height of zero means it is not known,
+         * and the board is sent in handle order.</p>
+         */
+        record SendState(int playerId, double viewX, double viewY, double viewWidth, double viewHeight)
+                implements Msg {
+        }
+
+        /**
+         * Request to receive the parts of the board state that differ from the requester's own.
+         *
+         * <p>The view is as in {@link SendState}; the rest is the {@link
+         * com.mystic.tarotboard.network.BoardHash} of the board the requester already has, which
+         * the answer is then cut down to the card ranges, and the chip or dice table, whose hashes
+         * are not the same at both ends.</p>
          */
-        record SendState(int playerId) implements Msg {
+        record SendDiff(int playerId, double viewX, double viewY, double viewWidth, double viewHeight,
+                        long root, long[] cardRanges, long chips, long dice) implements Msg {
         }
 
         /**
@@ -151,6 +233,27 @@ public record NetworkMessage(String type, Msg data) implements Serializable {
         record CardNamesSync(ArrayList<String> cardNames) implements Msg {
         }
 
+        /**
+         * The order of the deck, as positions in {@link com.mystic.tarotboard.utils.CardCatalog#NAMES}
+         * rather than the thousands of names a {@link CardNamesSync} spells out.
+         *
+         * <p>{@code shuffle} says how to read it. {@link #SEEDED}: the deck is
+         * {@link com.mystic.tarotboard.utils.CardCatalog#shuffledOrder} of {@code seed}, and
+         * {@code order} is empty — what a fresh shuffle sends, a few bytes in all.
+         * {@link #EXPLICIT}: {@code order} is the catalog position of each card in turn, for a deck
+         * that did not come straight from a seed, such as one restored from a save.</p>
+         *
+         * <p>{@code catalog} is the sender's {@link com.mystic.tarotboard.utils.CardCatalog#FINGERPRINT};
+         * a receiver built from a different card list refuses the order instead of dealing the wrong
+         * cards. See {@link com.mystic.tarotboard.network.DeckOrders}.</p>
+         */
+        record DeckOrder(long catalog, int shuffle, long seed, int[] order) implements Msg {
+            /** {@code order} holds every card's catalog position. */
+            public static final int EXPLICIT = 0;
+            /** The deck is shuffled from {@code seed}; {@code order} is empty. */
+            public static final int SEEDED = 1;
+        }
+
         /**
          * Request to become an operator, optionally providing a password.
          */
@@ -170,15 +273,48 @@ public record NetworkMessage(String type, Msg data) implements Serializable {
         }
 
         /**
-         * Full state synchronization containing all cards, chips, and dice data.
+         * A block of piece handles the server has set aside for one client's spawns.
+         *
+         * <p>Sent unprompted right after {@link YourId}, and again in answer to each
+         * {@link HandleRequest}. The block is {@code first} up to but not including
+         * {@code first + count}; nobody else will be given any of it.</p>
+         */
+        record HandleGrant(int first, int count) implements Msg {
+        }
+
+        /**
+         * A client running low on spawn handles asking the server for another {@link HandleGrant}.
+         *
+         * <p>Answered only to the sender and never relayed.</p>
+         */
+        record HandleRequest(int playerId) implements Msg {
+        }
+
+        /**
+         * Announces a board sync sent as {@code chunks} {@link StateSync}s, which follow it in order.
+         *
+         * <p>Live traffic may arrive between the chunks. A receiver keeps what it hears live over
+         * what a later chunk says about the same piece, since the chunks were all cut from one
+         * snapshot taken before this was sent.</p>
+         *
+         * <p>{@code chips} and {@code dice} say whether the chunks bring the whole of that table,
+         * so the receiver should clear its own first; a sync answering a {@link SendDiff} leaves
+         * out a table the receiver already has right.</p>
+         */
+        record SyncBegin(int chunks, boolean chips, boolean dice) implements Msg {
+        }
+
+        /**
+         * Board state for a range of cards and some of the chips and dice; either the whole board,
+         * or one chunk of a sync announced by a {@link SyncBegin}.
          */
         record StateSync(
                 int[] cardIds, double[] cardX, double[] cardY, double[] cardRot,
                 boolean[] cardBackVis, boolean[] cardFrontVis, boolean[] cardTextVis,
-                String[] chipIds, double[] chipX, double[] chipY, double[] chipRot,
+                int[] chipIds, double[] chipX, double[] chipY, double[] chipRot,
                 boolean[] chipFrontVis, boolean[] chipBackVis,
                 double[] chipR, double[] chipG, double[] chipB, double[] chipO,
-                String[] dieIds, double[] dieX, double[] dieY, double[] dieRot,
+                int[] dieIds, double[] dieX, double[] dieY, double[] dieRot,
                 int[] dieSides, int[] dieVals,
                 double[] dieR, double[] dieG, double[] dieB, double[] dieO
         ) implements Msg {
@@ -0,0 +1,87 @@
+package com.mystic.tarotboard.network;
+
+import com.mystic.tarotboard.network.NetworkMessage.Msg;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The pile each player is dragging, as named by their latest {@link Msg.PileGrab}, so that a
+ * {@link Msg.PileMove} can be turned back into the pieces it moves.
+ *
+ * <p>Everything that applies or relays pile drags keeps one of these — the server, its relay, and
+ * every board — and they all resolve a move by the same rule: the sender's current pile if its
+ * number matches, otherwise nothing. The pile is not worked out again from where the pieces lie;
+ * the dragging player already did that once, and every other copy of the board might disagree
+ * about which cards are within a few pixels of the anchor.</p>
+ *
+ * <p>One pile per player, replaced by their next grab and dropped when they leave, so this never
+ * holds more than one pile per player at the table. Not thread-safe.</p>
+ */
+public final class PileRegistry {
+
+    private record Pile(int id, int[] pieces) {
+    }
+
+    /** What {@link #forEach} is given each pile as. */
+    public interface PileAction {
+        void accept(int playerId, int pile, int[] pieces);
+    }
+
+    private final Map<Integer, Pile> piles = new HashMap<>();
+
+    /**
+     * Records a player's new pile, replacing the one they held before.
+     *
+     * @param grab the grab
+     */
+    public void grab(Msg.PileGrab grab) {
+        piles.put(grab.playerId(), new Pile(grab.pile(), grab.pieces()));
+    }
+
+    /**
+     * Returns the pieces a pile move applies to.
+     *
+     * @param move the move
+     * @return the pile's pieces, shared and not to be modified; or null if the sender's current
+     * pile is not the one the move names
+     */
+    public int[] resolve(Msg.PileMove move) {
+        Pile pile = piles.get(move.playerId());
+        return pile != null && pile.id == move.pile() ? pile.pieces : null;
+    }
+
+    /**
+     * Drops a player's pile.
+     *
+     * @param playerId the player
+     */
+    public void forget(int playerId) {
+        piles.remove(playerId);
+    }
+
+    /**
+     * Drops the piles of every player not in the given list.
+     *
+     * @param players the players still at the table
+     */
+    public void retain(Collection<NetworkMessage.PlayerInfo> players) {
+        piles.keySet().removeIf(id -> players.stream().noneMatch(p -> p.id() == id));
+    }
+
+    /**
+     * Calls {@code action} with each player's current pile.
+     *
+     * @param action given the player, the pile's number and its pieces, which are shared and not
+     *               to be modified
+     */
+    public void forEach(PileAction action) {
+        piles.forEach((playerId, pile) -> action.accept(playerId, pile.id, pile.pieces));
+    }
+
+    /** Drops every pile. */
+    public void clear() {
+        piles.clear();
+    }
+}
@@ -0,0 +1,195 @@
+package com.mystic.tarotboard.network;
+
+import com.mystic.tarotboard.network.NetworkMessage.Msg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Cuts a board snapshot into the {@link Msg.SyncBegin} and bounded {@link Msg.StateSync} chunks a
+ * joiner is sent.
+ *
+ * <p>A join used to be answered with the whole board in one message. Until it had been written,
+ * the joiner's connection carried nothing else, so everyone else's moves queued up behind it; and
+ * the joiner applied all of it in one frame. Cut into chunks, the sync can be paced out between
+ * live messages (see {@link com.mystic.tarotboard.network.server.GameServer#sendPaced}), and
+ * applied a chunk per frame, with a progress bar that moves.</p>
+ *
+ * <p>Each chunk holds a bounded number of cards, chips and dice, so none is more than a few
+ * kilobytes however the table is laid out. Given the part of the board the joiner can see, the
+ * first chunk holds the pieces in and around it, nearest its middle first, and the rest follow in
+ * handle order: what the joiner is looking at is right almost at once, however big the table.
+ * Without one, every chunk is a run of consecutive handles.</p>
+ *
+ * <p>Answering a {@link Msg.SendDiff}, only what hashes differently from the requester's own
+ * board is split and sent at all.</p>
+ */
+public final class SyncChunks {
+    /** Most cards in one chunk; a few kilobytes even when every one of them is off the deck. */
+    public static final int CARDS_PER_CHUNK = 512;
+
+    /** Most chips, and separately most dice, in one chunk; they cost more bytes apiece than cards. */
+    public static final int PIECES_PER_CHUNK = 128;
+
+    private SyncChunks() {
+    }
+
+    /**
+     * Splits a snapshot for sending, in handle order.
+     *
+     * @param full the whole board
+     * @return a {@link Msg.SyncBegin} followed by the chunks it announces, at least one
+     */
+    public static List<NetworkMessage> split(Msg.StateSync full) {
+        return split(full, new Msg.SendState(-1, 0, 0, 0, 0));
+    }
+
+    /**
+     * Splits a snapshot for sending, the pieces the requester can see first.
+     *
+     * @param full    the whole board
+     * @param request the request being answered, which says what the requester can see
+     * @return a {@link Msg.SyncBegin} followed by the chunks it announces, at least one
+     */
+    public static List<NetworkMessage> split(Msg.StateSync full, Msg.SendState request) {
+        return split(full, request, all(full.cardIds().length), true, true);
+    }
+
+    /**
+     * Splits what of a snapshot differs from the requester's board for sending, the pieces the
+     * requester can see first: the card ranges that hash differently (see {@link BoardHash}), and
+     * the chip or dice table only if it does.
+     *
+     * @param full    the whole board
+     * @param request the request being answered, with the hashes of the requester's board
+     * @return a {@link Msg.SyncBegin} followed by the chunks it announces, at least one, though
+     * with an equal root hash it is empty
+     */
+    public static List<NetworkMessage> split(Msg.StateSync full, Msg.SendDiff request) {
+        return split(full, BoardHash.of(full), request);
+    }
+
+    /**
+     * Splits what of a snapshot differs from the requester's board for sending, as
+     * {@link #split(Msg.StateSync, Msg.SendDiff)} does, given the snapshot's hashes already.
+     *
+     * @param full    the whole board
+     * @param ours    {@code full}'s hashes
+     * @param request the request being answered, with the hashes of the requester's board
+     * @return a {@link Msg.SyncBegin} followed by the chunks it announces
+     */
+    public static List<NetworkMessage> split(Msg.StateSync full, BoardHash ours, Msg.SendDiff request) {
+        var view = new Msg.SendState(request.playerId(), request.viewX(), request.viewY(),
+                request.viewWidth(), request.viewHeight());
+        if (ours.matches(request)) return split(full, view, new int[0], false, false);
+        int n = full.cardIds().length;
+        int[] cards = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (!ours.sameRange(request, i / BoardHash.RANGE_SIZE)) cards[count++] = i;
+        }
+        return split(full, view, Arrays.copyOf(cards, count), !ours.sameChips(request), !ours.sameDice(request));
+    }
+
+    /**
+     * Splits the given cards, and the chip and dice tables if asked, for sending.
+     *
+     * @param cards the indexes of the cards to send, ascending
+     */
+    private static List<NetworkMessage> split(Msg.StateSync full, Msg.SendState request, int[] cards,
+                                              boolean chips, boolean dice) {
+        int[] cardOrder = order(full.cardX(), full.cardY(), cards, request);
+        int[] chipOrder = chips ? order(full.chipX(), full.chipY(), all(full.chipIds().length), request) : new int[0];
+        int[] dieOrder = dice ? order(full.dieX(), full.dieY(), all(full.dieIds().length), request) : new int[0];
+        int n = Math.max(1, Math.max(chunksFor(cardOrder.length, CARDS_PER_CHUNK),
+                Math.max(chunksFor(chipOrder.length, PIECES_PER_CHUNK),
+                        chunksFor(dieOrder.length, PIECES_PER_CHUNK))));
+        List<NetworkMessage> out = new ArrayList<>(n + 1);
+        out.add(NetworkMessage.of(new Msg.SyncBegin(n, chips, dice)));
+        for (int k = 0; k < n; k++) {
+            int[] c = slice(cardOrder, k, CARDS_PER_CHUNK);
+            int[] p = slice(chipOrder, k, PIECES_PER_CHUNK);
+            int[] d = slice(dieOrder, k, PIECES_PER_CHUNK);
+            out.add(NetworkMessage.of(new Msg.StateSync(
+                    pick(full.cardIds(), c), pick(full.cardX(), c), pick(full.cardY(), c), pick(full.cardRot(), c),
+                    pick(full.cardBackVis(), c), pick(full.cardFrontVis(), c), pick(full.cardTextVis(), c),
+                    pick(full.chipIds(), p), pick(full.chipX(), p), pick(full.chipY(), p), pick(full.chipRot(), p),
+                    pick(full.chipFrontVis(), p), pick(full.chipBackVis(), p),
+                    pick(full.chipR(), p), pick(full.chipG(), p), pick(full.chipB(), p), pick(full.chipO(), p),
+                    pick(full.dieIds(), d), pick(full.dieX(), d), pick(full.dieY(), d), pick(full.dieRot(), d),
+                    pick(full.dieSides(), d), pick(full.dieVals(), d),
+                    pick(full.dieR(), d), pick(full.dieG(), d), pick(full.dieB(), d), pick(full.dieO(), d))));
+        }
+        return out;
+    }
+
+    /**
+     * Returns the order to send pieces in, as indexes into their arrays: of the pieces to send,
+     * those within the requester's view, grown by half again on every side, nearest its middle
+     * first; then the rest as they come. Without a view, simply as they come.
+     *
+     * @param send the indexes of the pieces to send, ascending
+     */
+    private static int[] order(double[] x, double[] y, int[] send, Msg.SendState view) {
+        double w = view.viewWidth(), h = view.viewHeight();
+        if (!(w > 0 && h > 0)) return send;
+        double cx = view.viewX() + w / 2, cy = view.viewY() + h / 2;
+        List<Integer> near = new ArrayList<>();
+        for (int i : send) {
+            if (Math.abs(x[i] - cx) <= w && Math.abs(y[i] - cy) <= h) near.add(i);
+        }
+        near.sort(Comparator.comparingDouble(i -> Math.hypot(x[i] - cx, y[i] - cy)));
+        int[] order = new int[send.length];
+        boolean[] taken = new boolean[x.length];
+        int k = 0;
+        for (int i : near) {
+            order[k++] = i;
+            taken[i] = true;
+        }
+        for (int i : send) {
+            if (!taken[i]) order[k++] = i;
+        }
+        return order;
+    }
+
+    private static int[] all(int n) {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) a[i] = i;
+        return a;
+    }
+
+    /**
+     * The indexes chunk {@code k} sends, in ascending order so the ids go out as short gaps; the
+     * chunk is applied all at once, so which of them came first no longer matters.
+     */
+    private static int[] slice(int[] order, int k, int perChunk) {
+        int from = Math.min(k * perChunk, order.length);
+        int[] s = Arrays.copyOfRange(order, from, Math.min(from + perChunk, order.length));
+        Arrays.sort(s);
+        return s;
+    }
+
+    private static int[] pick(int[] a, int[] idx) {
+        int[] out = new int[idx.length];
+        for (int j = 0; j < idx.length; j++) out[j] = a[idx[j]];
+        return out;
+    }
+
+    private static double[] pick(double[] a, int[] idx) {
+        double[] out = new double[idx.length];
+        for (int j = 0; j < idx.length; j++) out[j] = a[idx[j]];
+        return out;
+    }
+
+    private static boolean[] pick(boolean[] a, int[] idx) {
+        boolean[] out = new boolean[idx.length];
+        for (int j = 0; j < idx.length; j++) out[j] = a[idx[j]];
+        return out;
+    }
+
+    private static int chunksFor(int count, int perChunk) {
+        return (count + perChunk - 1) / perChunk;
+    }
+}
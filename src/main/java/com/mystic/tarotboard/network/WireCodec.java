@@ -0,0 +1,1012 @@
+package com.mystic.tarotboard.network;
+
+import com.mystic.tarotboard.network.NetworkMessage.Msg;
+import com.mystic.tarotboard.network.NetworkMessage.PlayerInfo;
+import com.mystic.tarotboard.utils.CardCatalog;
+import com.mystic.tarotboard.utils.PieceHandles;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Hand-rolled binary encoding of {@link NetworkMessage}, used once both ends of a connection
+ * have agreed on it (see {@link MessageStream}).
+ *
+ * <p>Java serialization re-sent the class descriptors of the record, its {@code type} string and
+ * the boxed component metadata with every single message, because {@code reset()} after each
+ * write — needed so the stream does not pin every message ever sent — also throws away the
+ * descriptors it would otherwise have reused. A {@code PieceMove} came to a few hundred bytes
+ * to say one int and two doubles. Here it is a tag byte and the fields themselves.</p>
+ *
+ * <p>A payload is one tag byte naming the record type, then its components in declaration order:
+ * ints as zigzag varints (piece handles, never negative, as plain varints), doubles as their raw eight bytes, strings as a varint length and UTF-8,
+ * and primitive arrays as a varint count followed by the elements back to back. The type string
+ * is not sent at all; it is only ever the record's simple name, so the reader rebuilds it.</p>
+ *
+ * <p>{@link Msg.StateSync} is the exception, being the one message big enough to matter; see
+ * {@link #writeCards}.</p>
+ *
+ * <p>The tags are the protocol: a number, once given to a record, must not be reused for a
+ * different one. Only the low seven bits are tags; the high bit is kept free for per-frame
+ * flags.</p>
+ *
+ * <p>The one flag so far is {@link #FLAG_COMPRESSED}: the rest of the payload is then the length
+ * it inflates to, as a varint, and a raw deflate stream of it. Only a peer that offered to accept
+ * such frames in its greeting is sent any; see {@link #compressFrame}.</p>
+ */
+public final class WireCodec {
+
+    private WireCodec() {
+    }
+
+    /** Largest payload either side will accept; anything bigger is a corrupt length, not a message. */
+    public static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * The most deflate ever expands its output by, a little over 1000 to 1. A compressed payload
+     * claiming to inflate to more than this many times its size is lying, and is refused before
+     * the room for it is allocated.
+     */
+    private static final int MAX_INFLATE_RATIO = 1032;
+
+    /** Longest a frame's varint length prefix can be. */
+    private static final int MAX_PREFIX_BYTES = 5;
+
+    private static final int TAG_PLAYER_JOIN = 1;
+    private static final int TAG_PLAYER_LEAVE = 2;
+    private static final int TAG_PLAYER_LIST = 3;
+    private static final int TAG_CURSOR_MOVE = 4;
+    private static final int TAG_CURSOR_IMAGE = 5;
+    private static final int TAG_PIECE_MOVE = 6;
+    private static final int TAG_PIECE_MOVE_BATCH = 7;
+    private static final int TAG_PIECE_ROTATE = 8;
+    private static final int TAG_PIECE_FLIP = 9;
+    private static final int TAG_PIECE_TO_FRONT = 10;
+    private static final int TAG_SPAWN_CHIP = 11;
+    private static final int TAG_SPAWN_DIE = 12;
+    private static final int TAG_DELETE_PIECE = 13;
+    private static final int TAG_DIE_ROLL = 14;
+    private static final int TAG_NEW_GAME = 15;
+    private static final int TAG_RESHUFFLE_CARDS = 16;
+    private static final int TAG_RESET_DICE = 17;
+    private static final int TAG_RESET_CHIPS = 18;
+    private static final int TAG_YOUR_ID = 19;
+    private static final int TAG_SEND_STATE = 20;
+    private static final int TAG_CARD_NAMES_SYNC = 21;
+    private static final int TAG_REQUEST_OPERATOR = 22;
+    private static final int TAG_OPERATOR_STATUS = 23;
+    private static final int TAG_SETUP_GAME = 24;
+    private static final int TAG_STATE_SYNC = 25;
+    private static final int TAG_HANDLE_GRANT = 26;
+    private static final int TAG_HANDLE_REQUEST = 27;
+    private static final int TAG_CURSOR_FRAME = 28;
+    private static final int TAG_PILE_GRAB = 29;
+    private static final int TAG_PILE_MOVE = 30;
+    private static final int TAG_DECK_ORDER = 31;
+    private static final int TAG_SYNC_BEGIN = 32;
+    private static final int TAG_SEQUENCED = 33;
+    private static final int TAG_RESUME = 34;
+    private static final int TAG_RESUME_RESULT = 35;
+    private static final int TAG_SEND_DIFF = 36;
+
+    /** Set on the tag byte of a frame whose payload after it is deflated. */
+    private static final int FLAG_COMPRESSED = 0x80;
+
+    /**
+     * Smallest payload worth compressing. Below this, what deflate could save is not worth the
+     * time, and the moves and cursors that make up nearly all traffic never come near it.
+     */
+    public static final int COMPRESS_THRESHOLD = 1024;
+
+    /** Positions go as whole sixteenths of a pixel whenever that is exact; see {@link Writer#fixed}. */
+    private static final int FIXED_ONE = 16;
+    /** Largest magnitude, in sixteenths, sent in fixed point; anything further out goes as a double. */
+    private static final long FIXED_LIMIT = 1 << 29;
+
+    /**
+     * Encodes a message into a standalone payload, without the frame's length prefix.
+     *
+     * @param msg the message to encode
+     * @return the encoded payload
+     */
+    public static byte[] encode(NetworkMessage msg) {
+        Writer w = new Writer(64);
+        write(w, msg.data());
+        return w.toByteArray();
+    }
+
+    /**
+     * Encodes a message as a whole frame: the varint length prefix followed by the payload, ready
+     * to be written to a socket as it is.
+     *
+     * @param msg the message to encode
+     * @return the encoded frame
+     */
+    public static byte[] encodeFrame(NetworkMessage msg) {
+        // Leave room for the longest prefix, then fill in the real one right in front of the
+        // payload, so the frame is built with a single copy.
+        Writer w = new Writer(64);
+        w.skip(MAX_PREFIX_BYTES);
+        write(w, msg.data());
+        return w.toFrame(MAX_PREFIX_BYTES);
+    }
+
+    /**
+     * Decodes one payload produced by {@link #encode(NetworkMessage)}.
+     *
+     * @param buf    the buffer holding the payload
+     * @param offset where the payload starts
+     * @param length how many bytes it spans
+     * @return the decoded message
+     * @throws IOException if the payload is truncated, has trailing bytes, or names an unknown tag
+     */
+    public static NetworkMessage decode(byte[] buf, int offset, int length) throws IOException {
+        if (length > 0 && (buf[offset] & FLAG_COMPRESSED) != 0) {
+            byte[] payload = inflate(buf, offset, length);
+            return decode(payload, 0, payload.length - 1);
+        }
+        Reader r = new Reader(buf, offset, length);
+        Msg data = read(r);
+        if (r.remaining() != 0) {
+            throw new StreamCorruptedException(r.remaining() + " unread bytes after " + data.getClass().getSimpleName());
+        }
+        return NetworkMessage.of(data);
+    }
+
+    /**
+     * Returns a frame from {@link #encodeFrame} deflated, if it is big enough to be worth it and
+     * deflate actually makes it smaller.
+     *
+     * <p>The big messages are exactly the ones that compress well — the card names are thousands
+     * of strings from one short vocabulary, and a state sync is mostly repeated coordinates — and
+     * they are also the ones sent to a whole table at once, so this runs once per message, not
+     * once per player; see {@link EncodedMessage#compressedFrame()}.</p>
+     *
+     * @param frame a whole frame, length prefix included
+     * @return the compressed frame, or {@code frame} itself if compressing it would not help
+     */
+    public static byte[] compressFrame(byte[] frame) {
+        int prefix = 0;
+        while ((frame[prefix] & 0x80) != 0) prefix++;
+        prefix++;
+        int payload = frame.length - prefix;
+        if (payload < COMPRESS_THRESHOLD) return frame;
+
+        Deflater deflater = ZipPool.deflater();
+        try {
+            deflater.setInput(frame, prefix + 1, payload - 1);
+            deflater.finish();
+            Writer w = new Writer(payload / 2 + 16);
+            w.skip(MAX_PREFIX_BYTES);
+            w.tag((frame[prefix] & 0xFF) | FLAG_COMPRESSED);
+            w.uint(payload - 1);
+            w.deflate(deflater);
+            return w.pos - MAX_PREFIX_BYTES < payload ? w.toFrame(MAX_PREFIX_BYTES) : frame;
+        } finally {
+            ZipPool.release(deflater);
+        }
+    }
+
+    /**
+     * Turns a compressed payload back into the plain one it was made from.
+     *
+     * @return the plain payload followed by one spare byte, which is only there so that a stream
+     * inflating to more than it claimed is caught rather than cut short
+     */
+    private static byte[] inflate(byte[] buf, int offset, int length) throws IOException {
+        Reader r = new Reader(buf, offset + 1, length - 1);
+        int plainLength = r.uint();
+        if (plainLength < 0 || plainLength >= MAX_FRAME_BYTES
+                || plainLength > (long) r.remaining() * MAX_INFLATE_RATIO) {
+            throw new StreamCorruptedException("Bad inflated length " + plainLength);
+        }
+        byte[] plain = new byte[plainLength + 2];
+        plain[0] = (byte) (buf[offset] & ~FLAG_COMPRESSED);
+        Inflater inflater = ZipPool.inflater();
+        try {
+            inflater.setInput(buf, r.pos, r.remaining());
+            int done = 0;
+            while (!inflater.finished() && done <= plainLength) {
+                int n = inflater.inflate(plain, 1 + done, plainLength + 1 - done);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                done += n;
+            }
+            // Anything left over — output still to come, or input never used — means the frame
+            // and its stated length disagree.
+            if (done != plainLength || !inflater.finished() || inflater.getRemaining() != 0) {
+                throw new StreamCorruptedException("Compressed payload does not inflate to " + plainLength + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Corrupt compressed payload: " + e.getMessage());
+        } finally {
+            ZipPool.release(inflater);
+        }
+        return plain;
+    }
+
+    private static void write(Writer w, Msg data) {
+        // Deliberately no default branch: adding a record to Msg without teaching the codec
+        // about it is a compile error here rather than a message that silently never arrives.
+        switch (data) {
+            case Msg.PlayerJoin m -> {
+                w.tag(TAG_PLAYER_JOIN);
+                w.string(m.name());
+                w.f64(m.r());
+                w.f64(m.g());
+                w.f64(m.b());
+            }
+            case Msg.PlayerLeave m -> {
+                w.tag(TAG_PLAYER_LEAVE);
+                w.sint(m.playerId());
+            }
+            case Msg.PlayerList m -> {
+                w.tag(TAG_PLAYER_LIST);
+                w.uint(m.players().size());
+                for (PlayerInfo p : m.players()) {
+                    w.sint(p.id());
+                    w.string(p.name());
+                    w.f64(p.r());
+                    w.f64(p.g());
+                    w.f64(p.b());
+                }
+            }
+            case Msg.CursorMove m -> {
+                w.tag(TAG_CURSOR_MOVE);
+                w.sint(m.playerId());
+                w.f64(m.x());
+                w.f64(m.y());
+            }
+            case Msg.CursorImage m -> {
+                w.tag(TAG_CURSOR_IMAGE);
+                w.sint(m.playerId());
+                w.bytes(m.imageData());
+            }
+            case Msg.PieceMove m -> {
+                w.tag(TAG_PIECE_MOVE);
+                w.sint(m.playerId());
+                w.uint(m.piece());
+                w.f64(m.x());
+                w.f64(m.y());
+            }
+            case Msg.PieceMoveBatch m -> {
+                w.tag(TAG_PIECE_MOVE_BATCH);
+                w.sint(m.playerId());
+                w.uints(m.pieces());
+                w.f64(m.x());
+                w.f64(m.y());
+            }
+            case Msg.PieceRotate m -> {
+                w.tag(TAG_PIECE_ROTATE);
+                w.sint(m.playerId());
+                w.uint(m.piece());
+                w.f64(m.rotation());
+            }
+            case Msg.PieceFlip m -> {
+                w.tag(TAG_PIECE_FLIP);
+                w.sint(m.playerId());
+                w.uint(m.piece());
+                w.u8((m.frontVisible() ? 1 : 0) | (m.backVisible() ? 2 : 0) | (m.textVisible() ? 4 : 0));
+            }
+            case Msg.PieceToFront m -> {
+                w.tag(TAG_PIECE_TO_FRONT);
+                w.sint(m.playerId());
+                w.uint(m.piece());
+            }
+            case Msg.SpawnChip m -> {
+                w.tag(TAG_SPAWN_CHIP);
+                w.sint(m.playerId());
+                w.uint(m.piece());
+                w.f64(m.x());
+                w.f64(m.y());
+                w.f64(m.red());
+                w.f64(m.green());
+                w.f64(m.blue());
+                w.f64(m.opacity());
+            }
+            case Msg.SpawnDie m -> {
+                w.tag(TAG_SPAWN_DIE);
+                w.sint(m.playerId());
+                w.uint(m.piece());
+                w.f64(m.x());
+                w.f64(m.y());
+                w.sint(m.sides());
+                w.f64(m.value());
+                w.f64(m.red());
+                w.f64(m.green());
+                w.f64(m.blue());
+                w.f64(m.opacity());
+            }
+            case Msg.DeletePiece m -> {
+                w.tag(TAG_DELETE_PIECE);
+                w.sint(m.playerId());
+                w.uint(m.piece());
+            }
+            case Msg.DieRoll m -> {
+                w.tag(TAG_DIE_ROLL);
+                w.sint(m.playerId());
+                w.uint(m.piece());
+                w.sint(m.value());
+            }
+            case Msg.NewGame m -> {
+                w.tag(TAG_NEW_GAME);
+                w.sint(m.playerId());
+            }
+            case Msg.ReshuffleCards m -> {
+                w.tag(TAG_RESHUFFLE_CARDS);
+                w.sint(m.playerId());
+            }
+            case Msg.ResetDice m -> {
+                w.tag(TAG_RESET_DICE);
+                w.sint(m.playerId());
+            }
+            case Msg.ResetChips m -> {
+                w.tag(TAG_RESET_CHIPS);
+                w.sint(m.playerId());
+            }
+            case Msg.YourId m -> {
+                w.tag(TAG_YOUR_ID);
+                w.sint(m.playerId());
+                w.i64(m.resumeToken());
+                w.ulong(m.seq());
+            }
+            case Msg.SendState m -> {
+                w.tag(TAG_SEND_STATE);
+                w.sint(m.playerId());
+                w.fixed(m.viewX());
+                w.fixed(m.viewY());
+                w.fixed(m.viewWidth());
+                w.fixed(m.viewHeight());
+            }
+            case Msg.SendDiff m -> {
+                w.tag(TAG_SEND_DIFF);
+                w.sint(m.playerId());
+                w.fixed(m.viewX());
+                w.fixed(m.viewY());
+                w.fixed(m.viewWidth());
+                w.fixed(m.viewHeight());
+                w.i64(m.root());
+                w.longs(m.cardRanges());
+                w.i64(m.chips());
+                w.i64(m.dice());
+            }
+            case Msg.CardNamesSync m -> {
+                w.tag(TAG_CARD_NAMES_SYNC);
+                w.uint(m.cardNames().size());
+                for (String name : m.cardNames()) w.string(name);
+            }
+            case Msg.RequestOperator m -> {
+                w.tag(TAG_REQUEST_OPERATOR);
+                w.sint(m.playerId());
+                w.string(m.password());
+            }
+            case Msg.OperatorStatus m -> {
+                w.tag(TAG_OPERATOR_STATUS);
+                w.sint(m.playerId());
+                w.bool(m.isOperator());
+            }
+            case Msg.SetupGame m -> {
+                w.tag(TAG_SETUP_GAME);
+                w.sint(m.playerId());
+                w.string(m.gameType());
+            }
+            case Msg.StateSync s -> {
+                w.tag(TAG_STATE_SYNC);
+                writeCards(w, s);
+                w.uints(s.chipIds());
+                w.fixeds(s.chipX());
+                w.fixeds(s.chipY());
+                w.fixeds(s.chipRot());
+                w.bits(s.chipFrontVis());
+                w.bits(s.chipBackVis());
+                w.doubles(s.chipR());
+                w.doubles(s.chipG());
+                w.doubles(s.chipB());
+                w.doubles(s.chipO());
+                w.uints(s.dieIds());
+                w.fixeds(s.dieX());
+                w.fixeds(s.dieY());
+                w.fixeds(s.dieRot());
+                w.ints(s.dieSides());
+                w.ints(s.dieVals());
+                w.doubles(s.dieR());
+                w.doubles(s.dieG());
+                w.doubles(s.dieB());
+                w.doubles(s.dieO());
+            }
+            case Msg.HandleGrant m -> {
+                w.tag(TAG_HANDLE_GRANT);
+                w.uint(m.first());
+                w.uint(m.count());
+            }
+            case Msg.HandleRequest m -> {
+                w.tag(TAG_HANDLE_REQUEST);
+                w.sint(m.playerId());
+            }
+            case Msg.CursorFrame m -> {
+                w.tag(TAG_CURSOR_FRAME);
+                w.uints(m.playerIds());
+                w.doubles(m.x());
+                w.doubles(m.y());
+            }
+            case Msg.PileGrab m -> {
+                w.tag(TAG_PILE_GRAB);
+                w.sint(m.playerId());
+                w.uint(m.pile());
+                w.uints(m.pieces());
+                w.f64(m.x());
+                w.f64(m.y());
+            }
+            case Msg.PileMove m -> {
+                w.tag(TAG_PILE_MOVE);
+                w.sint(m.playerId());
+                w.uint(m.pile());
+                w.f64(m.x());
+                w.f64(m.y());
+            }
+            case Msg.DeckOrder m -> {
+                w.tag(TAG_DECK_ORDER);
+                w.i64(m.catalog());
+                w.uint(m.shuffle());
+                w.i64(m.seed());
+                w.uints(m.order());
+            }
+            case Msg.SyncBegin m -> {
+                w.tag(TAG_SYNC_BEGIN);
+                w.uint(m.chunks());
+                w.bool(m.chips());
+                w.bool(m.dice());
+            }
+            case Msg.Sequenced m -> {
+                w.tag(TAG_SEQUENCED);
+                w.ulong(m.seq());
+                write(w, m.message());
+            }
+            case Msg.Resume m -> {
+                w.tag(TAG_RESUME);
+                w.sint(m.playerId());
+                w.i64(m.resumeToken());
+                w.ulong(m.lastSeq());
+            }
+            case Msg.ResumeResult m -> {
+                w.tag(TAG_RESUME_RESULT);
+                w.bool(m.resumed());
+            }
+        }
+    }
+
+    private static Msg read(Reader r) throws IOException {
+        int tag = r.u8();
+        return switch (tag) {
+            case TAG_PLAYER_JOIN -> new Msg.PlayerJoin(r.string(), r.f64(), r.f64(), r.f64());
+            case TAG_PLAYER_LEAVE -> new Msg.PlayerLeave(r.sint());
+            case TAG_PLAYER_LIST -> {
+                int n = r.count();
+                ArrayList<PlayerInfo> players = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    players.add(new PlayerInfo(r.sint(), r.string(), r.f64(), r.f64(), r.f64()));
+                }
+                yield new Msg.PlayerList(players);
+            }
+            case TAG_CURSOR_MOVE -> new Msg.CursorMove(r.sint(), r.f64(), r.f64());
+            case TAG_CURSOR_IMAGE -> new Msg.CursorImage(r.sint(), r.bytes());
+            case TAG_PIECE_MOVE -> new Msg.PieceMove(r.sint(), r.uint(), r.f64(), r.f64());
+            case TAG_PIECE_MOVE_BATCH -> new Msg.PieceMoveBatch(r.sint(), r.uints(), r.f64(), r.f64());
+            case TAG_PIECE_ROTATE -> new Msg.PieceRotate(r.sint(), r.uint(), r.f64());
+            case TAG_PIECE_FLIP -> {
+                int playerId = r.sint();
+                int piece = r.uint();
+                int flags = r.u8();
+                yield new Msg.PieceFlip(playerId, piece, (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0);
+            }
+            case TAG_PIECE_TO_FRONT -> new Msg.PieceToFront(r.sint(), r.uint());
+            case TAG_SPAWN_CHIP -> new Msg.SpawnChip(r.sint(), r.uint(), r.f64(), r.f64(),
+                    r.f64(), r.f64(), r.f64(), r.f64());
+            case TAG_SPAWN_DIE -> new Msg.SpawnDie(r.sint(), r.uint(), r.f64(), r.f64(), r.sint(), r.f64(),
+                    r.f64(), r.f64(), r.f64(), r.f64());
+            case TAG_DELETE_PIECE -> new Msg.DeletePiece(r.sint(), r.uint());
+            case TAG_DIE_ROLL -> new Msg.DieRoll(r.sint(), r.uint(), r.sint());
+            case TAG_NEW_GAME -> new Msg.NewGame(r.sint());
+            case TAG_RESHUFFLE_CARDS -> new Msg.ReshuffleCards(r.sint());
+            case TAG_RESET_DICE -> new Msg.ResetDice(r.sint());
+            case TAG_RESET_CHIPS -> new Msg.ResetChips(r.sint());
+            case TAG_YOUR_ID -> new Msg.YourId(r.sint(), r.i64(), r.ulong());
+            case TAG_SEND_STATE -> new Msg.SendState(r.sint(), r.fixed(), r.fixed(), r.fixed(), r.fixed());
+            case TAG_SEND_DIFF -> new Msg.SendDiff(r.sint(), r.fixed(), r.fixed(), r.fixed(), r.fixed(),
+                    r.i64(), r.longs(), r.i64(), r.i64());
+            case TAG_CARD_NAMES_SYNC -> {
+                int n = r.count();
+                ArrayList<String> names = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) names.add(r.string());
+                yield new Msg.CardNamesSync(names);
+            }
+            case TAG_REQUEST_OPERATOR -> new Msg.RequestOperator(r.sint(), r.string());
+            case TAG_OPERATOR_STATUS -> new Msg.OperatorStatus(r.sint(), r.bool());
+            case TAG_SETUP_GAME -> new Msg.SetupGame(r.sint(), r.string());
+            case TAG_STATE_SYNC -> readStateSync(r);
+            case TAG_HANDLE_GRANT -> new Msg.HandleGrant(r.uint(), r.uint());
+            case TAG_HANDLE_REQUEST -> new Msg.HandleRequest(r.sint());
+            case TAG_CURSOR_FRAME -> new Msg.CursorFrame(r.uints(), r.doubles(), r.doubles());
+            case TAG_PILE_GRAB -> new Msg.PileGrab(r.sint(), r.uint(), r.uints(), r.f64(), r.f64());
+            case TAG_PILE_MOVE -> new Msg.PileMove(r.sint(), r.uint(), r.f64(), r.f64());
+            case TAG_DECK_ORDER -> new Msg.DeckOrder(r.i64(), r.uint(), r.i64(), r.uints());
+            case TAG_SYNC_BEGIN -> new Msg.SyncBegin(r.uint(), r.bool(), r.bool());
+            case TAG_SEQUENCED -> {
+                long seq = r.ulong();
+                Msg inner = read(r);
+                if (inner instanceof Msg.Sequenced) throw new StreamCorruptedException("Nested Sequenced");
+                yield new Msg.Sequenced(seq, inner);
+            }
+            case TAG_RESUME -> new Msg.Resume(r.sint(), r.i64(), r.ulong());
+            case TAG_RESUME_RESULT -> new Msg.ResumeResult(r.bool());
+            default -> throw new StreamCorruptedException("Unknown message tag " + tag);
+        };
+    }
+
+    /**
+     * Writes the cards of a state sync as how they differ from a freshly gathered deck.
+     *
+     * <p>Sent whole, the cards were seven arrays of several thousand entries each — about two
+     * hundred kilobytes — and on a table that has only just started nearly every one of them said
+     * that the card was still face down on the deck. So only the cards that are not are sent: the
+     * count, then the ids: two more than the first if they are a run of consecutive cards (the
+     * whole deck, or one chunk of a {@link Msg.SyncBegin sync}), one and each id's gap from the
+     * last if they only ascend (a chunk the joiner's view put cards in out of turn), or zero and
+     * every id in full; then how many cards differ from the deck, each one's gap from the last, their
+     * positions and rotations in fixed point, and their three visibility flags as bitsets. The
+     * reader fills in everything else from {@link CardCatalog#DECK_X}. A fresh table syncs in a
+     * handful of bytes, and a well-spread one in a few kilobytes per hundred cards.</p>
+     */
+    private static void writeCards(Writer w, Msg.StateSync s) {
+        int[] ids = s.cardIds();
+        int n = ids.length;
+        w.uint(n);
+        boolean ascending = n == 0 || ids[0] >= 0;
+        boolean run = ascending;
+        for (int i = 1; i < n && ascending; i++) {
+            ascending = ids[i] > ids[i - 1];
+            run &= ids[i] == ids[0] + i;
+        }
+        if (run) {
+            w.uint((n == 0 ? 0 : ids[0]) + 2);
+        } else if (ascending) {
+            w.uint(1);
+            int last = -1;
+            for (int id : ids) {
+                w.uint(id - last - 1);
+                last = id;
+            }
+        } else {
+            w.uint(0);
+            for (int id : ids) w.sint(id);
+        }
+
+        int[] changed = new int[n];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (s.cardX()[i] != CardCatalog.DECK_X || s.cardY()[i] != CardCatalog.DECK_Y || s.cardRot()[i] != 0
+                    || !s.cardBackVis()[i] || s.cardFrontVis()[i] || s.cardTextVis()[i]) {
+                changed[k++] = i;
+            }
+        }
+        w.uint(k);
+        int last = -1;
+        for (int j = 0; j < k; j++) {
+            w.uint(changed[j] - last - 1);
+            last = changed[j];
+        }
+        boolean[] back = new boolean[k], front = new boolean[k], text = new boolean[k];
+        for (int j = 0; j < k; j++) {
+            int i = changed[j];
+            w.fixed(s.cardX()[i]);
+            w.fixed(s.cardY()[i]);
+            w.fixed(s.cardRot()[i]);
+            back[j] = s.cardBackVis()[i];
+            front[j] = s.cardFrontVis()[i];
+            text[j] = s.cardTextVis()[i];
+        }
+        w.bits(back);
+        w.bits(front);
+        w.bits(text);
+    }
+
+    /** Reads a state sync written by {@link #writeCards} and the rest of its case in {@link #write}. */
+    private static Msg.StateSync readStateSync(Reader r) throws IOException {
+        int n = r.uint();
+        // No more than a deck, before anything the size of it is allocated: a run of consecutive
+        // ids takes two bytes on the wire however long it claims to be.
+        if (n < 0 || n > CardCatalog.NUM_CARDS) throw new StreamCorruptedException("Bad card count " + n);
+        int[] ids = new int[n];
+        int first = r.uint() - 2;
+        if (first >= 0) {
+            if (first > PieceHandles.MAX_HANDLE - n) throw new StreamCorruptedException("Bad first card " + first);
+            for (int i = 0; i < n; i++) ids[i] = first + i;
+        } else if (first == -1) {
+            r.need(n);
+            int at = -1;
+            for (int i = 0; i < n; i++) {
+                at += r.uint() + 1;
+                if (at < 0 || at > PieceHandles.MAX_HANDLE) throw new StreamCorruptedException("Bad card id " + at);
+                ids[i] = at;
+            }
+        } else {
+            r.need(n);
+            for (int i = 0; i < n; i++) ids[i] = r.sint();
+        }
+
+        double[] x = new double[n], y = new double[n], rot = new double[n];
+        boolean[] backVis = new boolean[n], frontVis = new boolean[n], textVis = new boolean[n];
+        Arrays.fill(x, CardCatalog.DECK_X);
+        Arrays.fill(y, CardCatalog.DECK_Y);
+        Arrays.fill(backVis, true);
+
+        int k = r.count();
+        if (k > n) throw new StreamCorruptedException(k + " changed cards out of " + n);
+        int[] changed = new int[k];
+        int at = -1;
+        for (int j = 0; j < k; j++) {
+            at += r.uint() + 1;
+            if (at < 0 || at >= n) throw new StreamCorruptedException("Changed card " + at + " out of " + n);
+            changed[j] = at;
+        }
+        for (int i : changed) {
+            x[i] = r.fixed();
+            y[i] = r.fixed();
+            rot[i] = r.fixed();
+        }
+        boolean[] back = r.bits(), front = r.bits(), text = r.bits();
+        if (back.length != k || front.length != k || text.length != k) {
+            throw new StreamCorruptedException("Card flags do not match " + k + " changed cards");
+        }
+        for (int j = 0; j < k; j++) {
+            backVis[changed[j]] = back[j];
+            frontVis[changed[j]] = front[j];
+            textVis[changed[j]] = text[j];
+        }
+
+        return new Msg.StateSync(ids, x, y, rot, backVis, frontVis, textVis,
+                r.uints(), r.fixeds(), r.fixeds(), r.fixeds(),
+                r.bits(), r.bits(),
+                r.doubles(), r.doubles(), r.doubles(), r.doubles(),
+                r.uints(), r.fixeds(), r.fixeds(), r.fixeds(),
+                r.ints(), r.ints(),
+                r.doubles(), r.doubles(), r.doubles(), r.doubles());
+    }
+
+    /**
+     * Appends a payload's length as an unsigned varint, the prefix every frame starts with.
+     *
+     * @param out    the buffer to write into, at least five bytes long
+     * @param length the payload length
+     * @return how many bytes the prefix took
+     */
+    public static int writeLengthPrefix(byte[] out, int length) {
+        int n = 0;
+        while ((length & ~0x7F) != 0) {
+            out[n++] = (byte) ((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out[n++] = (byte) length;
+        return n;
+    }
+
+    /** Growable output buffer with the primitive encodings the format is made of. */
+    static final class Writer {
+        private byte[] buf;
+        private int pos;
+
+        Writer(int initialCapacity) {
+            buf = new byte[initialCapacity];
+        }
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+
+        void skip(int n) {
+            ensure(n);
+            pos += n;
+        }
+
+        /** The bytes after the first {@code reserved}, behind their varint length prefix. */
+        byte[] toFrame(int reserved) {
+            byte[] prefix = new byte[MAX_PREFIX_BYTES];
+            int prefixLength = writeLengthPrefix(prefix, pos - reserved);
+            int start = reserved - prefixLength;
+            System.arraycopy(prefix, 0, buf, start, prefixLength);
+            return Arrays.copyOfRange(buf, start, pos);
+        }
+
+        void tag(int tag) {
+            u8(tag);
+        }
+
+        /** Everything the deflater has left to give, which must already have been told to finish. */
+        void deflate(Deflater deflater) {
+            while (!deflater.finished()) {
+                ensure(4096);
+                pos += deflater.deflate(buf, pos, buf.length - pos);
+            }
+        }
+
+        void u8(int v) {
+            ensure(1);
+            buf[pos++] = (byte) v;
+        }
+
+        void bool(boolean v) {
+            u8(v ? 1 : 0);
+        }
+
+        void uint(int v) {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        void sint(int v) {
+            uint((v << 1) ^ (v >> 31));
+        }
+
+        void f64(double v) {
+            i64(Double.doubleToRawLongBits(v));
+        }
+
+        void i64(long v) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (v >>> shift);
+            }
+        }
+
+        /** An unsigned varint, for counters that outgrow an int; only ever given non-negative values. */
+        void ulong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        /** Null-safe: the length is sent plus one, so zero can stand for null. */
+        void string(String s) {
+            if (s == null) {
+                uint(0);
+                return;
+            }
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            uint(utf8.length + 1);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, buf, pos, utf8.length);
+            pos += utf8.length;
+        }
+
+        void bytes(byte[] a) {
+            if (a == null) {
+                uint(0);
+                return;
+            }
+            uint(a.length + 1);
+            ensure(a.length);
+            System.arraycopy(a, 0, buf, pos, a.length);
+            pos += a.length;
+        }
+
+        void ints(int[] a) {
+            uint(a.length);
+            for (int v : a) sint(v);
+        }
+
+        void uints(int[] a) {
+            uint(a.length);
+            for (int v : a) uint(v);
+        }
+
+        void longs(long[] a) {
+            uint(a.length);
+            ensure(a.length * 8);
+            for (long v : a) i64(v);
+        }
+
+        void doubles(double[] a) {
+            uint(a.length);
+            ensure(a.length * 8);
+            for (double v : a) f64(v);
+        }
+
+        /**
+         * A coordinate or angle in as few bytes as it can go without losing anything: a varint
+         * of whole sixteenths, shifted up one, when that is exactly the value; otherwise a 1
+         * and then the raw double. Pieces dropped on the deck, snapped onto each other or
+         * turned by the quarter come out at one to three bytes; only a free drag at an odd
+         * zoom pays one byte over a plain double.
+         */
+        void fixed(double v) {
+            long q = (long) (v * FIXED_ONE);
+            if (q > -FIXED_LIMIT && q < FIXED_LIMIT && q / (double) FIXED_ONE == v) {
+                uint((int) ((q << 1) ^ (q >> 63)) << 1);
+            } else {
+                uint(1);
+                f64(v);
+            }
+        }
+
+        void fixeds(double[] a) {
+            uint(a.length);
+            for (double v : a) fixed(v);
+        }
+
+        /** Eight flags to the byte, lowest bit first. */
+        void bits(boolean[] a) {
+            uint(a.length);
+            ensure((a.length + 7) / 8);
+            for (int i = 0; i < a.length; i += 8) {
+                int b = 0;
+                for (int j = 0; j < 8 && i + j < a.length; j++) {
+                    if (a[i + j]) b |= 1 << j;
+                }
+                buf[pos++] = (byte) b;
+            }
+        }
+    }
+
+    /** Bounds-checked reader over one payload; running off the end is a corrupt frame, not a crash. */
+    static final class Reader {
+        private final byte[] buf;
+        private int pos;
+        private final int end;
+
+        Reader(byte[] buf, int offset, int length) {
+            this.buf = buf;
+            this.pos = offset;
+            this.end = offset + length;
+        }
+
+        int remaining() {
+            return end - pos;
+        }
+
+        void need(int n) throws StreamCorruptedException {
+            if (n < 0 || end - pos < n) throw new StreamCorruptedException("Truncated message");
+        }
+
+        int u8() throws IOException {
+            need(1);
+            return buf[pos++] & 0xFF;
+        }
+
+        boolean bool() throws IOException {
+            return u8() != 0;
+        }
+
+        int uint() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = u8();
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new StreamCorruptedException("Malformed varint");
+        }
+
+        int sint() throws IOException {
+            int v = uint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        /** An element count, checked against what is left so a corrupt one cannot force a huge allocation. */
+        int count() throws IOException {
+            int n = uint();
+            if (n < 0 || n > remaining()) throw new StreamCorruptedException("Bad element count " + n);
+            return n;
+        }
+
+        double f64() throws IOException {
+            return Double.longBitsToDouble(i64());
+        }
+
+        long ulong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = u8();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new StreamCorruptedException("Malformed varint");
+        }
+
+        long i64() throws IOException {
+            need(8);
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        String string() throws IOException {
+            int n = uint();
+            if (n == 0) return null;
+            need(n - 1);
+            String s = new String(buf, pos, n - 1, StandardCharsets.UTF_8);
+            pos += n - 1;
+            return s;
+        }
+
+        byte[] bytes() throws IOException {
+            int n = uint();
+            if (n == 0) return null;
+            need(n - 1);
+            byte[] a = Arrays.copyOfRange(buf, pos, pos + n - 1);
+            pos += n - 1;
+            return a;
+        }
+
+        int[] ints() throws IOException {
+            int[] a = new int[count()];
+            for (int i = 0; i < a.length; i++) a[i] = sint();
+            return a;
+        }
+
+        int[] uints() throws IOException {
+            int[] a = new int[count()];
+            for (int i = 0; i < a.length; i++) a[i] = uint();
+            return a;
+        }
+
+        long[] longs() throws IOException {
+            int n = count();
+            need(n * 8);
+            long[] a = new long[n];
+            for (int i = 0; i < n; i++) a[i] = i64();
+            return a;
+        }
+
+        double[] doubles() throws IOException {
+            int n = count();
+            need(n * 8);
+            double[] a = new double[n];
+            for (int i = 0; i < n; i++) a[i] = f64();
+            return a;
+        }
+
+        double fixed() throws IOException {
+            int v = uint();
+            if ((v & 1) != 0) return f64();
+            int zigzag = v >>> 1;
+            return ((zigzag >>> 1) ^ -(zigzag & 1)) / (double) FIXED_ONE;
+        }
+
+        double[] fixeds() throws IOException {
+            double[] a = new double[count()];
+            for (int i = 0; i < a.length; i++) a[i] = fixed();
+            return a;
+        }
+
+        boolean[] bits() throws IOException {
+            int n = uint();
+            if (n < 0) throw new StreamCorruptedException("Bad flag count " + n);
+            int bytes = (n >>> 3) + ((n & 7) != 0 ? 1 : 0);
+            need(bytes);
+            boolean[] a = new boolean[n];
+            for (int i = 0; i < n; i++) a[i] = (buf[pos + (i >>> 3)] & (1 << (i & 7))) != 0;
+            pos += bytes;
+            return a;
+        }
+    }
+}
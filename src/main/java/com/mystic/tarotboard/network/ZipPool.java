@@ -0,0 +1,66 @@
+package com.mystic.tarotboard.network;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Free lists of {@link Deflater}s and {@link Inflater}s for {@link WireCodec}'s compressed frames.
+ *
+ * <p>Each one holds a native zlib stream, some hundreds of kilobytes for a deflater, that is only
+ * given back when {@code end()} is called or, much later, when the GC gets round to it. Making a
+ * fresh one for every big frame would churn that memory with every join and reshuffle, so they
+ * are reset and kept instead. Only frames over the compression threshold ever take one; the small
+ * ones that make up nearly all the traffic never come here.</p>
+ */
+final class ZipPool {
+    /** How many of each to keep; a handful of threads compress at once at most. */
+    private static final int MAX_POOLED = 8;
+
+    private static final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private static final ConcurrentLinkedQueue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooledDeflaters = new AtomicInteger();
+    private static final AtomicInteger pooledInflaters = new AtomicInteger();
+
+    private ZipPool() {
+    }
+
+    /** Takes a deflater ready for new input, writing raw deflate data with no zlib wrapper. */
+    static Deflater deflater() {
+        Deflater d = deflaters.poll();
+        if (d == null) return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        pooledDeflaters.decrementAndGet();
+        return d;
+    }
+
+    /** Returns a deflater from {@link #deflater()}; the caller must not touch it afterwards. */
+    static void release(Deflater d) {
+        if (pooledDeflaters.incrementAndGet() > MAX_POOLED) {
+            pooledDeflaters.decrementAndGet();
+            d.end();
+            return;
+        }
+        d.reset();
+        deflaters.offer(d);
+    }
+
+    /** Takes an inflater ready for new input, reading raw deflate data with no zlib wrapper. */
+    static Inflater inflater() {
+        Inflater i = inflaters.poll();
+        if (i == null) return new Inflater(true);
+        pooledInflaters.decrementAndGet();
+        return i;
+    }
+
+    /** Returns an inflater from {@link #inflater()}; the caller must not touch it afterwards. */
+    static void release(Inflater i) {
+        if (pooledInflaters.incrementAndGet() > MAX_POOLED) {
+            pooledInflaters.decrementAndGet();
+            i.end();
+            return;
+        }
+        i.reset();
+        inflaters.offer(i);
+    }
+}
@@ -0,0 +1,135 @@
+package com.mystic.tarotboard.network.client;
+
+import com.mystic.tarotboard.network.NetworkMessage.Msg;
+import com.mystic.tarotboard.network.PileRegistry;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A joiner's progress through a board sync that arrives in chunks, and what live traffic has
+ * changed since it began.
+ *
+ * <p>The chunks were all cut from one snapshot, taken before the {@link Msg.SyncBegin}, but they
+ * arrive among live messages that are newer than it. So whatever a live message has said about a
+ * piece since the sync began wins over what a later chunk says about it: a card moved live keeps
+ * its live position but still takes its flip from the chunk, a chip deleted live is not brought
+ * back, and a reshuffle or reset discards what the chunks would still have said about the pieces
+ * it reset.</p>
+ *
+ * <p>FX thread only, like the board it describes.</p>
+ */
+public final class ChunkedSync {
+    private int total;
+    private int left;
+    private final Set<Integer> moved = new HashSet<>();
+    private final Set<Integer> rotated = new HashSet<>();
+    private final Set<Integer> flipped = new HashSet<>();
+    private final Set<Integer> deleted = new HashSet<>();
+    private boolean cardsStale;
+    private boolean chipsStale;
+    private boolean diceStale;
+
+    /**
+     * Starts a sync, abandoning any still in progress.
+     *
+     * @param chunks how many chunks it was announced with
+     */
+    public void begin(int chunks) {
+        forget();
+        total = left = Math.max(1, chunks);
+    }
+
+    /** Returns whether a sync has begun and not all of its chunks have been applied. */
+    public boolean active() {
+        return left > 0;
+    }
+
+    /** Returns how many chunks of the current or last sync have been applied. */
+    public int applied() {
+        return total - left;
+    }
+
+    /** Returns how many chunks the current or last sync was announced with. */
+    public int total() {
+        return total;
+    }
+
+    /** Counts a chunk as applied; after the last one, the sync is over. */
+    public void chunkApplied() {
+        if (left > 0 && --left == 0) forget();
+    }
+
+    /** Ends any sync in progress without counting its remaining chunks, as on leaving a game. */
+    public void reset() {
+        forget();
+        total = left = 0;
+    }
+
+    /**
+     * Notes what a live message changes, so later chunks leave it be. Call before applying the
+     * message, and only while {@link #active()}.
+     *
+     * @param data  the message
+     * @param piles the board's piles, to resolve a pile move by
+     */
+    public void noteLive(Msg data, PileRegistry piles) {
+        switch (data) {
+            case Msg.PieceMove m -> moved.add(m.piece());
+            case Msg.PieceMoveBatch m -> {
+                for (int p : m.pieces()) moved.add(p);
+            }
+            case Msg.PileGrab m -> {
+                for (int p : m.pieces()) moved.add(p);
+            }
+            case Msg.PileMove m -> {
+                int[] pile = piles.resolve(m);
+                if (pile != null) {
+                    for (int p : pile) moved.add(p);
+                }
+            }
+            case Msg.PieceRotate m -> rotated.add(m.piece());
+            case Msg.PieceFlip m -> flipped.add(m.piece());
+            case Msg.DeletePiece m -> deleted.add(m.piece());
+            case Msg.ReshuffleCards ignored -> cardsStale = true;
+            case Msg.ResetChips ignored -> chipsStale = true;
+            case Msg.ResetDice ignored -> diceStale = true;
+            case Msg.NewGame ignored -> cardsStale = chipsStale = diceStale = true;
+            default -> {
+            }
+        }
+    }
+
+    /** Returns whether a chunk may set this card's position. */
+    public boolean takesMove(int card) {
+        return !cardsStale && !moved.contains(card);
+    }
+
+    /** Returns whether a chunk may set this card's rotation. */
+    public boolean takesRotation(int card) {
+        return !cardsStale && !rotated.contains(card);
+    }
+
+    /** Returns whether a chunk may set which faces of this card show. */
+    public boolean takesFlip(int card) {
+        return !cardsStale && !flipped.contains(card);
+    }
+
+    /** Returns whether a chunk may place this chip. */
+    public boolean takesChip(int handle) {
+        return !chipsStale && !deleted.contains(handle);
+    }
+
+    /** Returns whether a chunk may place this die. */
+    public boolean takesDie(int handle) {
+        return !diceStale && !deleted.contains(handle);
+    }
+
+    private void forget() {
+        moved.clear();
+        rotated.clear();
+        flipped.clear();
+        deleted.clear();
+        cardsStale = chipsStale = diceStale = false;
+    }
+}
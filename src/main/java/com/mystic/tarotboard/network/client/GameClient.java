@@ -1,22 +1,72 @@
 package com.mystic.tarotboard.network.client;
 
+import com.mystic.tarotboard.network.MessageStream;
 import com.mystic.tarotboard.network.NetworkMessage;
+import com.mystic.tarotboard.network.NetworkMessage.Msg;
 
 import java.io.*;
 import java.net.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 
 /**
- * TCP client that connects to a TarotBoard server and exchanges serialised {@link NetworkMessage} objects.
+ * TCP client that connects to a TarotBoard server and exchanges {@link NetworkMessage} objects
+ * in the binary wire format. A server too old to speak it is refused; see {@link MessageStream}.
+ * <p>
+ * {@link #send} never touches the socket. It queues the message for a writer thread of its own
+ * and returns at once, so a stalled connection cannot freeze the JavaFX thread that does most of
+ * the sending. While a move is still waiting there, a newer move of the same piece replaces it
+ * rather than queueing behind it (see {@link #setCoalescing}), so a drag over a bad link sends
+ * where the piece is now instead of replaying where it has been. {@link #setOnBackpressure}
+ * reports when the queue backs up anyway.
+ * <p>
+ * The client also keeps what it needs to pick up where it left off if the connection drops: its
+ * player ID, the token the server gave it to prove that ID with, and the number of the last
+ * {@link Msg.Sequenced board message} it got. Numbered messages reach {@link #setOnMessage the
+ * callback} unwrapped. A new client given these in {@link #resume} asks the server for just what
+ * the old one missed.
  */
 public class GameClient {
+    /** Queue length at which {@link #setOnBackpressure the backpressure callback} reports a backlog. */
+    public static final int BACKPRESSURE_HIGH_WATER = 64;
+
+    /** Queue length the backlog must drain to before the callback reports it cleared. */
+    public static final int BACKPRESSURE_LOW_WATER = 16;
+
     private final Socket socket;
-    private final ObjectOutputStream out;
-    private final ObjectInputStream in;
+    private final MessageStream stream;
     private volatile boolean connected;
     private Consumer<NetworkMessage> onMessage;
-    /** Guards {@link #out}: ObjectOutputStream is not thread-safe and sends are not confined to one thread. */
-    private final Object writeLock = new Object();
+    private volatile Consumer<Boolean> onBackpressure;
+    private volatile boolean coalescing = true;
+    private volatile Runnable onConnectionLost;
+    private volatile int playerId = -1;
+    private volatile long resumeToken;
+    private volatile long lastSeq;
+    /** Set from {@link #resume} until the server's {@link Msg.ResumeResult} arrives. */
+    private volatile boolean resuming;
+
+    /** A queued message; mutable so a newer pile or cursor position can take an older one's place in line. */
+    private static final class Outgoing {
+        NetworkMessage msg;
+
+        Outgoing(NetworkMessage msg) {
+            this.msg = msg;
+        }
+    }
+
+    /** Messages waiting for the writer thread. Guards itself and every field below. */
+    private final ArrayDeque<Outgoing> outbound = new ArrayDeque<>();
+    // The queued entries a newer message of the same kind may still overwrite or drop. Only ever
+    // entries behind which nothing but other moves has been queued; anything else clears them all.
+    private final Map<Integer, Outgoing> queuedMoves = new HashMap<>();
+    private final Map<Integer, Outgoing> queuedRotations = new HashMap<>();
+    private Outgoing queuedBatch;
+    private Outgoing queuedCursor;
+    private boolean backedUp;
 
     /**
      * Connects to the TarotBoard server at the given host and port.
@@ -26,14 +76,38 @@ public class GameClient {
      * @throws IOException if the connection cannot be established
      */
     public GameClient(String host, int port) throws IOException {
-        socket = new Socket(host, port);
-        socket.setTcpNoDelay(true);
-        out = new ObjectOutputStream(socket.getOutputStream());
-        out.flush();
-        in = new ObjectInputStream(socket.getInputStream());
+        this(host, port, "");
+    }
+
+    /**
+     * Connects to a room of a TarotBoard server that hosts several.
+     *
+     * @param host the server hostname or IP address
+     * @param port the server port
+     * @param room the room to join, or empty for the server's default one; a server that hosts one
+     *             board ignores it
+     * @throws IOException if the connection cannot be established
+     */
+    public GameClient(String host, int port, String room) throws IOException {
+        Socket s = open(host, port);
+        MessageStream negotiated;
+        try {
+            negotiated = MessageStream.connect(s, room);
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+        socket = s;
+        stream = negotiated;
         connected = true;
     }
 
+    private static Socket open(String host, int port) throws IOException {
+        Socket s = new Socket(host, port);
+        s.setTcpNoDelay(true);
+        return s;
+    }
+
     /**
      * Sets the callback for incoming messages from the server.
      *
@@ -44,15 +118,94 @@ public class GameClient {
     }
 
     /**
-     * Starts the background reader thread that processes incoming messages.
+     * Sets a callback told when sends start piling up faster than the connection takes them
+     * ({@code true}, at {@link #BACKPRESSURE_HIGH_WATER} queued messages) and when they have
+     * drained again ({@code false}, at {@link #BACKPRESSURE_LOW_WATER}). It is invoked on whichever
+     * thread crossed the mark — a sender's or the writer's — so UI callers must hop to their own.
+     *
+     * @param onBackpressure the callback
+     */
+    public void setOnBackpressure(Consumer<Boolean> onBackpressure) {
+        this.onBackpressure = onBackpressure;
+    }
+
+    /**
+     * Sets a callback run when the connection drops without {@link #disconnect} having been
+     * called, as when the network goes away. It runs on the client's reader or writer thread.
+     *
+     * @param onConnectionLost the callback
+     */
+    public void setOnConnectionLost(Runnable onConnectionLost) {
+        this.onConnectionLost = onConnectionLost;
+    }
+
+    /**
+     * Asks the server to make this connection the player an earlier one was, and to send what
+     * that one missed. Call before {@link #start}. Until the server answers with a
+     * {@link Msg.ResumeResult}, board messages are dropped: on success the server sends them all
+     * again after its answer, and on failure the caller asks for the whole board anyway.
+     *
+     * @param resume the earlier connection's {@link #getPlayerId ID}, {@link #getResumeToken
+     *               token} and {@link #getLastSeq last message}
+     */
+    public void resume(Msg.Resume resume) {
+        resuming = true;
+        send(NetworkMessage.of(resume));
+    }
+
+    /** Returns the player ID the server last gave this client, or -1 before it has. */
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    /** Returns the token to resume as this client's player with, or zero if the server keeps no log to resume from. */
+    public long getResumeToken() {
+        return resumeToken;
+    }
+
+    /** Returns the number of the last board message this client got, to resume after. */
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Sets whether a move, rotation, pile move or cursor move still waiting to be written is
+     * replaced by a newer one of the same piece (or pile, or cursor). A newer move or rotation
+     * drops the older one and joins the back of the queue. On by default; only the latest of
+     * each reaches the server anyway once its relay coalesces.
+     *
+     * @param coalescing true to replace superseded messages in the queue
+     */
+    public void setCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
+    }
+
+    /**
+     * Returns how many messages are waiting to be written.
+     *
+     * @return the queue length
+     */
+    public int getQueuedCount() {
+        synchronized (outbound) {
+            return outbound.size();
+        }
+    }
+
+    /**
+     * Starts the background reader thread that processes incoming messages, and the writer
+     * thread that sends what has been queued; anything sent before this waits for it.
      */
     public void start() {
+        Thread writeThread = new Thread(this::writeLoop, "tarotboard-client-writer");
+        writeThread.setDaemon(true);
+        writeThread.start();
+
         Thread readThread = new Thread(() -> {
             try {
                 while (connected) {
                     try {
-                        var msg = (NetworkMessage) in.readObject();
-                        if (onMessage != null) onMessage.accept(msg);
+                        var msg = unwrap(stream.read());
+                        if (msg != null && onMessage != null) onMessage.accept(msg);
                     } catch (EOFException | SocketException e) {
                         break;
                     } catch (Exception e) {
@@ -65,7 +218,7 @@ public class GameClient {
                 // connected forever, with no reader running.
                 if (connected) System.err.println("Client read failed: " + t);
             } finally {
-                disconnect();
+                lost();
             }
         });
         readThread.setDaemon(true);
@@ -73,23 +226,174 @@ public class GameClient {
     }
 
     /**
-     * Sends a message to the server.
+     * Notes what a message says about resuming, and takes a numbered one out of its envelope.
+     *
+     * @return the message to pass on, or null to drop it
+     */
+    private NetworkMessage unwrap(NetworkMessage msg) {
+        switch (msg.data()) {
+            case Msg.YourId y -> {
+                playerId = y.playerId();
+                resumeToken = y.resumeToken();
+                lastSeq = y.seq();
+            }
+            case Msg.ResumeResult ignored -> resuming = false;
+            case Msg.Sequenced s -> {
+                if (resuming) return null;
+                lastSeq = s.seq();
+                return NetworkMessage.of(s.message());
+            }
+            default -> {
+            }
+        }
+        return msg;
+    }
+
+    /**
+     * Queues a message for the server and returns without waiting for it to be written.
      *
      * @param msg the message to send
      */
     public void send(NetworkMessage msg) {
-        try {
-            synchronized (writeLock) {
-                out.writeObject(msg);
-                // Without this the stream's back-reference table pins every message ever sent.
-                out.reset();
-                out.flush();
-            }
-        } catch (Exception e) {
-            System.err.println("Client send error: " + e.getMessage());
+        if (!connected) return;
+        boolean rose = false;
+        synchronized (outbound) {
+            if (coalescing) {
+                if (replaceQueued(msg)) return;
+                dropSuperseded(msg);
+            }
+            Outgoing entry = new Outgoing(msg);
+            track(entry);
+            outbound.add(entry);
+            outbound.notify();
+            if (!backedUp && outbound.size() >= BACKPRESSURE_HIGH_WATER) {
+                backedUp = rose = true;
+            }
+        }
+        if (rose) signalBackpressure(true);
+    }
+
+    /**
+     * Overwrites the queued message this one supersedes, if there is one. Callers hold {@link #outbound}.
+     *
+     * @return whether the message took a queued one's place
+     */
+    private boolean replaceQueued(NetworkMessage msg) {
+        Outgoing queued = switch (msg.data()) {
+            case Msg.PieceMoveBatch m -> queuedBatch != null
+                    && queuedBatch.msg.data() instanceof Msg.PieceMoveBatch b && Arrays.equals(b.pieces(), m.pieces())
+                    ? queuedBatch : null;
+            case Msg.PileMove m -> queuedBatch != null
+                    && queuedBatch.msg.data() instanceof Msg.PileMove b && b.pile() == m.pile()
+                    ? queuedBatch : null;
+            case Msg.CursorMove ignored -> queuedCursor;
+            default -> null;
+        };
+        if (queued == null) return false;
+        queued.msg = msg;
+        return true;
+    }
+
+    /**
+     * Takes out of the queue the move or rotation of the same piece this one supersedes, so that
+     * this one goes to the back of the line rather than taking its place. Every receiver raises
+     * a moved piece, so the order moves go out in is the order pieces end up stacked in. Callers
+     * hold {@link #outbound}.
+     */
+    private void dropSuperseded(NetworkMessage msg) {
+        Outgoing queued = switch (msg.data()) {
+            case Msg.PieceMove m -> queuedMoves.remove(m.piece());
+            case Msg.PieceRotate m -> queuedRotations.remove(m.piece());
+            default -> null;
+        };
+        if (queued != null) outbound.removeFirstOccurrence(queued);
+    }
+
+    /** Notes a newly queued message as one later ones may overwrite. Callers hold {@link #outbound}. */
+    private void track(Outgoing entry) {
+        switch (entry.msg.data()) {
+            case Msg.PieceMove m -> {
+                queuedMoves.put(m.piece(), entry);
+                // Likewise the other way round: a newer pile position must not slip in before this.
+                queuedBatch = null;
+            }
+            case Msg.PieceRotate m -> queuedRotations.put(m.piece(), entry);
+            case Msg.PieceMoveBatch ignored -> {
+                // A pile move lands on top of any single move queued before it; a later single
+                // move overwriting one of those would jump it to after the pile move instead.
+                queuedMoves.clear();
+                queuedBatch = entry;
+            }
+            case Msg.PileMove ignored -> {
+                queuedMoves.clear();
+                queuedBatch = entry;
+            }
+            case Msg.CursorMove ignored -> queuedCursor = entry;
+            default -> {
+                // Anything else — a spawn, a flip, a delete — must stay after every move queued
+                // before it, so none of those may be overwritten with a newer position from now on.
+                queuedMoves.clear();
+                queuedRotations.clear();
+                queuedBatch = null;
+            }
         }
     }
 
+    /** Forgets a dequeued message so nothing tries to overwrite it. Callers hold {@link #outbound}. */
+    private void untrack(Outgoing entry) {
+        switch (entry.msg.data()) {
+            case Msg.PieceMove m -> queuedMoves.remove(m.piece(), entry);
+            case Msg.PieceRotate m -> queuedRotations.remove(m.piece(), entry);
+            case Msg.PieceMoveBatch ignored -> {
+                if (queuedBatch == entry) queuedBatch = null;
+            }
+            case Msg.PileMove ignored -> {
+                if (queuedBatch == entry) queuedBatch = null;
+            }
+            case Msg.CursorMove ignored -> {
+                if (queuedCursor == entry) queuedCursor = null;
+            }
+            default -> {
+            }
+        }
+    }
+
+    /** Writes queued messages out until the client disconnects. */
+    private void writeLoop() {
+        while (true) {
+            NetworkMessage msg;
+            boolean fell = false;
+            synchronized (outbound) {
+                try {
+                    while (connected && outbound.isEmpty()) outbound.wait();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!connected) return;
+                Outgoing entry = outbound.poll();
+                untrack(entry);
+                msg = entry.msg;
+                if (backedUp && outbound.size() <= BACKPRESSURE_LOW_WATER) {
+                    backedUp = false;
+                    fell = true;
+                }
+            }
+            if (fell) signalBackpressure(false);
+            try {
+                stream.write(msg);
+            } catch (Exception e) {
+                if (connected) System.err.println("Client send error: " + e.getMessage());
+                lost();
+                return;
+            }
+        }
+    }
+
+    private void signalBackpressure(boolean backlogged) {
+        var callback = onBackpressure;
+        if (callback != null) callback.accept(backlogged);
+    }
+
     /**
      * Returns whether the client is currently connected.
      *
@@ -99,11 +403,28 @@ public class GameClient {
         return connected;
     }
 
+    /** Disconnects after a failed read or write, telling the callback if nobody asked for it. */
+    private void lost() {
+        boolean wasConnected;
+        // The reader and writer can both fail at once; only one of them reports it.
+        synchronized (outbound) {
+            wasConnected = connected;
+            connected = false;
+        }
+        disconnect();
+        var callback = onConnectionLost;
+        if (wasConnected && callback != null) callback.run();
+    }
+
     /**
      * Disconnects from the server and releases resources.
      */
     public void disconnect() {
         connected = false;
+        synchronized (outbound) {
+            outbound.clear();
+            outbound.notify();
+        }
         try {
             socket.close();
         } catch (IOException ignored) {
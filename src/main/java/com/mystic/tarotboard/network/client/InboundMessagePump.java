@@ -0,0 +1,147 @@
+package com.mystic.tarotboard.network.client;
+
+import com.mystic.tarotboard.network.NetworkMessage;
+import com.mystic.tarotboard.network.NetworkMessage.Msg;
+import javafx.animation.AnimationTimer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hands network messages to the JavaFX thread once per pulse, rather than once per message.
+ *
+ * <p>Every message used to be wrapped in its own {@code Platform.runLater}, so a burst of remote
+ * pile drags queued thousands of runnables, each paying for its own trip through the FX event
+ * queue, and most of them only to be overwritten by the next. Instead the network threads add
+ * to a lock-free queue here, and an {@link AnimationTimer} takes everything that has arrived at
+ * the start of each pulse and applies it in one go.</p>
+ *
+ * <p>A move that a later message in the same pulse overrides is skipped. Only runs of moves are
+ * looked at — piece moves, pile moves, rotations, cursor moves — and any other message ends the
+ * run, so a flip, spawn or delete still lands between exactly the moves it arrived between. What
+ * is applied is otherwise in arrival order, so a piece still ends up raised above the ones moved
+ * before it.</p>
+ *
+ * <p>A {@link Msg.StateSync} ends its pulse, and what came after it waits for the next. A join's
+ * sync arrives in chunks, and on a fast link several can land at once; applied one per frame,
+ * they fill the board in while it keeps drawing, rather than in one long stall.</p>
+ */
+public final class InboundMessagePump {
+    /** The most messages applied in one pulse; past that the rest wait a frame rather than stall it. */
+    private static final int MAX_PER_PULSE = 20_000;
+
+    private final ConcurrentLinkedQueue<NetworkMessage> queue = new ConcurrentLinkedQueue<>();
+    /** Taken off the queue but left for a later pulse, oldest first. FX thread only. */
+    private final ArrayDeque<NetworkMessage> carried = new ArrayDeque<>();
+    private final Consumer<NetworkMessage> handler;
+    private final AnimationTimer timer;
+
+    // Per-pulse scratch, FX thread only.
+    private final List<NetworkMessage> batch = new ArrayList<>();
+    private final Set<Integer> laterMoves = new HashSet<>();
+    private final Set<Integer> laterRotations = new HashSet<>();
+    private final Set<Integer> laterCursors = new HashSet<>();
+    private final List<int[]> laterPiles = new ArrayList<>();
+    /** Player in the high half, pile number in the low. */
+    private final Set<Long> laterPileMoves = new HashSet<>();
+
+    /**
+     * Creates a stopped pump.
+     *
+     * @param handler applies one message; called on the FX thread
+     */
+    public InboundMessagePump(Consumer<NetworkMessage> handler) {
+        this.handler = handler;
+        this.timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                drain();
+            }
+        };
+    }
+
+    /**
+     * Queues a message for the next pulse. Safe to call from any thread.
+     *
+     * @param msg the message
+     */
+    public void offer(NetworkMessage msg) {
+        queue.add(msg);
+    }
+
+    /** Starts applying queued messages each pulse. Call on the FX thread. */
+    public void start() {
+        timer.start();
+    }
+
+    /** Stops the pump and drops whatever has not been applied yet. Call on the FX thread. */
+    public void stop() {
+        timer.stop();
+        queue.clear();
+        carried.clear();
+    }
+
+    private void drain() {
+        NetworkMessage msg;
+        while (batch.size() < MAX_PER_PULSE && (msg = carried.poll()) != null) batch.add(msg);
+        while (batch.size() < MAX_PER_PULSE && (msg = queue.poll()) != null) batch.add(msg);
+        if (batch.isEmpty()) return;
+        for (int i = 0; i < batch.size() - 1; i++) {
+            if (batch.get(i).data() instanceof Msg.StateSync) {
+                for (int j = batch.size() - 1; j > i; j--) carried.addFirst(batch.remove(j));
+                break;
+            }
+        }
+
+        // Walk back from the newest so each move can tell whether something later overrides it.
+        boolean[] skip = new boolean[batch.size()];
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            skip[i] = switch (batch.get(i).data()) {
+                case Msg.PieceMove m -> !laterMoves.add(m.piece());
+                case Msg.PieceRotate m -> !laterRotations.add(m.piece());
+                case Msg.CursorMove m -> !laterCursors.add(m.playerId());
+                case Msg.PieceMoveBatch m -> {
+                    for (int[] pile : laterPiles) {
+                        if (Arrays.equals(pile, m.pieces())) yield true;
+                    }
+                    laterPiles.add(m.pieces());
+                    yield false;
+                }
+                case Msg.PileMove m -> !laterPileMoves.add(((long) m.playerId() << 32) | (m.pile() & 0xFFFFFFFFL));
+                // Says nothing about pieces, so it neither ends a run nor is ever skipped.
+                case Msg.CursorFrame ignored -> false;
+                default -> {
+                    forgetRun();
+                    yield false;
+                }
+            };
+        }
+        forgetRun();
+
+        for (int i = 0; i < skip.length; i++) {
+            if (skip[i]) continue;
+            try {
+                handler.accept(batch.get(i));
+            } catch (RuntimeException e) {
+                // One bad message must not take the rest of the pulse down with it, as it could
+                // not when each had a runLater of its own.
+                System.err.println("Failed to apply " + batch.get(i).type() + ": " + e);
+            }
+        }
+        batch.clear();
+    }
+
+    private void forgetRun() {
+        laterMoves.clear();
+        laterRotations.clear();
+        laterCursors.clear();
+        laterPiles.clear();
+        laterPileMoves.clear();
+    }
+}
@@ -0,0 +1,464 @@
+package com.mystic.tarotboard.network.server;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * The changes {@link HeadlessServer} has made to its board since its last full save, appended to
+ * disk as they are made.
+ *
+ * <p>The server used to rewrite the whole board every few seconds while it was changing, so a
+ * crash lost whatever had happened since the last write, and a busy table rewrote thousands of
+ * cards to record one drag. Now each change goes into the journal as a record of a few bytes, and
+ * the full save is written only now and then, after which the journal is started afresh. On
+ * starting, the server loads the save and replays the journal over it.</p>
+ *
+ * <p>Records are appended on the board thread to a buffer in memory; a {@link JournalWriter}
+ * thread takes whatever has built up, writes it as one batch, with its length and checksum, and
+ * forces it to disk. While it writes, the next batch builds up: the group
+ * commit, so a burst of moves costs one sync. A crash loses only the batch being written, and a
+ * batch torn by one fails its checksum and ends the replay there.</p>
+ *
+ * <p>Journals are numbered by generation: a save records the generation of the journal that
+ * follows it. Starting a new generation and taking the save happen together on the board thread,
+ * so the save plus every journal from its generation on is always the whole board, even if the
+ * process dies before the save reaches disk. Older journals are deleted once it has.</p>
+ *
+ * <p>A pile drag is journaled as the wire carries it: the pile's pieces once, when it is grabbed,
+ * and then one record of a few bytes for each move of the whole pile, replayed by the same
+ * resolution the server applied. So dragging the whole deck costs the journal no more per frame
+ * than dragging one card. A new generation starts by naming again the piles players hold, since
+ * the journal it follows, with their grabs, is deleted.</p>
+ */
+final class BoardJournal {
+
+    /** The changes a journal records, one method per kind of record; what replaying it calls. */
+    interface Changes {
+        /** Deals the deck shuffled from a seed. */
+        void deal(long seed);
+
+        /** Drops every card back onto the deck pile face down. */
+        void resetCards();
+
+        void move(int handle, double x, double y);
+
+        /** Moves several pieces to the same spot. */
+        void moveAll(int[] handles, double x, double y);
+
+        /** Records the pile a player has grabbed, replacing the one they held. */
+        void pile(int playerId, int pile, int[] handles);
+
+        /** Moves the pieces of a player's pile, if it is still the one numbered {@code pile}. */
+        void movePile(int playerId, int pile, double x, double y);
+
+        void rotate(int handle, double rotation);
+
+        void flip(int handle, boolean back, boolean front, boolean text);
+
+        /** Starts tracking a chip or, if {@code die}, a die, replacing whatever had its handle. */
+        void put(boolean die, int handle, double x, double y, double rotation,
+                 double r, double g, double b, double opacity,
+                 boolean front, boolean back, int sides, int value);
+
+        void remove(int handle);
+
+        void clearChips();
+
+        void clearDice();
+    }
+
+    private static final byte DEAL = 1;
+    private static final byte RESET_CARDS = 2;
+    private static final byte MOVE = 3;
+    private static final byte ROTATE = 4;
+    private static final byte FLIP = 5;
+    private static final byte PUT_CHIP = 6;
+    private static final byte PUT_DIE = 7;
+    private static final byte REMOVE = 8;
+    private static final byte CLEAR_CHIPS = 9;
+    private static final byte CLEAR_DICE = 10;
+    private static final byte MOVE_ALL = 11;
+    private static final byte PILE = 12;
+    private static final byte MOVE_PILE = 13;
+
+    private static final String SUFFIX = ".journal";
+    private static final int BATCH_HEADER = 8;
+
+    /** Records of one generation, written together. */
+    private record Batch(long generation, ByteBuffer records) {
+    }
+
+    private final Path saveFile;
+    private final JournalWriter writer;
+
+    // Guarded by this.
+    private ByteBuffer pending = ByteBuffer.allocate(4096);
+    private long pendingGeneration;
+    private final ArrayDeque<Batch> sealed = new ArrayDeque<>();
+    private long retireBelow;
+    private boolean closed;
+    /** Set by the writer thread once it has written everything up to {@link #closed}. */
+    private boolean finished;
+
+    /** Bytes in the current generation's file. */
+    private volatile long size;
+
+    // The writer thread's own.
+    private FileChannel channel;
+    private long channelGeneration = -1;
+    private long retiredBelow;
+
+    /**
+     * Starts a journal.
+     *
+     * @param saveFile   the save the journal follows; its files sit beside it
+     * @param generation the generation to append to
+     * @param writer     the thread that writes it, perhaps beside other journals
+     */
+    BoardJournal(Path saveFile, long generation, JournalWriter writer) {
+        this.saveFile = saveFile;
+        this.pendingGeneration = generation;
+        this.writer = writer;
+    }
+
+    /**
+     * Starts the next generation: what is recorded from now on goes to its journal. Called on the
+     * board thread as the save that the new journal will follow is taken.
+     */
+    synchronized void roll(long generation) {
+        seal();
+        pendingGeneration = generation;
+        size = 0;
+        writer.wake(this);
+    }
+
+    /** Deletes the journals older than a generation, once a save that follows them has been written. */
+    synchronized void retire(long generation) {
+        retireBelow = Math.max(retireBelow, generation);
+        writer.wake(this);
+    }
+
+    /** Returns how many bytes the current generation's journal holds on disk. */
+    long size() {
+        return size;
+    }
+
+    /** Writes what is still buffered and closes the journal's file, waiting a few seconds at most. */
+    synchronized void close() {
+        closed = true;
+        writer.wake(this);
+        long deadline = System.currentTimeMillis() + 3000;
+        for (long left = 3000; !finished && left > 0; left = deadline - System.currentTimeMillis()) {
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Records, one per method of Changes, appended on the board thread.
+
+    synchronized void deal(long seed) {
+        begin(DEAL, 8).putLong(seed);
+    }
+
+    synchronized void resetCards() {
+        begin(RESET_CARDS, 0);
+    }
+
+    synchronized void move(int handle, double x, double y) {
+        begin(MOVE, 20).putInt(handle).putDouble(x).putDouble(y);
+    }
+
+    synchronized void moveAll(int[] handles, double x, double y) {
+        ByteBuffer buf = begin(MOVE_ALL, 4 + handles.length * 4 + 16).putInt(handles.length);
+        for (int handle : handles) buf.putInt(handle);
+        buf.putDouble(x).putDouble(y);
+    }
+
+    synchronized void pile(int playerId, int pile, int[] handles) {
+        ByteBuffer buf = begin(PILE, 12 + handles.length * 4).putInt(playerId).putInt(pile).putInt(handles.length);
+        for (int handle : handles) buf.putInt(handle);
+    }
+
+    synchronized void movePile(int playerId, int pile, double x, double y) {
+        begin(MOVE_PILE, 24).putInt(playerId).putInt(pile).putDouble(x).putDouble(y);
+    }
+
+    synchronized void rotate(int handle, double rotation) {
+        begin(ROTATE, 12).putInt(handle).putDouble(rotation);
+    }
+
+    synchronized void flip(int handle, boolean back, boolean front, boolean text) {
+        begin(FLIP, 5).putInt(handle).put(flags(back, front, text));
+    }
+
+    synchronized void put(boolean die, int handle, double x, double y, double rotation,
+                          double r, double g, double b, double opacity,
+                          boolean front, boolean back, int sides, int value) {
+        ByteBuffer buf = begin(die ? PUT_DIE : PUT_CHIP, 69).putInt(handle)
+                .putDouble(x).putDouble(y).putDouble(rotation)
+                .putDouble(r).putDouble(g).putDouble(b).putDouble(opacity);
+        buf.put(flags(front, back, false)).putInt(sides).putInt(value);
+    }
+
+    synchronized void remove(int handle) {
+        begin(REMOVE, 4).putInt(handle);
+    }
+
+    synchronized void clearChips() {
+        begin(CLEAR_CHIPS, 0);
+    }
+
+    synchronized void clearDice() {
+        begin(CLEAR_DICE, 0);
+    }
+
+    /**
+     * Replays the journals that follow a save.
+     *
+     * @param saveFile   the save
+     * @param generation the generation the save records; its journal and any later are replayed,
+     *                   in order
+     * @param board      what to apply the changes to
+     * @return how many changes were replayed
+     */
+    static int replay(Path saveFile, long generation, Changes board) {
+        int count = 0;
+        for (long g : generations(saveFile)) {
+            if (g < generation) continue;
+            Path file = fileFor(saveFile, g);
+            try {
+                count += replay(ByteBuffer.wrap(Files.readAllBytes(file)), board);
+            } catch (IOException e) {
+                System.err.println("[TarotBoard] Could not read " + file.getFileName() + ": " + e);
+            }
+        }
+        return count;
+    }
+
+    /** Replays one journal's batches, stopping at the first that is torn or corrupt. */
+    private static int replay(ByteBuffer in, Changes board) {
+        int count = 0;
+        CRC32 crc = new CRC32();
+        while (in.remaining() >= BATCH_HEADER) {
+            int length = in.getInt();
+            int checksum = in.getInt();
+            if (length < 0 || length > in.remaining()) break;
+            ByteBuffer batch = in.slice(in.position(), length);
+            crc.reset();
+            crc.update(batch.duplicate());
+            if ((int) crc.getValue() != checksum) break;
+            in.position(in.position() + length);
+            try {
+                while (batch.hasRemaining()) {
+                    apply(batch, board);
+                    count++;
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                System.err.println("[TarotBoard] Stopped replaying a malformed journal record: " + e);
+                return count;
+            }
+        }
+        if (in.hasRemaining()) {
+            System.err.println("[TarotBoard] Ignoring " + in.remaining() + " bytes of torn journal tail");
+        }
+        return count;
+    }
+
+    private static void apply(ByteBuffer in, Changes board) {
+        byte tag = in.get();
+        switch (tag) {
+            case DEAL -> board.deal(in.getLong());
+            case RESET_CARDS -> board.resetCards();
+            case MOVE -> board.move(in.getInt(), in.getDouble(), in.getDouble());
+            case MOVE_ALL -> board.moveAll(handles(in), in.getDouble(), in.getDouble());
+            case PILE -> board.pile(in.getInt(), in.getInt(), handles(in));
+            case MOVE_PILE -> board.movePile(in.getInt(), in.getInt(), in.getDouble(), in.getDouble());
+            case ROTATE -> board.rotate(in.getInt(), in.getDouble());
+            case FLIP -> {
+                int handle = in.getInt();
+                byte f = in.get();
+                board.flip(handle, (f & 1) != 0, (f & 2) != 0, (f & 4) != 0);
+            }
+            case PUT_CHIP, PUT_DIE -> {
+                int handle = in.getInt();
+                double x = in.getDouble(), y = in.getDouble(), rotation = in.getDouble();
+                double r = in.getDouble(), g = in.getDouble(), b = in.getDouble(), opacity = in.getDouble();
+                byte f = in.get();
+                board.put(tag == PUT_DIE, handle, x, y, rotation, r, g, b, opacity,
+                        (f & 1) != 0, (f & 2) != 0, in.getInt(), in.getInt());
+            }
+            case REMOVE -> board.remove(in.getInt());
+            case CLEAR_CHIPS -> board.clearChips();
+            case CLEAR_DICE -> board.clearDice();
+            default -> throw new IllegalArgumentException("unknown record " + tag);
+        }
+    }
+
+    /** Reads a count and then that many handles, checking the count against what is left. */
+    private static int[] handles(ByteBuffer in) {
+        int n = in.getInt();
+        if (n < 0 || n > in.remaining() / Integer.BYTES) throw new IllegalArgumentException("bad count " + n);
+        int[] handles = new int[n];
+        in.asIntBuffer().get(handles);
+        in.position(in.position() + n * Integer.BYTES);
+        return handles;
+    }
+
+    /** Returns the highest generation of any journal beside a save, or zero if there is none. */
+    static long latest(Path saveFile) {
+        List<Long> found = generations(saveFile);
+        return found.isEmpty() ? 0 : found.get(found.size() - 1);
+    }
+
+    /** Returns the generations of the journals beside a save, ascending. */
+    private static List<Long> generations(Path saveFile) {
+        Path dir = saveFile.toAbsolutePath().getParent();
+        String prefix = saveFile.getFileName() + ".";
+        List<Long> found = new ArrayList<>();
+        if (dir == null || !Files.isDirectory(dir)) return found;
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.startsWith(prefix) && n.endsWith(SUFFIX))
+                    .forEach(n -> {
+                        try {
+                            found.add(Long.parseLong(n.substring(prefix.length(), n.length() - SUFFIX.length())));
+                        } catch (NumberFormatException ignored) {
+                            // Not one of ours.
+                        }
+                    });
+        } catch (IOException e) {
+            System.err.println("[TarotBoard] Could not list journals: " + e);
+        }
+        found.sort(null);
+        return found;
+    }
+
+    private static Path fileFor(Path saveFile, long generation) {
+        return saveFile.resolveSibling(saveFile.getFileName() + "." + generation + SUFFIX);
+    }
+
+    private static byte flags(boolean a, boolean b, boolean c) {
+        return (byte) ((a ? 1 : 0) | (b ? 2 : 0) | (c ? 4 : 0));
+    }
+
+    /** Starts a record in {@link #pending}, making room for its body, and wakes the writer if it was idle. */
+    private ByteBuffer begin(byte tag, int bodyBytes) {
+        if (pending.position() == 0) writer.wake(this);
+        if (pending.remaining() < 1 + bodyBytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + 1 + bodyBytes));
+            grown.put(pending.flip());
+            pending = grown;
+        }
+        return pending.put(tag);
+    }
+
+    /** Moves what is buffered into a batch of its own. Holding this. */
+    private void seal() {
+        if (pending.position() == 0) return;
+        sealed.add(new Batch(pendingGeneration, pending.flip()));
+        pending = ByteBuffer.allocate(4096);
+    }
+
+    /**
+     * Writes what has built up since the last call as one batch per generation, forces it to disk,
+     * and deletes whatever journals have been retired. Writer thread only.
+     */
+    void flush() {
+        List<Batch> batches;
+        long retire;
+        boolean done;
+        synchronized (this) {
+            if (finished) return;
+            seal();
+            batches = new ArrayList<>(sealed);
+            sealed.clear();
+            retire = retireBelow;
+            done = closed;
+        }
+        for (Batch batch : batches) write(batch);
+        if (channel != null && !batches.isEmpty()) {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        if (retire > retiredBelow) {
+            delete(retire);
+            retiredBelow = retire;
+        }
+        if (!done) return;
+        closeChannel();
+        synchronized (this) {
+            finished = true;
+            notifyAll();
+        }
+    }
+
+    private void write(Batch batch) {
+        try {
+            if (channel == null || channelGeneration != batch.generation()) {
+                closeChannel();
+                channel = FileChannel.open(fileFor(saveFile, batch.generation()),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                channelGeneration = batch.generation();
+                size = channel.size();
+            }
+            ByteBuffer records = batch.records();
+            CRC32 crc = new CRC32();
+            crc.update(records.duplicate());
+            ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER).putInt(records.remaining())
+                    .putInt((int) crc.getValue()).flip();
+            long bytes = header.remaining() + records.remaining();
+            ByteBuffer[] parts = {header, records};
+            while (records.hasRemaining()) channel.write(parts);
+            size += bytes;
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /** Deletes the journals older than a generation, closing the current one first if it is among them. */
+    private void delete(long below) {
+        if (channel != null && channelGeneration < below) closeChannel();
+        for (long g : generations(saveFile)) {
+            if (g >= below) break;
+            try {
+                Files.deleteIfExists(fileFor(saveFile, g));
+            } catch (IOException e) {
+                System.err.println("[TarotBoard] Could not delete an old journal: " + e);
+            }
+        }
+    }
+
+    private void fail(IOException e) {
+        System.err.println("[TarotBoard] Failed to write the board journal: " + e);
+        // Reopened for the next batch, in case what failed was the handle.
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Nothing more to write through it.
+        }
+        channel = null;
+        channelGeneration = -1;
+    }
+}
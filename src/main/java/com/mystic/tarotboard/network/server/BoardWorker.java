@@ -0,0 +1,92 @@
+package com.mystic.tarotboard.network.server;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The thread that owns one or more {@link HeadlessServer} boards: it applies what is queued for
+ * them, one task at a time in the order they were queued, and runs each one's relay tick.
+ *
+ * <p>A board is only ever touched by the worker it was given to, so it needs no locking, and a
+ * {@link RoomServer} with hundreds of rooms runs them on as many workers as it has cores rather
+ * than on a thread each. A lone server has a worker of its own.</p>
+ */
+final class BoardWorker {
+    /** What is yet to be done, for any of the boards. Any thread may add; only the worker takes. */
+    private final LinkedBlockingQueue<Runnable> inbox = new LinkedBlockingQueue<>();
+    /** The boards this worker ticks. */
+    private final List<HeadlessServer> boards = new CopyOnWriteArrayList<>();
+    private final Thread thread;
+    private final int tickMs;
+    private volatile boolean running = true;
+
+    /**
+     * @param name   the thread's name
+     * @param tickMs how often each board's relay tick runs
+     */
+    BoardWorker(String name, int tickMs) {
+        this.tickMs = tickMs;
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /** Queues a task for the worker thread. */
+    void execute(Runnable task) {
+        inbox.add(task);
+    }
+
+    /** Starts ticking a board. */
+    void add(HeadlessServer board) {
+        boards.add(board);
+    }
+
+    /** Stops ticking a board. */
+    void remove(HeadlessServer board) {
+        boards.remove(board);
+    }
+
+    /**
+     * Lets the worker finish what it was sent, then ends it.
+     *
+     * @param waitMs how long to wait for it to end
+     * @return whether it has ended, so what it owned is the caller's to read
+     */
+    boolean stop(long waitMs) {
+        running = false;
+        inbox.add(() -> {
+        });
+        try {
+            thread.join(waitMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !thread.isAlive();
+    }
+
+    private void run() {
+        long tickNanos = tickMs * 1_000_000L;
+        long nextTick = System.nanoTime() + tickNanos;
+        while (running || !inbox.isEmpty()) {
+            try {
+                Runnable task = inbox.poll(Math.max(0, nextTick - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (task != null) task.run();
+            } catch (InterruptedException e) {
+                break;
+            } catch (Throwable t) {
+                // One bad message must not take the board, or the boards beside it, down with it.
+                System.err.println("[TarotBoard] Error applying a board update: " + t);
+            }
+            long now = System.nanoTime();
+            if (now - nextTick >= 0) {
+                for (HeadlessServer board : boards) board.relayTick();
+                nextTick = Math.max(nextTick + tickNanos, now);
+            }
+        }
+    }
+}
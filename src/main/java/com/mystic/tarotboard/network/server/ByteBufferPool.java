@@ -0,0 +1,51 @@
+package com.mystic.tarotboard.network.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A free list of equally sized {@link ByteBuffer}s for the non-blocking server's reads.
+ *
+ * <p>A connection only holds a buffer while it has bytes in hand — a frame arriving, or the
+ * tail of one still to come — and gives it back the moment it has drained. Most of a big
+ * server's connections are idle at any instant, so this is what keeps thousands of them from
+ * pinning thousands of read buffers.</p>
+ *
+ * <p>The buffers are heap rather than direct: frames are decoded straight out of the backing
+ * array by {@link com.mystic.tarotboard.network.WireCodec}, which a direct buffer does not have.</p>
+ */
+final class ByteBufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * @param bufferSize the capacity of every buffer handed out
+     * @param maxPooled  how many returned buffers to keep; past that they are left to the GC
+     */
+    ByteBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /** Takes an empty buffer, allocating one if none are free. */
+    ByteBuffer acquire() {
+        ByteBuffer buf = free.poll();
+        if (buf == null) return ByteBuffer.allocate(bufferSize);
+        pooled.decrementAndGet();
+        return buf;
+    }
+
+    /** Returns a buffer from {@link #acquire()}; the caller must not touch it afterwards. */
+    void release(ByteBuffer buf) {
+        if (buf.capacity() != bufferSize) return;
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            return;
+        }
+        buf.clear();
+        free.offer(buf);
+    }
+}
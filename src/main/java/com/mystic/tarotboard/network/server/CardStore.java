@@ -0,0 +1,179 @@
+package com.mystic.tarotboard.network.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The cards {@link HeadlessServer} tracks, by index: their positions, rotations and which faces
+ * show, in columns laid out in a memory-mapped file beside the save.
+ *
+ * <p>They used to be six arrays on the heap, each {@code NUM_CARDS} long, for every board. Here
+ * they are a fixed header and then the columns, {@code x}, {@code y} and {@code rotation} as
+ * doubles and one byte of visibility flags a card, and a change is written in place. The board
+ * is off the heap, so a server with many rooms collects no more garbage than one with a few, and
+ * the pages are the operating system's to keep or write out.</p>
+ *
+ * <p>The save and the {@link BoardJournal} stay what the board is rebuilt from after a crash; the
+ * mapping is {@link #force forced} only as often as the board is saved. But a server that stops
+ * cleanly {@link #seal seals} the file, naming the save it matches, and the next start that loads
+ * that save remaps the cards instead of copying them back out of it. If the file cannot be mapped
+ * at all, the columns live in a heap buffer instead. Board thread only, apart from
+ * {@link #force}.</p>
+ */
+final class CardStore {
+    /** The first four bytes of the file: {@code TBCS}. */
+    private static final int MAGIC = 0x54424353;
+    private static final int VERSION = 1;
+
+    // The header: magic, version, card count, whether sealed, then the journal generation of the
+    // save it was last sealed or begun with.
+    private static final int AT_VERSION = 4;
+    private static final int AT_COUNT = 8;
+    private static final int AT_SEALED = 12;
+    private static final int AT_GENERATION = 16;
+    private static final int HEADER = 32;
+
+    private static final int BACK = 1;
+    private static final int FRONT = 2;
+    private static final int TEXT = 4;
+
+    private final ByteBuffer columns;
+    private final int count;
+    private final int atX;
+    private final int atY;
+    private final int atRotation;
+    private final int atVis;
+
+    private CardStore(ByteBuffer columns, int count) {
+        this.columns = columns;
+        this.count = count;
+        atX = HEADER;
+        atY = atX + count * Double.BYTES;
+        atRotation = atY + count * Double.BYTES;
+        atVis = atRotation + count * Double.BYTES;
+    }
+
+    /**
+     * Maps a store, keeping what the file already holds if it was laid out for as many cards.
+     *
+     * @param file  the file; created if there is none
+     * @param count how many cards
+     * @return the store
+     */
+    static CardStore open(Path file, int count) {
+        int size = HEADER + count * (3 * Double.BYTES + 1);
+        ByteBuffer columns;
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // Any other size is some other layout; start it afresh rather than read it.
+                if (channel.size() != size) channel.truncate(0);
+                columns = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("[TarotBoard] Could not map " + file + " (" + e + "); keeping cards on the heap");
+            columns = ByteBuffer.allocate(size);
+        }
+        CardStore store = new CardStore(columns, count);
+        if (columns.getInt(0) != MAGIC || columns.getInt(AT_VERSION) != VERSION || columns.getInt(AT_COUNT) != count) {
+            columns.putInt(0, MAGIC).putInt(AT_VERSION, VERSION).putInt(AT_COUNT, count)
+                    .putInt(AT_SEALED, 0).putLong(AT_GENERATION, 0);
+        }
+        return store;
+    }
+
+    /** Returns the file a save's cards are mapped from. */
+    static Path fileFor(Path saveFile) {
+        return saveFile.resolveSibling(saveFile.getFileName() + ".cards");
+    }
+
+    /**
+     * Returns whether the store was sealed alongside the save that begins a journal generation,
+     * and so already holds that save's cards.
+     */
+    boolean isSealedAt(long generation) {
+        return columns.getInt(AT_SEALED) != 0 && columns.getLong(AT_GENERATION) == generation;
+    }
+
+    /** Marks the store as changing from the save that begins a journal generation; it is no longer sealed. */
+    void begin(long generation) {
+        columns.putInt(AT_SEALED, 0).putLong(AT_GENERATION, generation);
+    }
+
+    /** Marks the store as holding exactly the cards of the save {@link #begin begun} with, and forces it to disk. */
+    void seal() {
+        columns.putInt(AT_SEALED, 1);
+        force();
+    }
+
+    /** Writes the mapping's changed pages to the file. Any thread. */
+    void force() {
+        if (columns instanceof MappedByteBuffer mapped) mapped.force();
+    }
+
+    void move(int card, double x, double y) {
+        columns.putDouble(atX + card * Double.BYTES, x);
+        columns.putDouble(atY + card * Double.BYTES, y);
+    }
+
+    void rotate(int card, double rotation) {
+        columns.putDouble(atRotation + card * Double.BYTES, rotation);
+    }
+
+    void flip(int card, boolean back, boolean front, boolean text) {
+        columns.put(atVis + card, (byte) ((back ? BACK : 0) | (front ? FRONT : 0) | (text ? TEXT : 0)));
+    }
+
+    /** Puts every card, as a save lists them. */
+    void load(double[] xs, double[] ys, double[] rotations, boolean[] back, boolean[] front, boolean[] text) {
+        columns.slice(atX, count * Double.BYTES).asDoubleBuffer().put(xs, 0, count);
+        columns.slice(atY, count * Double.BYTES).asDoubleBuffer().put(ys, 0, count);
+        columns.slice(atRotation, count * Double.BYTES).asDoubleBuffer().put(rotations, 0, count);
+        for (int i = 0; i < count; i++) flip(i, back[i], front[i], text[i]);
+    }
+
+    // Copies of the columns, by card index.
+
+    double[] xs() {
+        return doubles(atX);
+    }
+
+    double[] ys() {
+        return doubles(atY);
+    }
+
+    double[] rotations() {
+        return doubles(atRotation);
+    }
+
+    boolean[] backVis() {
+        return flags(BACK);
+    }
+
+    boolean[] frontVis() {
+        return flags(FRONT);
+    }
+
+    boolean[] textVis() {
+        return flags(TEXT);
+    }
+
+    private double[] doubles(int at) {
+        double[] a = new double[count];
+        columns.slice(at, count * Double.BYTES).asDoubleBuffer().get(a);
+        return a;
+    }
+
+    private boolean[] flags(int flag) {
+        boolean[] a = new boolean[count];
+        for (int i = 0; i < count; i++) a[i] = (columns.get(atVis + i) & flag) != 0;
+        return a;
+    }
+}
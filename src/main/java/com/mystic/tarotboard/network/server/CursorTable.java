@@ -0,0 +1,77 @@
+package com.mystic.tarotboard.network.server;
+
+import com.mystic.tarotboard.network.NetworkMessage.Msg;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Each player's latest cursor position since the last relay tick, for sending as one
+ * {@link Msg.CursorFrame}.
+ *
+ * <p>Held in parallel arrays, which become the frame's own arrays as they stand, with a map from
+ * player to slot so a move only ever overwrites that player's entry. Not thread-safe;
+ * {@link GameServer} locks around it.</p>
+ */
+final class CursorTable {
+    private final Map<Integer, Integer> slotOf = new HashMap<>();
+    private int[] playerIds = new int[8];
+    private double[] xs = new double[8];
+    private double[] ys = new double[8];
+    private int size;
+
+    /**
+     * Records a player's cursor, replacing wherever it was earlier this tick.
+     *
+     * @param playerId the player
+     * @param x        the board x
+     * @param y        the board y
+     */
+    void put(int playerId, double x, double y) {
+        Integer slot = slotOf.get(playerId);
+        if (slot == null) {
+            if (size == playerIds.length) {
+                playerIds = Arrays.copyOf(playerIds, size * 2);
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+            }
+            slot = size++;
+            slotOf.put(playerId, slot);
+            playerIds[slot] = playerId;
+        }
+        xs[slot] = x;
+        ys[slot] = y;
+    }
+
+    /**
+     * Forgets a player's cursor, so a player who has just left does not reappear in the next frame.
+     *
+     * @param playerId the player
+     */
+    void remove(int playerId) {
+        Integer slot = slotOf.remove(playerId);
+        if (slot == null) return;
+        int last = --size;
+        if (slot != last) {
+            playerIds[slot] = playerIds[last];
+            xs[slot] = xs[last];
+            ys[slot] = ys[last];
+            slotOf.put(playerIds[slot], slot);
+        }
+    }
+
+    /**
+     * Takes every cursor recorded since the last call.
+     *
+     * @return the frame, or null if no cursor has moved
+     */
+    Msg.CursorFrame take() {
+        if (size == 0) return null;
+        var frame = new Msg.CursorFrame(Arrays.copyOf(playerIds, size), Arrays.copyOf(xs, size),
+                Arrays.copyOf(ys, size));
+        size = 0;
+        slotOf.clear();
+        return frame;
+    }
+}
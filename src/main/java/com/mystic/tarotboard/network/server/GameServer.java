@@ -1,15 +1,25 @@
 package com.mystic.tarotboard.network.server;
 
+import com.mystic.tarotboard.network.EncodedMessage;
+import com.mystic.tarotboard.network.MessageStream;
 import com.mystic.tarotboard.network.NetworkMessage;
 import com.mystic.tarotboard.network.NetworkMessage.Msg;
 import com.mystic.tarotboard.network.NetworkMessage.PlayerInfo;
+import com.mystic.tarotboard.network.WireCodec;
+import com.mystic.tarotboard.utils.PieceHandles;
 import org.bitlet.weupnp.GatewayDevice;
 import org.bitlet.weupnp.GatewayDiscover;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -17,21 +27,108 @@ import java.util.function.Predicate;
  * Multi-client TCP server that accepts connections, assigns player IDs, and relays messages
  * between clients. The host player (playerId=0) is created at startup.
  * It also handles UPnP port forwarding for easier global access.
+ * <p>
+ * It runs in one of two modes, chosen at construction:
+ * <ul>
+ *   <li><b>Blocking</b>, the original: one thread accepting, and a reader thread per client. Plenty
+ *   for a game hosted from the app, where a table holds a handful of players.</li>
+ *   <li><b>Non-blocking</b>, for the dedicated server: a few {@link Selector} loops share every
+ *   connection, reading frames into {@link ByteBufferPool pooled} buffers and writing without ever
+ *   blocking. A thread and its stack per player is what capped a blocking server at dozens of
+ *   players; this one is bounded by sockets and memory instead.</li>
+ * </ul>
+ * Both modes deliver to the same {@link #setOnMessage} consumer, from whichever thread read the
+ * message, and apply the same operator checks. A client that predates the binary codec is
+ * refused at its greeting in either mode.
+ * <p>
+ * A non-blocking server may also be one room of a {@link RoomServer}: it then has no socket of its
+ * own, and serves on loops it shares with the other rooms the connections that are handed to it.
  */
 public class GameServer {
     /** How many consecutive external ports to try when the router rejects the preferred one. */
     private static final int PORT_MAPPING_ATTEMPTS = 10;
 
+    /** Highest player ID a blocking server hands out; every player costs it a thread. */
+    private static final int MAX_PLAYER_ID_BLOCKING = 99;
+
+    /** Highest player ID a non-blocking server hands out. */
+    private static final int MAX_PLAYER_ID_NIO = 9999;
+
+    /** How many selector loops a non-blocking server shares its connections across. */
+    static final int NIO_LOOPS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /** How often an idle selector loop wakes to time out clients that never finished the handshake. */
+    private static final long NIO_SWEEP_INTERVAL_MS = 1000;
+
+    /** Read buffers for the non-blocking loops; a frame longer than one is read into its own array. */
+    static final ByteBufferPool READ_BUFFERS = new ByteBufferPool(16 * 1024, 256);
+
+    /** How much of a frame too long for a {@link #READ_BUFFERS read buffer} is made room for before more of it arrives. */
+    private static final int BIG_FRAME_FIRST_BYTES = 64 * 1024;
+
+    /** Default for {@link #setOutboundLimits}: queue depth past which a client stops getting cursor moves. */
+    public static final int DEFAULT_OUTBOUND_HIGH_WATER = 256;
+
+    /** Default for {@link #setOutboundLimits}: queue depth at which a client is disconnected. */
+    public static final int DEFAULT_OUTBOUND_HARD_LIMIT = 4096;
+
+    /** Queue depth at or below which a {@link #sendPaced paced} stream gets its next message. */
+    private static final int PACED_DEPTH = 2;
+
+    /** How often the pacer looks again at clients whose queues were too deep to take more. */
+    private static final long PACE_POLL_MS = 5;
+
+    /** How long a dropped player's ID is held for them to {@link Msg.Resume resume} as. */
+    private static final long RESUME_GRACE_MS = 2 * 60 * 1000;
+
+    private static final SecureRandom RESUME_TOKENS = new SecureRandom();
+
+    /** The listening socket in blocking mode, or null. */
     private final ServerSocket serverSocket;
+    /** The listening channel in non-blocking mode, or null. */
+    private final ServerSocketChannel serverChannel;
+    private final int maxPlayerId;
+    private NioLoop[] loops;
+    /** Whether {@link #loops} belong to a {@link RoomServer}, which starts and stops them, rather than to this server. */
+    private final boolean sharedLoops;
     private final List<ClientHandler> clients = new CopyOnWriteArrayList<>();
     private final List<PlayerInfo> players = new CopyOnWriteArrayList<>();
     private final int hostPlayerId;
     private volatile boolean running;
+    /** Connections {@link #adopt adopted} whose handshake has not yet finished or failed. Guarded by this. */
+    private int pendingJoins;
     private Consumer<NetworkMessage> onMessage;
     private GatewayDevice activeGateway;
     private volatile int externalPort = -1;
     private volatile Consumer<Integer> onPortForwarded;
     private Predicate<Integer> isOperatorCheck = playerId -> false; // Default: no one is operator
+    private volatile int outboundHighWater = DEFAULT_OUTBOUND_HIGH_WATER;
+    private volatile int outboundHardLimit = DEFAULT_OUTBOUND_HARD_LIMIT;
+    /** Piece moves held back between relay ticks, or null if every message is relayed at once. */
+    private MoveCoalescer coalescer;
+    /** Cursor moves held back between relay ticks, or null alongside {@link #coalescer}. */
+    private CursorTable cursors;
+    private int relayTickMs;
+    /** What is left of each player's {@link #sendPaced paced} stream. Guarded by itself. */
+    private final Map<Integer, ArrayDeque<EncodedMessage>> paced = new HashMap<>();
+    /** Sends {@link #paced} streams; started with the first one. Guarded by {@link #paced}. */
+    private Thread pacer;
+    /** The recent board-changing messages, for players who reconnect; null if resuming is off. */
+    private MessageLog log;
+    /** Players who dropped and may still resume, by ID. */
+    private final Map<Integer, Departed> departed = new ConcurrentHashMap<>();
+
+    /** What a dropped player is taken back as, if they present {@code token} in time. */
+    private record Departed(PlayerInfo info, long token, long leftAt) {
+    }
+    /** The lowest spawn handle not yet handed to anyone; see {@link PieceHandles}. */
+    private final AtomicInteger nextHandle = new AtomicInteger(PieceHandles.FIRST_SPAWNED);
+    /** Unused ends of the grants of clients that have gone, granted again before any new handles. */
+    private final Queue<HandleRun> returnedHandles = new ConcurrentLinkedQueue<>();
+
+    /** A run of spawn handles, {@code first} up to but not including {@code first + count}. */
+    private record HandleRun(int first, int count) {
+    }
 
     private final double[][] playerColors = {
             {1.0, 0.2, 0.2}, {0.2, 1.0, 0.2}, {0.2, 0.5, 1.0}, {1.0, 1.0, 0.2},
@@ -51,7 +148,56 @@ public class GameServer {
      * @throws IOException if the server socket cannot be opened
      */
     public GameServer(int port, String hostName, double hostR, double hostG, double hostB) throws IOException {
-        this.serverSocket = new ServerSocket(port);
+        this(port, hostName, hostR, hostG, hostB, false);
+    }
+
+    /**
+     * Creates a new game server listening on the given port, in the chosen I/O mode.
+     *
+     * @param port        the TCP port to listen on, or 0 to bind a port allocated by the OS
+     * @param hostName    the display name for the host player
+     * @param hostR       the red component of the host player color
+     * @param hostG       the green component of the host player color
+     * @param hostB       the blue component of the host player color
+     * @param nonBlocking true to serve every connection from a few selector loops rather than a
+     *                    thread per client; see the class description
+     * @throws IOException if the server socket cannot be opened
+     */
+    public GameServer(int port, String hostName, double hostR, double hostG, double hostB,
+                      boolean nonBlocking) throws IOException {
+        if (nonBlocking) {
+            this.serverChannel = ServerSocketChannel.open();
+            this.serverChannel.bind(new InetSocketAddress(port));
+            this.serverChannel.configureBlocking(false);
+            this.serverSocket = null;
+            this.maxPlayerId = MAX_PLAYER_ID_NIO;
+        } else {
+            this.serverSocket = new ServerSocket(port);
+            this.serverChannel = null;
+            this.maxPlayerId = MAX_PLAYER_ID_BLOCKING;
+        }
+        this.sharedLoops = false;
+        this.hostPlayerId = 0;
+        players.add(new PlayerInfo(0, hostName, hostR, hostG, hostB));
+        this.running = true;
+    }
+
+    /**
+     * Creates one room of a {@link RoomServer}: a non-blocking server with no socket of its own,
+     * serving the connections {@link #adopt adopted} onto the room server's loops.
+     *
+     * @param hostName the display name for the host player
+     * @param hostR    the red component of the host player color
+     * @param hostG    the green component of the host player color
+     * @param hostB    the blue component of the host player color
+     * @param loops    the room server's loops
+     */
+    GameServer(String hostName, double hostR, double hostG, double hostB, NioLoop[] loops) {
+        this.serverSocket = null;
+        this.serverChannel = null;
+        this.maxPlayerId = MAX_PLAYER_ID_NIO;
+        this.loops = loops;
+        this.sharedLoops = true;
         this.hostPlayerId = 0;
         players.add(new PlayerInfo(0, hostName, hostR, hostG, hostB));
         this.running = true;
@@ -67,6 +213,127 @@ public class GameServer {
         this.isOperatorCheck = isOperatorCheck;
     }
 
+    /**
+     * Sets how far behind a client may fall before the server gives up on keeping it fully up to date.
+     * <p>
+     * Every client has its own outbound queue, so a slow one only ever holds up itself. Past
+     * {@code highWater} queued messages it is treated as lagging and stops being sent cursor
+     * moves — the next one supersedes them anyway — until it has drained to half that. A client
+     * that still reaches {@code hardLimit} is disconnected rather than left to grow its queue
+     * without bound; it can rejoin and resync.
+     *
+     * @param highWater queue depth at which cursor moves start being dropped
+     * @param hardLimit queue depth at which the client is disconnected; must exceed {@code highWater}
+     * @throws IllegalArgumentException if the limits are not positive and increasing
+     */
+    public void setOutboundLimits(int highWater, int hardLimit) {
+        if (highWater <= 0 || hardLimit <= highWater) {
+            throw new IllegalArgumentException("Need 0 < highWater < hardLimit, got " + highWater + ", " + hardLimit);
+        }
+        this.outboundHighWater = highWater;
+        this.outboundHardLimit = hardLimit;
+    }
+
+    /**
+     * Switches relaying of piece moves and rotations to a fixed tick. Call before {@link #start()}.
+     * <p>
+     * Normally each one is relayed the moment it arrives. In tick mode they are held, only the
+     * latest per piece is kept, and what is left goes out once per tick — so each player is sent
+     * at most one update per moving piece per tick, however many players are dragging. Every
+     * other message is still relayed at once, after whatever moves were held ahead of it; see
+     * {@link MoveCoalescer}.
+     * <p>
+     * Cursor moves are held the same way, and each tick's go out together as one
+     * {@link Msg.CursorFrame} for the whole table instead of one message per player.
+     *
+     * @param millis the tick length, or 0 to relay at once
+     */
+    public void setRelayTick(int millis) {
+        setRelayTick(millis, true);
+    }
+
+    /**
+     * Switches relaying of piece moves and rotations to a fixed tick, as {@link #setRelayTick(int)}
+     * does, optionally leaving the ticking to the caller. Call before {@link #start()}.
+     *
+     * @param millis     the tick length, or 0 to relay at once
+     * @param ownThread  false to start no thread for the tick; the caller then calls
+     *                   {@link #relayTick} every {@code millis} itself, from a thread of its own.
+     *                   Moves are queued for the tick by the threads that receive them, whichever
+     *                   thread ticks
+     */
+    public void setRelayTick(int millis, boolean ownThread) {
+        this.relayTickMs = ownThread ? millis : 0;
+        this.coalescer = millis > 0 ? new MoveCoalescer() : null;
+        this.cursors = millis > 0 ? new CursorTable() : null;
+    }
+
+    /**
+     * Keeps the given number of recent board-changing messages, so that a player whose connection
+     * drops can come back as the same player and be sent only what it missed. Call before
+     * {@link #start()}.
+     * <p>
+     * Every such message then goes out as a {@link Msg.Sequenced}, and every client is given a
+     * token in its {@link Msg.YourId} to {@link Msg.Resume} with; see {@link MessageLog}. A
+     * dropped player's ID is kept free for a couple of minutes for them to come back to.
+     *
+     * @param capacity how many messages to keep; a player who missed more is sent the board
+     */
+    public void setResumeLog(int capacity) {
+        this.log = new MessageLog(capacity);
+    }
+
+    /**
+     * Returns how many messages are queued for a player and not yet written to its socket.
+     *
+     * @param playerId the player
+     * @return the queue depth, or -1 if no such player is connected
+     */
+    public int getOutboundDepth(int playerId) {
+        for (var client : clients) {
+            if (client.playerId == playerId) return client.outboundDepth();
+        }
+        return -1;
+    }
+
+    /**
+     * Returns every connected player's outbound queue depth, as {@link #getOutboundDepth} would.
+     *
+     * @return player ID to queue depth
+     */
+    public Map<Integer, Integer> getOutboundDepths() {
+        Map<Integer, Integer> depths = new TreeMap<>();
+        for (var client : clients) depths.put(client.playerId, client.outboundDepth());
+        return depths;
+    }
+
+    /**
+     * Sets aside a run of spawn handles that no other caller will be given.
+     *
+     * <p>Clients get theirs through {@link Msg.HandleGrant}; the host, which shares this process,
+     * calls this directly.</p>
+     *
+     * @param count how many handles to take
+     * @return the first handle of the run, or -1 if the handle space is used up
+     */
+    public int allocateHandles(int count) {
+        while (true) {
+            int first = nextHandle.get();
+            if (first > PieceHandles.MAX_HANDLE - count) return -1;
+            if (nextHandle.compareAndSet(first, first + count)) return first;
+        }
+    }
+
+    /**
+     * Makes sure no handle below {@code bound} is ever allocated, because pieces already on the
+     * board — restored from a save, or spawned before the server existed — are using them.
+     *
+     * @param bound one past the highest handle in use
+     */
+    public void reserveHandlesBelow(int bound) {
+        nextHandle.accumulateAndGet(bound, Math::max);
+    }
+
     /**
      * Returns the player ID of the host (always 0).
      *
@@ -89,10 +356,11 @@ public class GameServer {
      * Returns the port the server is actually listening on. When the server was constructed with
      * port 0 this is the port the OS allocated, so it is the only reliable port to show or save.
      *
-     * @return the local port
+     * @return the local port, or -1 for a room of a {@link RoomServer}, which listens for it
      */
     public int getPort() {
-        return serverSocket.getLocalPort();
+        if (sharedLoops) return -1;
+        return serverSocket != null ? serverSocket.getLocalPort() : serverChannel.socket().getLocalPort();
     }
 
     /**
@@ -130,33 +398,30 @@ public class GameServer {
      * Starts the server's connection acceptance loop in a daemon thread and attempts to set up port forwarding.
      */
     public void start() {
+        if (sharedLoops) {
+            if (coalescer != null && relayTickMs > 0) startRelayTick();
+            return;
+        }
         // UPnP discovery blocks for seconds, so keep it off the caller's thread.
         Thread forwardThread = new Thread(() -> setupPortForwarding(true));
         forwardThread.setDaemon(true);
         forwardThread.start();
+        if (coalescer != null && relayTickMs > 0) startRelayTick();
+        if (serverChannel != null) {
+            startLoops();
+            return;
+        }
         Thread acceptThread = new Thread(() -> {
             while (running) {
                 try {
                     Socket socket = serverSocket.accept();
-                    int playerId = assignPlayerId();
-                    if (playerId < 0) {
+                    PlayerInfo info = newPlayer();
+                    if (info == null) {
                         socket.close();
                         continue;
                     }
-                    var color = playerColors[playerId % playerColors.length];
-                    var info = new PlayerInfo(playerId, "Player" + playerId,
-                            color[0], color[1], color[2]);
-                    players.add(info);
-                    var handler = new ClientHandler(socket, playerId, info);
-                    // start() opens the stream and sends the handshake; publishing the handler to
-                    // `clients` only afterwards keeps other threads from broadcasting into a null
-                    // stream, and keeps the new client off the PlayerList broadcast it just got.
-                    handler.start();
-                    clients.add(handler);
-
-                    broadcast(NetworkMessage.of(new Msg.PlayerList(new ArrayList<>(players))), playerId);
-
-                    System.out.println("Player " + playerId + " connected");
+                    var handler = new StreamClientHandler(socket, info.id(), info);
+                    if (handler.start()) admit(handler);
                 } catch (IOException e) {
                     if (running) System.err.println("Accept error: " + e.getMessage());
                 }
@@ -166,26 +431,236 @@ public class GameServer {
         acceptThread.start();
     }
 
+    /** Starts the thread that sends the moves {@link #coalescer} and {@link #cursors} have held, once per tick. */
+    private void startRelayTick() {
+        Thread tickThread = new Thread(() -> {
+            while (running) {
+                try {
+                    Thread.sleep(relayTickMs);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                relayTick();
+            }
+        }, "tarotboard-relay-tick");
+        tickThread.setDaemon(true);
+        tickThread.start();
+    }
+
+    /**
+     * Sends the moves and cursors held since the last tick. Called by the server's own tick
+     * thread, or, after {@link #setRelayTick(int, boolean) setRelayTick(millis, false)}, by the
+     * caller once per tick. Does nothing when moves are relayed at once.
+     */
+    public void relayTick() {
+        MoveCoalescer c = coalescer;
+        CursorTable table = cursors;
+        if (c == null || !running) return;
+        synchronized (c) {
+            if (!c.isEmpty()) relay(c.drain());
+        }
+        // Delivered outside the lock, which disconnect() takes. A frame landing after the
+        // PlayerLeave of someone in it is harmless: clients skip cursors of players they no
+        // longer have.
+        Msg.CursorFrame frame;
+        synchronized (table) {
+            frame = table.take();
+        }
+        if (frame != null) deliver(EncodedMessage.of(NetworkMessage.of(frame)), -1);
+    }
+
+    /** Opens the selector loops of a non-blocking server; the first also accepts connections. */
+    private void startLoops() {
+        try {
+            loops = new NioLoop[NIO_LOOPS];
+            for (int i = 0; i < loops.length; i++) loops[i] = new NioLoop("tarotboard-nio-" + i);
+            loops[0].listen(serverChannel, loops, this::accepted);
+        } catch (IOException e) {
+            System.err.println("Could not start the network loops: " + e.getMessage());
+            return;
+        }
+        for (NioLoop loop : loops) loop.thread.start();
+    }
+
+    /** Takes on a connection the first loop accepted, on the loop it was dealt to. */
+    private void accepted(SocketChannel channel, NioLoop target) throws IOException {
+        PlayerInfo info = newPlayer();
+        if (info == null) {
+            channel.close();
+            return;
+        }
+        var handler = new NioClientHandler(channel, target, info);
+        target.execute(handler::register);
+    }
+
+    /**
+     * Takes on a connection a {@link RoomServer} accepted and read the start of, to find which
+     * room it is for. Called on the loop the channel is registered with, which goes on serving it.
+     *
+     * @param channel     the connection, non-blocking
+     * @param loop        the loop serving it
+     * @param alreadyRead a buffer from {@link #READ_BUFFERS} in write mode, holding what has been
+     *                    read so far, greeting and all; this server owns it unless it has stopped
+     * @return false, leaving the channel and buffer untouched, if this server has stopped
+     */
+    boolean adopt(SocketChannel channel, NioLoop loop, ByteBuffer alreadyRead) throws IOException {
+        PlayerInfo info;
+        // Under the lock closeIfIdle() takes, so a room never hibernates on a player joining it.
+        synchronized (this) {
+            if (!running) return false;
+            info = newPlayer();
+            if (info != null) pendingJoins++;
+        }
+        if (info == null) {
+            READ_BUFFERS.release(alreadyRead);
+            channel.close();
+            return true;
+        }
+        var handler = new NioClientHandler(channel, loop, info);
+        handler.pendingJoin = true;
+        try {
+            handler.register();
+        } catch (IOException e) {
+            joinSettled(handler);
+            throw e;
+        }
+        handler.in = alreadyRead;
+        handler.readBuffered();
+        return true;
+    }
+
+    /** Returns how many players are connected, the host aside. */
+    int playerCount() {
+        return clients.size();
+    }
+
+    /**
+     * Stops taking connections, unless a player is connected or still joining; for a room about
+     * to hibernate, which must then {@link #stop} this. Checked under the lock {@link #adopt}
+     * and {@link #admit} take, so no one can join between the check and the stop.
+     *
+     * @return whether this server has stopped taking connections
+     */
+    synchronized boolean closeIfIdle() {
+        if (!clients.isEmpty() || pendingJoins > 0) return false;
+        running = false;
+        return true;
+    }
+
+    /** Stops counting a connection as joining, once its handshake has finished or failed. */
+    private synchronized void joinSettled(ClientHandler handler) {
+        if (!handler.pendingJoin) return;
+        handler.pendingJoin = false;
+        pendingJoins--;
+    }
+
+    /**
+     * Takes a player ID for a new connection and lists the player under a default name.
+     *
+     * @return the new player, or null if the server is full
+     */
+    private PlayerInfo newPlayer() {
+        int playerId = assignPlayerId();
+        if (playerId < 0) return null;
+        var color = playerColors[playerId % playerColors.length];
+        var info = new PlayerInfo(playerId, "Player" + playerId, color[0], color[1], color[2]);
+        players.add(info);
+        return info;
+    }
+
+    /**
+     * Publishes a client whose handshake has finished, so broadcasts start reaching it.
+     * <p>
+     * The handshake has already sent the client its ID and the player list. Publishing it to
+     * {@code clients} only afterwards keeps other threads from broadcasting to it before its
+     * stream exists, and keeps it off the PlayerList broadcast it has just been sent.
+     */
+    private void admit(ClientHandler handler) {
+        // Checked under the lock stop() takes, so a client can never be added after stop() has
+        // closed the rest; a room of a RoomServer can stop while a connection is joining it.
+        synchronized (this) {
+            joinSettled(handler);
+            if (!running) {
+                handler.close();
+                return;
+            }
+            clients.add(handler);
+        }
+        broadcast(NetworkMessage.of(new Msg.PlayerList(new ArrayList<>(players))), handler.playerId);
+        System.out.println("Player " + handler.playerId + " connected");
+    }
+
     /**
      * Assigns a unique player ID to a new client.
      *
      * @return A unique player ID, or -1 if no ID could be assigned.
      */
     private synchronized int assignPlayerId() {
-        for (int i = 1; i < 100; i++) {
-            int id = i;
-            if (players.stream().noneMatch(p -> p.id() == id)) return id;
+        Set<Integer> taken = new HashSet<>();
+        for (PlayerInfo p : players) taken.add(p.id());
+        // Held for whoever dropped recently, in case they come back.
+        departed.values().removeIf(d -> System.currentTimeMillis() - d.leftAt() > RESUME_GRACE_MS);
+        taken.addAll(departed.keySet());
+        for (int id = 1; id <= maxPlayerId; id++) {
+            if (!taken.contains(id)) return id;
         }
         return -1;
     }
 
     /**
      * Broadcasts a message to all connected clients except the one with the given ID.
+     * <p>
+     * This only queues the message for each client, so it takes as long for a table with a
+     * player on a bad link as for one without. The message is encoded once, however many
+     * clients it goes to; see {@link EncodedMessage}.
      *
      * @param msg       the message to broadcast
      * @param excludeId the player ID to exclude, or -1 to broadcast to everyone
      */
     public void broadcast(NetworkMessage msg, int excludeId) {
+        broadcast(EncodedMessage.of(msg), excludeId);
+    }
+
+    /**
+     * As {@link #broadcast(NetworkMessage, int)}, for a message the caller keeps around to send
+     * again — to each player who joins later, say — so that it is only ever encoded once.
+     *
+     * @param msg       the message to broadcast
+     * @param excludeId the player ID to exclude, or -1 to broadcast to everyone
+     */
+    public void broadcast(EncodedMessage msg, int excludeId) {
+        MoveCoalescer c = coalescer;
+        if (c == null) {
+            deliver(msg, excludeId);
+            return;
+        }
+        // Cursors say nothing about pieces, so they go into the next frame without flushing any moves.
+        if (msg.message().data() instanceof Msg.CursorMove m) {
+            synchronized (cursors) {
+                cursors.put(m.playerId(), m.x(), m.y());
+            }
+            return;
+        }
+        synchronized (c) {
+            if (c.offer(msg.message().data(), excludeId)) return;
+            relay(c.barrier());
+            deliver(msg, excludeId);
+        }
+    }
+
+    private void deliver(EncodedMessage msg, int excludeId) {
+        MessageLog l = log;
+        if (l != null && MessageLog.logs(msg.message().data())) {
+            // Numbered and sent under one lock, so every client gets the numbers in order.
+            synchronized (l) {
+                sendAll(l.append(msg, excludeId), excludeId);
+            }
+            return;
+        }
+        sendAll(msg, excludeId);
+    }
+
+    private void sendAll(EncodedMessage msg, int excludeId) {
         for (var client : clients) {
             if (client.playerId != excludeId) {
                 client.send(msg);
@@ -193,6 +668,11 @@ public class GameServer {
         }
     }
 
+    /** Sends what the {@link #coalescer} let go of; callers hold its lock so nothing overtakes it. */
+    private void relay(List<MoveCoalescer.Relay> relays) {
+        for (var r : relays) deliver(EncodedMessage.of(r.message()), r.excludeId());
+    }
+
     /**
      * Broadcasts a message to all connected clients.
      *
@@ -202,6 +682,15 @@ public class GameServer {
         broadcast(msg, -1);
     }
 
+    /**
+     * As {@link #broadcastToAll(NetworkMessage)}, for a message already wrapped for sending.
+     *
+     * @param msg the message to broadcast
+     */
+    public void broadcastToAll(EncodedMessage msg) {
+        broadcast(msg, -1);
+    }
+
     /**
      * Sends a message to a specific player.
      *
@@ -209,6 +698,85 @@ public class GameServer {
      * @param msg      the message to send
      */
     public void sendTo(int playerId, NetworkMessage msg) {
+        sendTo(playerId, EncodedMessage.of(msg));
+    }
+
+    /**
+     * As {@link #sendTo(int, NetworkMessage)}, for a message already wrapped for sending.
+     *
+     * @param playerId the target player ID
+     * @param msg      the message to send
+     */
+    public void sendTo(int playerId, EncodedMessage msg) {
+        MoveCoalescer c = coalescer;
+        if (c != null) {
+            synchronized (c) {
+                relay(c.barrier());
+                sendNow(playerId, msg);
+            }
+        } else {
+            sendNow(playerId, msg);
+        }
+    }
+
+    /**
+     * Sends a player a run of messages a few at a time, in between whatever else they are sent.
+     * <p>
+     * {@link #sendTo} queues a message behind everything already queued, so sending a big run
+     * that way puts every live message after all of it. Here the next one is only queued once
+     * the player's queue has all but drained, so a live move waits behind one message of the
+     * run at most. Order within the run is kept.
+     * <p>
+     * A player has one paced run at a time; a new one replaces what is left of the last, and a
+     * player who disconnects is sent nothing more of theirs.
+     *
+     * @param playerId the target player ID
+     * @param msgs     the messages, in the order to send them
+     */
+    public void sendPaced(int playerId, List<EncodedMessage> msgs) {
+        synchronized (paced) {
+            paced.put(playerId, new ArrayDeque<>(msgs));
+            if (pacer == null) {
+                pacer = new Thread(this::paceLoop, "tarotboard-sync");
+                pacer.setDaemon(true);
+                pacer.start();
+            }
+            paceStep();
+            paced.notifyAll();
+        }
+    }
+
+    private void paceLoop() {
+        try {
+            while (running) {
+                synchronized (paced) {
+                    while (running && paced.isEmpty()) paced.wait();
+                    paceStep();
+                }
+                Thread.sleep(PACE_POLL_MS);
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /**
+     * Queues the next messages of every paced run whose player has room for them. Sent under the
+     * {@link #paced} lock, so a run that replaces another can never be overtaken by the tail of
+     * the one it replaced.
+     */
+    private void paceStep() {
+        var it = paced.entrySet().iterator();
+        while (it.hasNext()) {
+            var e = it.next();
+            int depth;
+            while (!e.getValue().isEmpty() && (depth = getOutboundDepth(e.getKey())) >= 0 && depth <= PACED_DEPTH) {
+                sendTo(e.getKey(), e.getValue().poll());
+            }
+            if (e.getValue().isEmpty() || getOutboundDepth(e.getKey()) < 0) it.remove();
+        }
+    }
+
+    private void sendNow(int playerId, EncodedMessage msg) {
         for (var client : clients) {
             if (client.playerId == playerId) {
                 client.send(msg);
@@ -221,14 +789,24 @@ public class GameServer {
      * Stops the server, closes all client connections, removes port forwarding, and closes the server socket.
      */
     public void stop() {
-        running = false;
+        synchronized (this) {
+            running = false;
+        }
+        synchronized (paced) {
+            paced.clear();
+            paced.notifyAll();
+        }
         setupPortForwarding(false);
         for (var client : clients) client.close();
         clients.clear();
         try {
-            serverSocket.close();
+            if (serverSocket != null) serverSocket.close();
+            if (serverChannel != null) serverChannel.close();
         } catch (IOException ignored) {
         }
+        if (loops != null && !sharedLoops) {
+            for (NioLoop loop : loops) loop.stop();
+        }
     }
 
     /**
@@ -293,84 +871,173 @@ public class GameServer {
 
     /**
      * Handles communication with a single client connected to the server.
+     * <p>
+     * What a client's messages mean is the same whichever way its bytes arrive; the subclasses
+     * only differ in how they get a message off the socket and another one onto it. Either way
+     * {@link #send} never waits on the client's socket: messages go onto a queue of its own, and
+     * the {@link #setOutboundLimits outbound limits} decide what happens when that backs up.
      */
-    private class ClientHandler {
-        private final Socket socket;
-        private final int playerId;
-        private PlayerInfo info;
-        private ObjectOutputStream out;
-        private ObjectInputStream in;
-        private volatile boolean active = true;
-        /** Guards {@link #out}: any thread may broadcast to this client, and ObjectOutputStream is not thread-safe. */
-        private final Object writeLock = new Object();
+    private abstract class ClientHandler {
+        /** Changes only when the client {@link #resume resumes} as the player it was before. */
+        volatile int playerId;
+        volatile PlayerInfo info;
+        /** What this client must present to {@link Msg.Resume resume} as this player. */
+        volatile long token = RESUME_TOKENS.nextLong();
+        volatile boolean active = true;
+        /** Whether the queue has passed the high-water mark and not yet drained back below half of it. */
+        private volatile boolean lagging;
+        /** Set once the client is dropped mid-send; its own thread then {@link #disconnect disconnects} it. */
+        volatile boolean evicted;
+        /** Whether this connection is counted in {@link #pendingJoins}. Guarded by the server. */
+        boolean pendingJoin;
+        /** The handles this client was last granted, or null. Guarded by {@link #grantLock}. */
+        private HandleRun grant;
+        /** How far into {@link #grant} the client has spawned. Guarded by {@link #grantLock}. */
+        private int grantUsed;
+        private final Object grantLock = new Object();
 
         /**
          * Constructs a new ClientHandler.
          *
-         * @param socket   The client's socket.
          * @param playerId The ID assigned to this client.
          * @param info     PlayerInfo object for this client.
          */
-        ClientHandler(Socket socket, int playerId, PlayerInfo info) {
-            this.socket = socket;
+        ClientHandler(int playerId, PlayerInfo info) {
             this.playerId = playerId;
             this.info = info;
         }
 
         /**
-         * Starts the client handler, setting up input/output streams and a message reading thread.
+         * Sends a NetworkMessage to this client.
+         *
+         * @param msg The message to send.
          */
-        void start() {
-            try {
-                synchronized (writeLock) {
-                    out = new ObjectOutputStream(socket.getOutputStream());
-                    out.flush();
-                }
-                in = new ObjectInputStream(socket.getInputStream());
+        void send(NetworkMessage msg) {
+            send(EncodedMessage.of(msg));
+        }
 
-                send(NetworkMessage.of(new Msg.YourId(playerId)));
-                send(NetworkMessage.of(new Msg.PlayerList(new ArrayList<>(players))));
+        /**
+         * Queues a message for this client, sharing its encoding with every other client it goes to.
+         *
+         * @param msg The message to send.
+         */
+        abstract void send(EncodedMessage msg);
 
-                Thread readThread = new Thread(() -> {
-                    while (active) {
-                        try {
-                            var msg = (NetworkMessage) in.readObject();
-                            handleMessage(msg);
-                        } catch (EOFException | SocketException e) {
-                            break;
-                        } catch (Exception e) {
-                            if (active)
-                                System.err.println("Read error from player " + playerId + ": " + e.getMessage());
-                            break;
-                        }
-                    }
-                    disconnect();
-                });
-                readThread.setDaemon(true);
-                readThread.start();
+        /**
+         * Closes the client's connection.
+         */
+        abstract void close();
 
-            } catch (IOException e) {
-                System.err.println("Failed to setup handler for player " + playerId + ": " + e.getMessage());
-                disconnect();
+        /** Returns how many messages are queued for this client and not yet written. */
+        abstract int outboundDepth();
+
+        /**
+         * Drops a client from inside a send: marks it dead and closes its connection, leaving
+         * {@link #disconnect} to the client's own reader or loop thread. A send can run under the
+         * coalescer, log or cursor-table lock, and disconnect() broadcasts, which takes them in
+         * its own order.
+         */
+        void evict() {
+            evicted = true;
+            abort();
+        }
+
+        /** Closes the connection for {@link #evict}, so that the client's own thread disconnects it. */
+        abstract void abort();
+
+        /**
+         * Applies the outbound limits to a message about to be queued for this client.
+         *
+         * @param msg the message
+         * @return whether to queue it; false if it is dropped, or the client is being disconnected
+         */
+        boolean admitOutbound(EncodedMessage msg) {
+            if (evicted) return false;
+            int depth = outboundDepth();
+            if (depth >= outboundHardLimit) {
+                System.err.println("Player " + playerId + " is " + depth + " messages behind; disconnecting");
+                evict();
+                return false;
+            }
+            if (depth >= outboundHighWater) {
+                lagging = true;
+            } else if (depth < outboundHighWater / 2) {
+                lagging = false;
+            }
+            if (!lagging) return true;
+            Msg data = msg.message().data();
+            return !(data instanceof Msg.CursorMove || data instanceof Msg.CursorFrame);
+        }
+
+        /** Sends what every client is told the moment its handshake completes. */
+        void welcome() {
+            MessageLog l = log;
+            long seq = 0;
+            if (l != null) {
+                synchronized (l) {
+                    seq = l.lastSeq();
+                }
             }
+            send(NetworkMessage.of(new Msg.YourId(playerId, l != null ? token : 0, seq)));
+            send(NetworkMessage.of(new Msg.PlayerList(new ArrayList<>(players))));
+            grantHandles();
         }
 
         /**
-         * Sends a NetworkMessage to this client.
+         * Sends this client its next block of spawn handles, or nothing once the handle space is spent.
+         * <p>
+         * A client asks again only when it is down to {@link PieceHandles#GRANT_LOW_WATER} of its
+         * last block, so a request while it has spawned less than that much is ignored; otherwise
+         * a client could drain the handle space by asking, without spawning anything.
+         */
+        void grantHandles() {
+            HandleRun run;
+            synchronized (grantLock) {
+                if (!active) return;
+                if (grant != null && grant.count() - grantUsed > PieceHandles.GRANT_LOW_WATER) return;
+                run = returnedHandles.poll();
+                if (run == null) {
+                    int first = allocateHandles(PieceHandles.GRANT_SIZE);
+                    if (first < 0) {
+                        System.err.println("Out of piece handles; player " + playerId + " can no longer spawn pieces");
+                        return;
+                    }
+                    run = new HandleRun(first, PieceHandles.GRANT_SIZE);
+                }
+                grant = run;
+                grantUsed = 0;
+            }
+            send(NetworkMessage.of(new Msg.HandleGrant(run.first(), run.count())));
+        }
+
+        /**
+         * Notes that this client spawned a piece as {@code handle}.
          *
-         * @param msg The message to send.
+         * @return false if the client has disconnected, and what was left of its grant may
+         *         already be someone else's
          */
-        void send(NetworkMessage msg) {
-            try {
-                synchronized (writeLock) {
-                    out.writeObject(msg);
-                    // Without this the stream's back-reference table pins every message ever sent.
-                    out.reset();
-                    out.flush();
+        boolean spawned(int handle) {
+            synchronized (grantLock) {
+                if (!active) return false;
+                if (grant != null && handle >= grant.first() && handle - grant.first() < grant.count()) {
+                    grantUsed = Math.max(grantUsed, handle - grant.first() + 1);
                 }
-            } catch (Exception e) {
-                if (active) System.err.println("Send error to player " + playerId + ": " + e.getMessage());
-                disconnect();
+                return true;
+            }
+        }
+
+        /**
+         * Hands what this client left of its grant to the next client to need handles. A client
+         * never spawns from a grant once a newer one arrives, resumed or not, so once this
+         * connection is gone its grant is finished with; ends too short to be worth a grant are
+         * let go.
+         */
+        private void returnGrant() {
+            synchronized (grantLock) {
+                if (grant != null && grant.count() - grantUsed >= PieceHandles.GRANT_SIZE / 2) {
+                    returnedHandles.add(new HandleRun(grant.first() + grantUsed, grant.count() - grantUsed));
+                }
+                grant = null;
             }
         }
 
@@ -379,7 +1046,7 @@ public class GameServer {
          *
          * @param msg The incoming NetworkMessage.
          */
-        private void handleMessage(NetworkMessage msg) {
+        void handleMessage(NetworkMessage msg) {
             switch (msg.data()) {
                 case Msg.PlayerJoin join -> {
                     PlayerInfo updated = new PlayerInfo(playerId, join.name(), join.r(), join.g(), join.b());
@@ -395,9 +1062,17 @@ public class GameServer {
                         broadcast(NetworkMessage.of(new Msg.CursorMove(playerId, c.x(), c.y())), playerId);
                 case Msg.CursorImage c ->
                         broadcast(NetworkMessage.of(new Msg.CursorImage(playerId, c.imageData())), playerId);
-                case Msg.SendState ignored -> {
+                case Msg.SendState s -> {
+                    if (onMessage != null) {
+                        onMessage.accept(NetworkMessage.of(new Msg.SendState(playerId,
+                                s.viewX(), s.viewY(), s.viewWidth(), s.viewHeight())));
+                    }
+                    return;
+                }
+                case Msg.SendDiff s -> {
                     if (onMessage != null) {
-                        onMessage.accept(NetworkMessage.of(new Msg.SendState(playerId)));
+                        onMessage.accept(NetworkMessage.of(new Msg.SendDiff(playerId, s.viewX(), s.viewY(),
+                                s.viewWidth(), s.viewHeight(), s.root(), s.cardRanges(), s.chips(), s.dice())));
                     }
                     return;
                 }
@@ -408,6 +1083,37 @@ public class GameServer {
                     }
                     return;
                 }
+                case Msg.HandleRequest ignored -> {
+                    grantHandles();
+                    return;
+                }
+                case Msg.SpawnChip s -> {
+                    if (!spawned(s.piece())) return;
+                    broadcast(msg, playerId);
+                }
+                case Msg.SpawnDie s -> {
+                    if (!spawned(s.piece())) return;
+                    broadcast(msg, playerId);
+                }
+                case Msg.Resume r -> {
+                    resume(r);
+                    return;
+                }
+                case Msg.Sequenced ignored -> {
+                    // Only the server numbers messages.
+                    return;
+                }
+                case Msg.ResumeResult ignored -> {
+                    return;
+                }
+                case Msg.HandleGrant ignored -> {
+                    // Only the server grants handles; one arriving from a client is dropped.
+                    return;
+                }
+                case Msg.CursorFrame ignored -> {
+                    // Only the server builds cursor frames; clients send CursorMove.
+                    return;
+                }
                 case Msg.RequestOperator ignored -> {
                     if (onMessage != null) {
                         onMessage.accept(msg);
@@ -449,14 +1155,82 @@ public class GameServer {
             }
         }
 
+        /**
+         * Makes this connection the player it was before its last one dropped, and sends it what
+         * it missed since; or, if that cannot be done, tells it to carry on as the new player it
+         * was welcomed as.
+         * <p>
+         * The old connection may not have been noticed to be dead yet, as after a Wi-Fi blip,
+         * so a live one presenting the same token is dropped in favour of this one. The answer
+         * goes ahead of the missed messages, all under the locks every relayed message is sent
+         * under, so nothing live can come between them; the client ignores numbered messages
+         * until it has the answer, since every one it was sent before is among those replayed.
+         */
+        private void resume(Msg.Resume r) {
+            MessageLog l = log;
+            if (l == null || r.playerId() == playerId) {
+                send(NetworkMessage.of(new Msg.ResumeResult(false)));
+                return;
+            }
+            MoveCoalescer c = coalescer;
+            Object first = c != null ? c : l;
+            int provisional = playerId;
+            int replayed = -1;
+            synchronized (first) {
+                synchronized (l) {
+                    for (var client : clients) {
+                        if (client.playerId == r.playerId() && client.token == r.resumeToken()) client.disconnect();
+                    }
+                    Departed d = departed.get(r.playerId());
+                    List<EncodedMessage> missed = d == null || d.token() != r.resumeToken()
+                            || System.currentTimeMillis() - d.leftAt() > RESUME_GRACE_MS
+                            ? null : l.since(r.lastSeq(), r.playerId());
+                    // Past this it is as quick to send the board, and the replay would trip the outbound limit.
+                    if (missed != null && missed.size() <= outboundHardLimit / 2) {
+                        departed.remove(r.playerId());
+                        players.remove(info);
+                        playerId = r.playerId();
+                        info = d.info();
+                        token = d.token();
+                        players.add(info);
+                        send(NetworkMessage.of(new Msg.YourId(playerId, token, r.lastSeq())));
+                        send(NetworkMessage.of(new Msg.ResumeResult(true)));
+                        for (var m : missed) send(m);
+                        replayed = missed.size();
+                    } else {
+                        send(NetworkMessage.of(new Msg.ResumeResult(false)));
+                    }
+                }
+            }
+            if (replayed < 0) {
+                System.out.println("Player " + provisional + " could not resume as player " + r.playerId());
+                return;
+            }
+            var listMsg = NetworkMessage.of(new Msg.PlayerList(new ArrayList<>(players)));
+            broadcast(listMsg, -1);
+            if (onMessage != null) onMessage.accept(listMsg);
+            System.out.println("Player " + playerId + " resumed; " + replayed + " messages replayed");
+        }
+
         /**
          * Disconnects the client, removes it from the server's active lists, and notifies other players.
          */
         void disconnect() {
-            if (!active) return;
-            active = false;
+            synchronized (grantLock) {
+                if (!active) return;
+                active = false;
+            }
+            returnGrant();
+            joinSettled(this);
             clients.remove(this);
             players.remove(info);
+            if (log != null) departed.put(playerId, new Departed(info, token, System.currentTimeMillis()));
+            CursorTable table = cursors;
+            if (table != null) {
+                synchronized (table) {
+                    table.remove(playerId);
+                }
+            }
             broadcast(NetworkMessage.of(new Msg.PlayerLeave(playerId)), -1);
             var listMsg = NetworkMessage.of(new Msg.PlayerList(new ArrayList<>(players)));
             broadcast(listMsg, -1);
@@ -464,16 +1238,492 @@ public class GameServer {
             System.out.println("Player " + playerId + " disconnected");
             close();
         }
+    }
+
+    /**
+     * A client served the blocking way: a {@link MessageStream}, a reader thread, and a writer
+     * thread that is the only one ever to write to the stream, so a socket that stops draining
+     * blocks nobody else.
+     */
+    private class StreamClientHandler extends ClientHandler {
+        private final Socket socket;
+        private MessageStream stream;
+        /** Messages waiting for the writer thread. Guarded by itself. */
+        private final ArrayDeque<EncodedMessage> outbound = new ArrayDeque<>();
+
+        StreamClientHandler(Socket socket, int playerId, PlayerInfo info) {
+            super(playerId, info);
+            this.socket = socket;
+        }
 
         /**
-         * Closes the client's socket connection.
+         * Reads the client's greeting, welcomes it, and starts its reader thread.
+         *
+         * @return whether the client is ready to be {@link #admit admitted}; if not it has been
+         * disconnected
          */
+        boolean start() {
+            try {
+                stream = MessageStream.accept(socket);
+
+                Thread writeThread = new Thread(this::writeLoop, "tarotboard-writer-" + playerId);
+                writeThread.setDaemon(true);
+                writeThread.start();
+
+                welcome();
+
+                Thread readThread = new Thread(() -> {
+                    while (active) {
+                        try {
+                            var msg = stream.read();
+                            handleMessage(msg);
+                        } catch (EOFException | SocketException e) {
+                            break;
+                        } catch (Exception e) {
+                            if (active)
+                                System.err.println("Read error from player " + playerId + ": " + e.getMessage());
+                            break;
+                        }
+                    }
+                    disconnect();
+                });
+                readThread.setDaemon(true);
+                readThread.start();
+                return active;
+            } catch (IOException e) {
+                System.err.println("Failed to setup handler for player " + playerId + ": " + e.getMessage());
+                disconnect();
+                return false;
+            }
+        }
+
+        /** Writes queued messages out until the client goes away. */
+        private void writeLoop() {
+            while (true) {
+                EncodedMessage msg;
+                synchronized (outbound) {
+                    try {
+                        while (active && outbound.isEmpty()) outbound.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (!active) return;
+                    msg = outbound.poll();
+                }
+                try {
+                    stream.write(msg);
+                } catch (Exception e) {
+                    if (active && !evicted) System.err.println("Send error to player " + playerId + ": " + e.getMessage());
+                    disconnect();
+                    return;
+                }
+            }
+        }
+
+        @Override
+        void send(EncodedMessage msg) {
+            if (!active || !admitOutbound(msg)) return;
+            synchronized (outbound) {
+                outbound.add(msg);
+                outbound.notify();
+            }
+        }
+
+        @Override
+        int outboundDepth() {
+            synchronized (outbound) {
+                return outbound.size();
+            }
+        }
+
+        /** Closes the socket, which ends the reader, and the reader disconnects. */
+        @Override
+        void abort() {
+            synchronized (outbound) {
+                outbound.clear();
+            }
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        @Override
         void close() {
             active = false;
+            synchronized (outbound) {
+                outbound.clear();
+                outbound.notify();
+            }
             try {
                 socket.close();
             } catch (IOException ignored) {
             }
         }
     }
+
+    /**
+     * A client served by a {@link NioLoop}. Everything but {@link #send} runs on that loop's thread.
+     * <p>
+     * Reads go into a buffer borrowed from {@link #READ_BUFFERS} and decode straight out of it;
+     * the buffer goes back as soon as no partial frame is left in it. A frame too long for one
+     * gets an array of its own exactly its size. Writes go straight to the socket while it keeps
+     * up, and queue — with the loop told to finish them when the socket drains — once it does not.
+     */
+    private final class NioClientHandler extends ClientHandler implements NioLoop.Client {
+        private final SocketChannel channel;
+        private final NioLoop loop;
+        private SelectionKey key;
+        private long handshakeDeadline;
+        private boolean handshakeDone;
+        /** Whether the client's greeting said it accepts compressed frames. */
+        private volatile boolean compress;
+        /** Bytes read but not yet decoded, or null while there are none. */
+        private ByteBuffer in;
+        /**
+         * The frame being read whole because it was too long for {@link #in}, or null. Made room
+         * for as its bytes arrive, doubling up to {@link #bigFrameLength}, so a length prefix
+         * alone pins no more than {@link #BIG_FRAME_FIRST_BYTES}.
+         */
+        private ByteBuffer bigFrame;
+        private int bigFrameLength;
+        /** Frames waiting for the socket to accept them. Guarded by {@link #writeLock}. */
+        private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+        /** Whether the loop is watching for the socket to drain. Guarded by {@link #writeLock}. */
+        private boolean writeInterest;
+        private final Object writeLock = new Object();
+
+        NioClientHandler(SocketChannel channel, NioLoop loop, PlayerInfo info) {
+            super(info.id(), info);
+            this.channel = channel;
+            this.loop = loop;
+        }
+
+        /**
+         * Joins the loop's selector, or takes over the channel's key if it has already joined,
+         * and starts the handshake clock. Called on the loop thread.
+         */
+        void register() throws IOException {
+            key = channel.register(loop.selector, SelectionKey.OP_READ, this);
+            handshakeDeadline = System.currentTimeMillis() + MessageStream.HANDSHAKE_TIMEOUT_MS;
+            loop.handshaking.add(this);
+        }
+
+        @Override
+        public void ready() {
+            try {
+                if (key.isReadable()) read();
+                if (active && key.isValid() && key.isWritable()) flush();
+            } catch (Exception e) {
+                failed(e);
+            }
+        }
+
+        /** Decodes what {@link #in} already holds, as if it had just been read. */
+        void readBuffered() {
+            try {
+                consume();
+            } catch (Exception e) {
+                failed(e);
+            }
+        }
+
+        private void failed(Exception e) {
+            boolean dropped = e instanceof EOFException || e instanceof SocketException || e instanceof CancelledKeyException;
+            if (!dropped && active) System.err.println("Read error from player " + playerId + ": " + e.getMessage());
+            disconnect();
+        }
+
+        @Override
+        public boolean awaitingGreeting(long now) {
+            if (handshakeDone || !active) return false;
+            if (now <= handshakeDeadline) return true;
+            System.err.println("Failed to setup handler for player " + playerId + ": handshake timed out");
+            disconnect();
+            return false;
+        }
+
+        private void read() throws IOException {
+            if (bigFrame != null) {
+                if (!bigFrame.hasRemaining()) {
+                    bigFrame = ByteBuffer.allocate((int) Math.min(bigFrameLength, bigFrame.capacity() * 2L))
+                            .put(bigFrame.flip());
+                }
+                if (channel.read(bigFrame) < 0) throw new EOFException();
+                if (bigFrame.position() < bigFrameLength) return;
+                ByteBuffer frame = bigFrame;
+                bigFrame = null;
+                handleMessage(WireCodec.decode(frame.array(), 0, bigFrameLength));
+                return;
+            }
+            if (in == null) in = READ_BUFFERS.acquire();
+            int n = channel.read(in);
+            if (n < 0) throw new EOFException();
+            consume();
+        }
+
+        /** Handles what {@link #in} holds, in write mode, and gives it back once it is all used. */
+        private void consume() throws IOException {
+            in.flip();
+            if (!handshakeDone) handshake();
+            if (handshakeDone) decodeFrames();
+            in.compact();
+            if (in.position() == 0) {
+                READ_BUFFERS.release(in);
+                in = null;
+            }
+        }
+
+        /** Reads the client's greeting out of {@link #in}, once enough of it has arrived. */
+        private void handshake() throws IOException {
+            if (in.remaining() < 2) return;
+            if (MessageStream.isStreamHeader(in.get(in.position()), in.get(in.position() + 1))) {
+                throw MessageStream.outdated("The client");
+            }
+            int length = MessageStream.greetingLength(in);
+            if (length < 0) return;
+            // Any room it names was for a RoomServer, which has already chosen this one.
+            byte[] hello = new byte[length];
+            in.get(hello);
+            compress = MessageStream.checkHello(hello);
+            handshakeDone = true;
+            write(ByteBuffer.wrap(MessageStream.hello()));
+            welcome();
+            if (active) admit(this);
+        }
+
+        /** Decodes and handles every whole frame in {@link #in}, leaving any partial one unread. */
+        private void decodeFrames() throws IOException {
+            while (active && in.hasRemaining()) {
+                int start = in.position();
+                int length = 0;
+                boolean complete = false;
+                for (int shift = 0; in.hasRemaining(); shift += 7) {
+                    if (shift >= 35) throw new StreamCorruptedException("Malformed frame length");
+                    int b = in.get() & 0xFF;
+                    length |= (b & 0x7F) << shift;
+                    if ((b & 0x80) == 0) {
+                        complete = true;
+                        break;
+                    }
+                }
+                if (!complete) {
+                    in.position(start);
+                    return;
+                }
+                if (length <= 0 || length > WireCodec.MAX_FRAME_BYTES) {
+                    throw new StreamCorruptedException("Bad frame length " + length);
+                }
+                if (in.remaining() >= length) {
+                    NetworkMessage msg = WireCodec.decode(in.array(), in.arrayOffset() + in.position(), length);
+                    in.position(in.position() + length);
+                    handleMessage(msg);
+                } else if (in.position() - start + length > in.capacity()) {
+                    // Would never fit, even compacted: read the rest straight into its own array.
+                    bigFrameLength = length;
+                    bigFrame = ByteBuffer.allocate(Math.max(in.remaining(), Math.min(length, BIG_FRAME_FIRST_BYTES)));
+                    bigFrame.put(in);
+                    return;
+                } else {
+                    in.position(start);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        void send(EncodedMessage msg) {
+            if (!active || !admitOutbound(msg)) return;
+            // A view of its own onto the shared frame, so clients' write positions stay apart.
+            write(ByteBuffer.wrap(compress ? msg.compressedFrame() : msg.wireFrame()));
+        }
+
+        @Override
+        int outboundDepth() {
+            synchronized (writeLock) {
+                return outbound.size();
+            }
+        }
+
+        /** Writes a frame now if nothing is queued ahead of it, and queues whatever the socket refuses. */
+        private void write(ByteBuffer frame) {
+            try {
+                synchronized (writeLock) {
+                    if (outbound.isEmpty()) {
+                        channel.write(frame);
+                        if (!frame.hasRemaining()) return;
+                    }
+                    outbound.add(frame);
+                    if (!writeInterest) {
+                        writeInterest = true;
+                        key.interestOpsOr(SelectionKey.OP_WRITE);
+                        loop.selector.wakeup();
+                    }
+                }
+            } catch (IOException | CancelledKeyException e) {
+                if (active && !evicted) System.err.println("Send error to player " + playerId + ": " + e.getMessage());
+                evict();
+            }
+        }
+
+        /** Writes out the queue now that the socket has room; called on the loop thread. */
+        private void flush() throws IOException {
+            synchronized (writeLock) {
+                while (!outbound.isEmpty()) {
+                    ByteBuffer head = outbound.peek();
+                    channel.write(head);
+                    if (head.hasRemaining()) return;
+                    outbound.poll();
+                }
+                writeInterest = false;
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        /** Closes the channel, and has the loop disconnect once it is done with whatever it is running. */
+        @Override
+        void abort() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            loop.later(this::disconnect);
+        }
+
+        @Override
+        public void close() {
+            active = false;
+            if (key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * One selector thread of a non-blocking server, serving its share of the connections. The first
+     * loop also accepts, and deals new connections out to all the loops in turn.
+     * <p>
+     * The loops of a {@link RoomServer} are shared by all of its rooms, so what a loop serves is a
+     * {@link Client}: a room's connection, or one the room server is still reading the greeting of.
+     */
+    static final class NioLoop {
+        /** What a loop serves: whatever is attached to a key of its selector. */
+        interface Client {
+            /** Services whatever the selector reported ready. */
+            void ready();
+
+            /** Returns whether the greeting is still awaited, first timing the client out if it has taken too long. */
+            boolean awaitingGreeting(long now);
+
+            /** Closes the connection. */
+            void close();
+        }
+
+        /** Work for the loop thread, queued from elsewhere. */
+        interface Task {
+            void run() throws IOException;
+        }
+
+        /** Takes on a connection the loop accepted; told which loop it was dealt to. */
+        interface Acceptor {
+            void accepted(SocketChannel channel, NioLoop target) throws IOException;
+        }
+
+        final Selector selector;
+        final Thread thread;
+        private volatile boolean running = true;
+        /** Work queued for the loop thread from others, such as connections dealt to it waiting to join its selector. */
+        private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+        /** Connections still on their greeting, so ones that stall can be timed out. Loop thread only. */
+        final List<Client> handshaking = new ArrayList<>();
+        private ServerSocketChannel listening;
+        private NioLoop[] peers;
+        private Acceptor acceptor;
+        private int nextLoop;
+
+        NioLoop(String name) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this::run, name);
+            thread.setDaemon(true);
+        }
+
+        /** Makes this loop accept on a channel, dealing the connections out among {@code peers}. Before the loop starts. */
+        void listen(ServerSocketChannel channel, NioLoop[] peers, Acceptor acceptor) throws IOException {
+            this.listening = channel;
+            this.peers = peers;
+            this.acceptor = acceptor;
+            channel.register(selector, SelectionKey.OP_ACCEPT);
+        }
+
+        /** Runs a task on the loop thread once the loop wakes, even if this is the loop thread. */
+        void later(Task task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        /** Runs a task on the loop thread: now if this is it, otherwise once the loop wakes. */
+        void execute(Task task) throws IOException {
+            if (Thread.currentThread() == thread) {
+                task.run();
+            } else {
+                tasks.add(task);
+                selector.wakeup();
+            }
+        }
+
+        /** Ends the loop, closing whatever is still on its greeting. */
+        void stop() {
+            running = false;
+            selector.wakeup();
+        }
+
+        private void run() {
+            while (running) {
+                try {
+                    selector.select(NIO_SWEEP_INTERVAL_MS);
+                    Task task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    var ready = selector.selectedKeys().iterator();
+                    while (ready.hasNext()) {
+                        SelectionKey key = ready.next();
+                        ready.remove();
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) {
+                            acceptAll();
+                        } else {
+                            ((Client) key.attachment()).ready();
+                        }
+                    }
+                    sweepHandshakes();
+                } catch (ClosedSelectorException e) {
+                    break;
+                } catch (IOException e) {
+                    if (running) System.err.println("Network loop error: " + e.getMessage());
+                }
+            }
+            for (Client c : handshaking) c.close();
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void acceptAll() throws IOException {
+            SocketChannel channel;
+            while ((channel = listening.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                acceptor.accepted(channel, peers[nextLoop++ % peers.length]);
+            }
+        }
+
+        private void sweepHandshakes() {
+            long now = System.currentTimeMillis();
+            handshaking.removeIf(c -> !c.awaitingGreeting(now));
+        }
+    }
 }
@@ -1,14 +1,28 @@
 package com.mystic.tarotboard.network.server;
 
+import com.mystic.tarotboard.board.BoardSnapshot;
+import com.mystic.tarotboard.board.SnapshotCodec;
+import com.mystic.tarotboard.network.BoardHash;
+import com.mystic.tarotboard.network.BoardSnapshots;
+import com.mystic.tarotboard.network.DeckOrders;
+import com.mystic.tarotboard.network.EncodedMessage;
+import com.mystic.tarotboard.network.MessageStream;
 import com.mystic.tarotboard.network.NetworkMessage;
 import com.mystic.tarotboard.network.NetworkMessage.Msg;
+import com.mystic.tarotboard.network.PileRegistry;
 import com.mystic.tarotboard.network.ServerAddress;
+import com.mystic.tarotboard.network.SyncChunks;
 import com.mystic.tarotboard.utils.CardCatalog;
+import com.mystic.tarotboard.utils.PieceHandles;
 import com.mystic.tarotboard.utils.PlatformPaths;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
 
 /**
  * Standalone headless TarotBoard server that acts as the authoritative game host (playerId=0).
@@ -17,100 +31,128 @@ import java.util.*;
  * The tracked board is persisted to disk (see {@link PlatformPaths#getServerSaveFilePath()}) and
  * reloaded on startup, so a server restart resumes the game in progress. Without this, a restart
  * wiped the in-memory board and handed the next player to join a fresh deck while everyone who was
- * already playing kept the real one.
+ * already playing kept the real one. Each change is journaled as it is made (see
+ * {@link BoardJournal}), and the whole board is saved only now and then, so a crash loses
+ * milliseconds of play rather than seconds.
+ * <p>
+ * The tracked board belongs to one thread, its {@link BoardWorker}: {@code tarotboard-board} for a
+ * lone server. Messages arrive on whichever network thread read them and are queued for it, and
+ * it applies them one at a time, in the order they were queued, without locking. It also runs the
+ * relay tick, and hands copies of the board out to whatever needs one: a joiner's sync, or the
+ * autosave, which writes its copy on its own thread.
+ * <p>
+ * The same board also serves as one room of a {@link RoomServer}, which {@link #openRoom opens}
+ * it on a worker it shares with other rooms, and gives it the connections that ask for it.
  */
 public class HeadlessServer {
 
-    private static final List<String> wilds = CardCatalog.WILDS;
-
-    private static final List<String> suits = CardCatalog.SUITS;
-
-    private static final List<String> values = CardCatalog.VALUES;
-
     private static final int NUM_CARDS = CardCatalog.NUM_CARDS;
 
     /** Operator password used when neither an argument nor the environment supplies one. */
     public static final String DEFAULT_OPERATOR_PASSWORD = "admin";
 
-    /** Bumped when the on-disk save layout changes so an incompatible old file is ignored, not misread. */
+    /** The {@link ServerSave} layout the last release wrote; a save from before {@link SnapshotCodec} is migrated from this one. */
     private static final long SAVE_VERSION = 1L;
 
-    /** How often the autosave thread flushes the board to disk when it has changed. */
-    private static final long AUTOSAVE_INTERVAL_MS = 3000;
+    /** The save's property naming the generation of the {@link BoardJournal} that follows it. */
+    private static final String JOURNAL_PROPERTY = "journal";
+
+    /**
+     * How often piece moves are relayed; see {@link GameServer#setRelayTick}. Matches the clients'
+     * own per-piece throttle, so a lone drag looks no different.
+     */
+    static final int RELAY_TICK_MS = 50;
+
+    /**
+     * How many board messages are kept for players resuming after a dropped connection; see
+     * {@link GameServer#setResumeLog}. A few minutes of a busy table at the relay tick's rate.
+     */
+    private static final int RESUME_LOG_SIZE = 4096;
+
+    /** How often the whole board is saved while it changes, so replaying the journal on a restart stays quick. */
+    private static final long SNAPSHOT_INTERVAL_MS = 60_000;
+
+    /** How large the journal may grow before the board is saved early, and the journal started afresh. */
+    private static final long JOURNAL_LIMIT_BYTES = 4L << 20;
+
+    /** How often the autosave thread checks whether a save is due. */
+    static final long SNAPSHOT_CHECK_MS = 1000;
+
+    /** How long to wait on the board thread before checking whether the server is stopping. */
+    static final long BOARD_WAIT_MS = 3000;
 
     private final GameServer gameServer;
     private final List<String> cardNames = new ArrayList<>();
-    private final Set<Integer> operators = new HashSet<>();
+    /**
+     * The seed {@link #cardNames} was shuffled from, so the deck can go out as just that; null
+     * once the deck has come from a save instead.
+     */
+    private Long deckSeed;
+    /**
+     * {@link #cardNames} as a DeckOrder, encoded once and sent as-is to everyone until the
+     * deck changes, rather than re-encoded for every player who joins. Null until first needed
+     * after a change.
+     */
+    private EncodedMessage deckOrderFrame;
+    /** Written on the board thread; read by the network threads, through the operator check. */
+    private final Set<Integer> operators = ConcurrentHashMap.newKeySet();
+    /** The pile each player is dragging, for resolving their pile moves. */
+    private final PileRegistry piles = new PileRegistry();
     private final String operatorPassword;
 
     private final Path saveFile;
-    /** Guards every read and write of the tracked board so a save snapshot is internally consistent. */
-    private final Object stateLock = new Object();
+    /** How this server's log lines start: which room they are about, if it is one. */
+    private final String tag;
+    /**
+     * The board thread, which applies messages and copies the board for whoever asks. Shared with
+     * other rooms, or this server's own.
+     */
+    private final BoardWorker worker;
+    /** The thread that writes {@link #journal}; shared with other rooms, or this server's own. */
+    private final JournalWriter journalWriter;
+    /** Whether {@link #worker} and {@link #journalWriter} are this server's own, to start and stop with it. */
+    private final boolean ownWorker;
+    /**
+     * Counts changes to the tracked board, so a {@link SyncSnapshot} can tell whether it is still
+     * the board. Bumped by every change.
+     */
+    private long boardVersion;
+    /** The snapshot joiners were last synced from. */
+    private SyncSnapshot syncSnapshot;
+    /** Every change made to the board, as it is made; null while the board is being loaded. */
+    private BoardJournal journal;
+    /** The generation of the journal being written, which the next save will follow. Board thread only. */
+    private long journalGeneration;
+    /**
+     * Set on the board thread by {@link #stop} or {@link #hibernate} once it has taken the final
+     * save; what is still queued is dropped.
+     */
+    private boolean closed;
     private volatile boolean dirty = false;
     private volatile boolean running = true;
     private Thread autosaveThread;
+    /** When the board was last saved. Autosave thread only. */
+    private long lastSave = System.nanoTime();
 
-    private static class TrackedChip {
-        final String id;
-        double x, y, rotation;
-        double r, g, b, opacity;
-        boolean frontVis, backVis;
-
-        TrackedChip(String id, double x, double y, double rotation,
-                    double r, double g, double b, double opacity,
-                    boolean frontVis, boolean backVis) {
-            this.id = id;
-            this.x = x;
-            this.y = y;
-            this.rotation = rotation;
-            this.r = r;
-            this.g = g;
-            this.b = b;
-            this.opacity = opacity;
-            this.frontVis = frontVis;
-            this.backVis = backVis;
-        }
-    }
-
-    private static class TrackedDie {
-        final String id;
-        double x, y, rotation;
-        int sides, value;
-        double r, g, b, opacity;
-
-        TrackedDie(String id, double x, double y, double rotation,
-                   int sides, int value,
-                   double r, double g, double b, double opacity) {
-            this.id = id;
-            this.x = x;
-            this.y = y;
-            this.rotation = rotation;
-            this.sides = sides;
-            this.value = value;
-            this.r = r;
-            this.g = g;
-            this.b = b;
-            this.opacity = opacity;
-        }
-    }
-
-    private final List<TrackedChip> chips = new ArrayList<>();
-    private final List<TrackedDie> dice = new ArrayList<>();
+    /** The tracked chips and dice, each in columns with its rows found by handle. */
+    private final PieceStore chips = new PieceStore();
+    private final PieceStore dice = new PieceStore();
 
     // Cards are tracked by their fixed index 0..NUM_CARDS-1 — the same index the client uses
-    // as the "card:N" id and as the slot in a StateSync. Without this the server kept no memory
+    // as the piece handle and as the slot in a StateSync. Without this the server kept no memory
     // of where cards were, so it answered every SendState with all cards dumped back in the deck
     // pile face-down. A fresh joiner never noticed (that is the start-of-game layout), but a
     // player who dropped and reconnected had their whole deck reset while everyone else kept the
-    // real board, so from then on nobody's cards agreed.
-    private final double[] cardX = new double[NUM_CARDS];
-    private final double[] cardY = new double[NUM_CARDS];
-    private final double[] cardRot = new double[NUM_CARDS];
-    private final boolean[] cardBackVis = new boolean[NUM_CARDS];
-    private final boolean[] cardFrontVis = new boolean[NUM_CARDS];
-    private final boolean[] cardTextVis = new boolean[NUM_CARDS];
-
-    /** Serializable snapshot of the whole tracked board, written to and read from {@link #saveFile}. */
+    // real board, so from then on nobody's cards agreed. They are kept off the heap, mapped from
+    // a file beside the save.
+    private final CardStore cards;
+
+    /**
+     * The save as it was written before {@link SnapshotCodec}, through Java serialization, field
+     * for field as the last release wrote it. Only read now, so that such a save is migrated
+     * rather than lost. Chips and dice are named as pieces were then, {@code "chip:N"} and
+     * {@code "die:N"}.
+     */
     private record ServerSave(
             long version,
             ArrayList<String> cardNames,
@@ -137,33 +179,162 @@ public class HeadlessServer {
         private static final long serialVersionUID = 1L;
     }
 
+    /** What a sync request asks for, less who is asking: requests with equal keys get the same chunks. */
+    private record SyncKey(double viewX, double viewY, double viewWidth, double viewHeight, boolean diff, long root) {
+    }
+
     /**
-     * Creates a new headless server on the given port.
+     * The board as of one {@link #boardVersion}, with the chunks already encoded for the
+     * requests answered from it.
+     *
+     * <p>Hashing and encoding happen once per distinct request: a joiner asking what another
+     * already has is sent the same bytes.</p>
+     */
+    private static final class SyncSnapshot {
+        /** Most distinct requests whose chunks are kept; joiners mostly ask alike. */
+        private static final int MAX_CACHED = 8;
+
+        final long version;
+        final Msg.StateSync board;
+        final EncodedMessage deckOrder;
+        private BoardHash hash;
+        private final Map<SyncKey, List<EncodedMessage>> frames = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SyncKey, List<EncodedMessage>> eldest) {
+                return size() > MAX_CACHED;
+            }
+        };
+
+        SyncSnapshot(long version, Msg.StateSync board, EncodedMessage deckOrder) {
+            this.version = version;
+            this.board = board;
+            this.deckOrder = deckOrder;
+        }
+
+        /** Returns the encoded chunks answering a request, encoding them if nobody has asked the same yet. */
+        List<EncodedMessage> frames(SyncKey key, Msg request) {
+            var cached = frames.get(key);
+            if (cached != null) return cached;
+            List<NetworkMessage> chunks;
+            if (request instanceof Msg.SendDiff d) {
+                if (hash == null) hash = BoardHash.of(board);
+                chunks = SyncChunks.split(board, hash, d);
+            } else {
+                chunks = SyncChunks.split(board, (Msg.SendState) request);
+            }
+            List<EncodedMessage> encoded = new ArrayList<>(chunks.size());
+            for (var chunk : chunks) encoded.add(EncodedMessage.of(chunk));
+            frames.put(key, encoded);
+            return encoded;
+        }
+    }
+
+    /**
+     * Creates a new headless server on the given port, with the board from its save. Players
+     * are served once it is {@link #start started}.
      *
      * @param port     the port to listen on
      * @param password the operator password (maybe empty for no auth)
      * @throws IOException if the server socket cannot be opened
      */
     public HeadlessServer(int port, String password) throws IOException {
+        this(new GameServer(port, "Server", 0.5, 0.5, 0.5, true), "",
+                Path.of(PlatformPaths.getServerSaveFilePath()), password,
+                new BoardWorker("tarotboard-board", RELAY_TICK_MS), new JournalWriter("tarotboard-journal"), true);
+    }
+
+    /**
+     * Starts the board thread, the network server and the autosave thread.
+     */
+    public void start() {
+        gameServer.setOnPortForwarded(external -> {
+            if (external > 0 && external != gameServer.getPort()) {
+                System.out.println(tag + " Players outside this network must connect on port " + external);
+            }
+        });
+        journalWriter.start();
+        worker.start();
+        serve();
+        autosaveThread = new Thread(() -> {
+            while (running) {
+                try {
+                    Thread.sleep(SNAPSHOT_CHECK_MS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                autosave();
+            }
+        }, "tarotboard-autosave");
+        autosaveThread.setDaemon(true);
+        autosaveThread.start();
+        System.out.println(tag + " Server started on port " + gameServer.getPort()
+                + "  (" + NUM_CARDS + " cards)"
+                + (operatorPassword.isEmpty() ? "" : " (operator auth enabled)"));
+    }
+
+    /**
+     * Loads the board from its save and journal, and makes it the one {@code gameServer} serves
+     * once {@link #serve} is called.
+     */
+    private HeadlessServer(GameServer gameServer, String room, Path saveFile, String password,
+                           BoardWorker worker, JournalWriter journalWriter, boolean ownWorker) {
+        this.gameServer = gameServer;
         this.operatorPassword = password;
-        this.saveFile = Path.of(PlatformPaths.getServerSaveFilePath());
+        this.saveFile = saveFile;
+        this.tag = room.isEmpty() ? "[TarotBoard]" : "[TarotBoard/" + room + "]";
+        this.worker = worker;
+        this.journalWriter = journalWriter;
+        this.ownWorker = ownWorker;
+        this.cards = CardStore.open(CardStore.fileFor(saveFile), NUM_CARDS);
         operators.add(0);
-        if (!loadState()) {
+        if (loadState()) {
+            int replayed = BoardJournal.replay(saveFile, journalGeneration, new Replay());
+            if (replayed > 0) System.out.println(tag + " Replayed " + replayed + " journaled changes");
+        } else {
             initDeck();
         }
-        gameServer = new GameServer(port, "Server", 0.5, 0.5, 0.5);
+        // Start from a save of exactly this board, past every journal already on disk, so those
+        // it was rebuilt from, or any left by a save that could not be used, can go.
+        journalGeneration = Math.max(journalGeneration, BoardJournal.latest(saveFile)) + 1;
+        cards.begin(journalGeneration);
+        boolean saved = write(saveSnapshot());
+        journal = new BoardJournal(saveFile, journalGeneration, journalWriter);
+        if (saved) journal.retire(journalGeneration);
+        gameServer.reserveHandlesBelow(spawnedHandleBound());
+        // Ticked by the board thread rather than a thread per room. The network threads queue each
+        // move for the next tick as it arrives, before the board thread has applied it.
+        gameServer.setRelayTick(RELAY_TICK_MS, false);
+        gameServer.setResumeLog(RESUME_LOG_SIZE);
         gameServer.setIsOperatorCheck(operators::contains);
+    }
+
+    /** Puts the board on its worker and starts the network server handing it messages. */
+    private void serve() {
         gameServer.setOnMessage(this::handleMessage);
-        gameServer.setOnPortForwarded(external -> {
-            if (external > 0 && external != gameServer.getPort()) {
-                System.out.println("[TarotBoard] Players outside this network must connect on port " + external);
-            }
-        });
+        worker.add(this);
         gameServer.start();
-        startAutosave();
-        System.out.println("[TarotBoard] Server started on port " + gameServer.getPort()
-                + "  (" + NUM_CARDS + " cards)"
-                + (password.isEmpty() ? "" : " (operator auth enabled)"));
+    }
+
+    /**
+     * Opens one room of a {@link RoomServer}: loads its board and starts serving it. Called on
+     * the worker the room is pinned to, which reads the save from disk, so the other rooms on
+     * that worker wait the while.
+     *
+     * @param room     the room's name
+     * @param saveFile where the room's board is saved
+     * @param password the operator password (maybe empty for no auth)
+     * @param worker   the worker the room is pinned to
+     * @param writer   the journal writer beside that worker
+     * @param loops    the room server's network loops
+     * @return the room
+     */
+    static HeadlessServer openRoom(String room, Path saveFile, String password, BoardWorker worker,
+                                   JournalWriter writer, GameServer.NioLoop[] loops) {
+        var server = new HeadlessServer(new GameServer("Server", 0.5, 0.5, 0.5, loops), room, saveFile,
+                password, worker, writer, false);
+        server.serve();
+        System.out.println(server.tag + (room.isEmpty() ? " Default room opened" : " Room opened"));
+        return server;
     }
 
     /**
@@ -182,12 +353,118 @@ public class HeadlessServer {
     public void stop() {
         running = false;
         if (autosaveThread != null) autosaveThread.interrupt();
-        // A final synchronous save so the very latest board survives a clean shutdown, not just
-        // whatever the last autosave tick happened to catch.
-        save();
+        finish(finalSnapshot());
+    }
+
+    /**
+     * Saves the board and lets it go, for a {@link RoomServer} whose room nobody has been in for
+     * a while: its journal and its network server are closed, and once the room server drops
+     * this, so does the board. The room opens again from the save. Board thread
+     * only, so a join queued behind this opens the room only once it is saved.
+     *
+     * @return false, leaving the room as it was, if a player is connected or still joining
+     */
+    boolean hibernate() {
+        if (!gameServer.closeIfIdle()) return false;
+        running = false;
+        worker.remove(this);
+        closed = true;
+        finish(rollSnapshot());
+        return true;
+    }
+
+    /**
+     * Writes the final save, and closes the journal and the network server.
+     *
+     * @param snapshot the final save, or null if it could not be taken
+     */
+    private void finish(BoardSnapshot snapshot) {
+        // The journal already holds every change; a final save means the next start has none to
+        // replay.
+        if (snapshot != null && write(snapshot)) {
+            journal.retire(journalOf(snapshot));
+            cards.seal();
+        }
+        journal.close();
+        if (ownWorker) journalWriter.stop();
         gameServer.stop();
     }
 
+    /**
+     * Takes the last save of the board, after whatever was sent to the board thread before it,
+     * and stops the board from changing after it.
+     *
+     * @return the save, or null if the board thread did not get to it in time
+     */
+    private BoardSnapshot finalSnapshot() {
+        if (ownWorker) {
+            // Let the board thread finish what it was sent, then save from here: once it has
+            // ended, the board is this thread's to read.
+            return worker.stop(BOARD_WAIT_MS) ? rollSnapshot() : null;
+        }
+        var result = new CompletableFuture<BoardSnapshot>();
+        worker.execute(() -> {
+            // Hibernated already, and saved then.
+            if (closed) {
+                result.complete(null);
+                return;
+            }
+            worker.remove(this);
+            closed = true;
+            result.complete(rollSnapshot());
+        });
+        try {
+            return result.get(BOARD_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /** Sends the moves the relay held since the last tick. Board thread only. */
+    void relayTick() {
+        gameServer.relayTick();
+    }
+
+    /**
+     * Serves a connection a {@link RoomServer} found is for this room. Called on the network loop
+     * serving it.
+     *
+     * @return false if this room has stopped, and the connection is still the caller's
+     * @see GameServer#adopt
+     */
+    boolean adopt(SocketChannel channel, GameServer.NioLoop loop, ByteBuffer alreadyRead) throws IOException {
+        return gameServer.adopt(channel, loop, alreadyRead);
+    }
+
+    /** Returns how many players are connected. */
+    int playerCount() {
+        return gameServer.playerCount();
+    }
+
+    /**
+     * Runs a task on the board thread and waits for its result. Not for the board thread itself,
+     * nor for a network thread, whose other clients would wait too.
+     *
+     * @return the result, or null if the server stopped first
+     */
+    private <T> T onBoardThread(Supplier<T> task) {
+        var result = new CompletableFuture<T>();
+        worker.execute(() -> result.complete(task.get()));
+        while (running) {
+            try {
+                return result.get(BOARD_WAIT_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Still queued behind a burst; keep waiting unless the server is stopping.
+            } catch (InterruptedException | ExecutionException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
     /**
      * Resolves the operator password: an explicit {@code --password=X} or {@code --password X}
      * argument first, then the {@code OPERATOR_PASSWORD} environment variable, which is how a
@@ -214,42 +491,36 @@ public class HeadlessServer {
     }
 
     private void initDeck() {
-        synchronized (stateLock) {
-            cardNames.clear();
-            cardNames.addAll(wilds);
-            for (String suit : suits) {
-                for (String value : values) {
-                    cardNames.add(value + " of " + suit);
-                }
-            }
-            Collections.shuffle(cardNames, new Random());
-            resetCardsToDeck();
-            chips.clear();
-            dice.clear();
-        }
+        boardVersion++;
+        shuffleDeck();
+        resetCardsToDeck();
+        clearChips();
+        clearDice();
     }
 
     /**
-     * Starts the daemon thread that flushes the tracked board to disk whenever it has changed.
-     * A restart-safe save on every single piece move would hammer the disk, so moves only set a
-     * dirty flag and this thread coalesces them into one write per interval.
+     * Saves the whole board if it has changed and a save is due. Every change is already in the
+     * journal; saving only bounds how much of it a restart replays, so it happens every
+     * {@link #SNAPSHOT_INTERVAL_MS}, or sooner once the journal passes {@link #JOURNAL_LIMIT_BYTES},
+     * and a journal older than the save is then deleted.
+     * <p>
+     * Called every {@link #SNAPSHOT_CHECK_MS} by an autosave thread: this server's own, or the one
+     * a {@link RoomServer} runs for all of its rooms. Never on the board thread.
      */
-    private void startAutosave() {
-        autosaveThread = new Thread(() -> {
-            while (running) {
-                try {
-                    Thread.sleep(AUTOSAVE_INTERVAL_MS);
-                } catch (InterruptedException e) {
-                    break;
-                }
-                if (dirty) {
-                    dirty = false;
-                    save();
-                }
-            }
-        }, "tarotboard-autosave");
-        autosaveThread.setDaemon(true);
-        autosaveThread.start();
+    void autosave() {
+        boolean due = System.nanoTime() - lastSave >= SNAPSHOT_INTERVAL_MS * 1_000_000L
+                || journal.size() >= JOURNAL_LIMIT_BYTES;
+        if (!dirty || !due || !running) return;
+        // Cleared before the snapshot so a change made while it is written marks the board again.
+        dirty = false;
+        lastSave = System.nanoTime();
+        BoardSnapshot snapshot = onBoardThread(() -> closed ? null : rollSnapshot());
+        if (snapshot != null && write(snapshot)) {
+            journal.retire(journalOf(snapshot));
+            cards.force();
+        } else {
+            dirty = true;
+        }
     }
 
     private void markDirty() {
@@ -257,7 +528,8 @@ public class HeadlessServer {
     }
 
     /**
-     * Restores the tracked board from {@link #saveFile}.
+     * Restores the tracked board from {@link #saveFile}, migrating it first if it was written
+     * before {@link SnapshotCodec}.
      *
      * @return true if a compatible save was loaded, false if there was none or it could not be
      * used (a corrupt file, a different version, or a deck built from a different card list) — in
@@ -265,95 +537,167 @@ public class HeadlessServer {
      */
     private boolean loadState() {
         if (!Files.exists(saveFile)) return false;
-        try (ObjectInputStream ois = new ObjectInputStream(Files.newInputStream(saveFile))) {
-            ServerSave s = (ServerSave) ois.readObject();
-            if (s.version() != SAVE_VERSION) {
-                System.err.println("[TarotBoard] Ignoring saved game from an incompatible version; starting fresh.");
+        try {
+            byte[] data = Files.readAllBytes(saveFile);
+            BoardSnapshot s = SnapshotCodec.isSnapshot(data) ? SnapshotCodec.read(data) : migrate(data);
+            if (s == null) return false;
+            if (s.cardNames().size() != NUM_CARDS || s.cardX().length != NUM_CARDS) {
+                System.err.println(tag + " Saved game was built from a different card list ("
+                        + s.cardNames().size() + " vs " + NUM_CARDS + " cards); starting fresh.");
                 return false;
             }
-            if (s.cardNames() == null || s.cardNames().size() != NUM_CARDS
-                    || s.cardX() == null || s.cardX().length != NUM_CARDS
-                    || s.cardY().length != NUM_CARDS || s.cardRot().length != NUM_CARDS
-                    || s.cardBackVis().length != NUM_CARDS || s.cardFrontVis().length != NUM_CARDS
-                    || s.cardTextVis().length != NUM_CARDS) {
-                System.err.println("[TarotBoard] Saved game was built from a different card list ("
-                        + (s.cardNames() == null ? 0 : s.cardNames().size()) + " vs " + NUM_CARDS
-                        + " cards); starting fresh.");
-                return false;
+            boardVersion++;
+            journalGeneration = journalOf(s);
+            cardNames.clear();
+            cardNames.addAll(s.cardNames());
+            deckSeed = null;
+            deckOrderFrame = null;
+            // Sealed by a clean stop alongside this very save, the mapped cards are already these.
+            if (!cards.isSealedAt(journalGeneration)) {
+                cards.load(s.cardX(), s.cardY(), s.cardRot(), s.cardBackVis(), s.cardFrontVis(), s.cardTextVis());
             }
-            synchronized (stateLock) {
-                cardNames.clear();
-                cardNames.addAll(s.cardNames());
-                System.arraycopy(s.cardX(), 0, cardX, 0, NUM_CARDS);
-                System.arraycopy(s.cardY(), 0, cardY, 0, NUM_CARDS);
-                System.arraycopy(s.cardRot(), 0, cardRot, 0, NUM_CARDS);
-                System.arraycopy(s.cardBackVis(), 0, cardBackVis, 0, NUM_CARDS);
-                System.arraycopy(s.cardFrontVis(), 0, cardFrontVis, 0, NUM_CARDS);
-                System.arraycopy(s.cardTextVis(), 0, cardTextVis, 0, NUM_CARDS);
-                chips.clear();
-                for (ChipSnap c : s.chips()) {
-                    chips.add(new TrackedChip(c.id(), c.x(), c.y(), c.rotation(),
-                            c.r(), c.g(), c.b(), c.opacity(), c.frontVis(), c.backVis()));
-                }
-                dice.clear();
-                for (DieSnap d : s.dice()) {
-                    dice.add(new TrackedDie(d.id(), d.x(), d.y(), d.rotation(),
-                            d.sides(), d.value(), d.r(), d.g(), d.b(), d.opacity()));
-                }
+            chips.clear();
+            dice.clear();
+            for (int i = 0; i < s.chipIds().length; i++) {
+                putSpawned(chips, s.chipIds()[i], s.chipX()[i], s.chipY()[i], s.chipRot()[i],
+                        s.chipR()[i], s.chipG()[i], s.chipB()[i], s.chipO()[i],
+                        s.chipFrontVis()[i], s.chipBackVis()[i], 0, 0);
+            }
+            for (int i = 0; i < s.dieIds().length; i++) {
+                putSpawned(dice, s.dieIds()[i], s.dieX()[i], s.dieY()[i], s.dieRot()[i],
+                        s.dieR()[i], s.dieG()[i], s.dieB()[i], s.dieO()[i],
+                        false, false, s.dieSides()[i], s.dieVals()[i]);
             }
-            System.out.println("[TarotBoard] Resumed saved game (" + chips.size() + " chips, "
+            System.out.println(tag + " Resumed saved game (" + chips.size() + " chips, "
                     + dice.size() + " dice)");
             return true;
         } catch (Throwable t) {
-            System.err.println("[TarotBoard] Could not load saved game: " + t + "; starting fresh.");
+            System.err.println(tag + " Could not load saved game: " + t + "; starting fresh.");
             return false;
         }
     }
 
     /**
-     * Writes the current tracked board to {@link #saveFile}. The snapshot is copied under the state
-     * lock and then written outside it, so a save never blocks piece updates on disk I/O, and the
-     * write goes to a temp file that is atomically renamed so a crash mid-write cannot leave a
-     * half-written save that would fail to load on the next start.
+     * Reads a save written before {@link SnapshotCodec} as a snapshot. The next save writes it in
+     * the new format.
+     *
+     * @return the board, or null if the save is from a layout older still
      */
-    private void save() {
-        ServerSave snapshot;
-        synchronized (stateLock) {
-            ArrayList<ChipSnap> chipSnaps = new ArrayList<>(chips.size());
-            for (TrackedChip c : chips) {
-                chipSnaps.add(new ChipSnap(c.id, c.x, c.y, c.rotation,
-                        c.r, c.g, c.b, c.opacity, c.frontVis, c.backVis));
-            }
-            ArrayList<DieSnap> dieSnaps = new ArrayList<>(dice.size());
-            for (TrackedDie d : dice) {
-                dieSnaps.add(new DieSnap(d.id, d.x, d.y, d.rotation,
-                        d.sides, d.value, d.r, d.g, d.b, d.opacity));
-            }
-            snapshot = new ServerSave(SAVE_VERSION, new ArrayList<>(cardNames),
-                    cardX.clone(), cardY.clone(), cardRot.clone(),
-                    cardBackVis.clone(), cardFrontVis.clone(), cardTextVis.clone(),
-                    chipSnaps, dieSnaps);
+    private static BoardSnapshot migrate(byte[] data) throws IOException, ClassNotFoundException {
+        ServerSave s;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            s = (ServerSave) ois.readObject();
         }
+        if (s.version() != SAVE_VERSION) {
+            System.err.println("[TarotBoard] Ignoring saved game from an incompatible version; starting fresh.");
+            return null;
+        }
+        System.out.println("[TarotBoard] Migrating saved game to the snapshot format");
+        // The old names are dropped for fresh handles, as the client's migration does; nothing
+        // else refers to them once the board has been reloaded.
+        int nChips = s.chips().size(), nDice = s.dice().size();
+        int[] chipIds = new int[nChips];
+        double[] chipX = new double[nChips], chipY = new double[nChips], chipRot = new double[nChips];
+        boolean[] chipFrontVis = new boolean[nChips], chipBackVis = new boolean[nChips];
+        double[] chipR = new double[nChips], chipG = new double[nChips];
+        double[] chipB = new double[nChips], chipO = new double[nChips];
+        for (int i = 0; i < nChips; i++) {
+            ChipSnap c = s.chips().get(i);
+            chipIds[i] = PieceHandles.FIRST_SPAWNED + i;
+            chipX[i] = c.x();
+            chipY[i] = c.y();
+            chipRot[i] = c.rotation();
+            chipFrontVis[i] = c.frontVis();
+            chipBackVis[i] = c.backVis();
+            chipR[i] = c.r();
+            chipG[i] = c.g();
+            chipB[i] = c.b();
+            chipO[i] = c.opacity();
+        }
+        int[] dieIds = new int[nDice], dieSides = new int[nDice], dieVals = new int[nDice];
+        double[] dieX = new double[nDice], dieY = new double[nDice], dieRot = new double[nDice];
+        double[] dieR = new double[nDice], dieG = new double[nDice];
+        double[] dieB = new double[nDice], dieO = new double[nDice];
+        for (int i = 0; i < nDice; i++) {
+            DieSnap d = s.dice().get(i);
+            dieIds[i] = PieceHandles.FIRST_SPAWNED + nChips + i;
+            dieX[i] = d.x();
+            dieY[i] = d.y();
+            dieRot[i] = d.rotation();
+            dieSides[i] = d.sides();
+            dieVals[i] = d.value();
+            dieR[i] = d.r();
+            dieG[i] = d.g();
+            dieB[i] = d.b();
+            dieO[i] = d.opacity();
+        }
+        // From before the journal, so nothing follows it to replay.
+        return new BoardSnapshot(s.cardNames(), Map.of(JOURNAL_PROPERTY, "0"),
+                s.cardX(), s.cardY(), s.cardRot(), s.cardBackVis(), s.cardFrontVis(), s.cardTextVis(),
+                chipIds, chipX, chipY, chipRot, chipFrontVis, chipBackVis, chipR, chipG, chipB, chipO,
+                dieIds, dieX, dieY, dieRot, dieSides, dieVals, dieR, dieG, dieB, dieO);
+    }
+
+    private static long journalOf(BoardSnapshot s) {
+        return Long.parseLong(s.property(JOURNAL_PROPERTY, "0"));
+    }
+
+    /**
+     * Starts the next journal generation and copies the board for the save it follows, together,
+     * so no change falls between the two. Board thread only, or once it has ended.
+     */
+    private BoardSnapshot rollSnapshot() {
+        journal.roll(++journalGeneration);
+        // The grabs are in the journal being left behind; a later pile move must still resolve.
+        piles.forEach(journal::pile);
+        cards.begin(journalGeneration);
+        return saveSnapshot();
+    }
+
+    /** Copies the tracked board for saving. Board thread only, or once it has ended. */
+    private BoardSnapshot saveSnapshot() {
+        return BoardSnapshots.of(new ArrayList<>(cardNames), takeSnapshot(),
+                Map.of(JOURNAL_PROPERTY, Long.toString(journalGeneration)));
+    }
+
+    /**
+     * Writes a copy of the board to {@link #saveFile}. The copy is taken on the board thread and
+     * written on the caller's, so a save never holds up piece updates on disk I/O, and the write
+     * goes to a temp file that is atomically renamed so a crash mid-write cannot leave a
+     * half-written save that would fail to load on the next start.
+     *
+     * @return true if the save is on disk, so the journals before it are no longer needed
+     */
+    private boolean write(BoardSnapshot snapshot) {
         try {
             Path parent = saveFile.getParent();
             if (parent != null) Files.createDirectories(parent);
             Path tmp = saveFile.resolveSibling(saveFile.getFileName() + ".tmp");
-            try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(tmp))) {
-                oos.writeObject(snapshot);
-            }
+            Files.write(tmp, SnapshotCodec.write(snapshot, true));
             try {
                 Files.move(tmp, saveFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
             } catch (AtomicMoveNotSupportedException e) {
                 Files.move(tmp, saveFile, StandardCopyOption.REPLACE_EXISTING);
             }
+            return true;
         } catch (Throwable t) {
-            System.err.println("[TarotBoard] Failed to save game: " + t);
+            System.err.println(tag + " Failed to save game: " + t);
+            return false;
         }
     }
 
+    /** Queues a message from the network for the board thread. */
     private void handleMessage(NetworkMessage msg) {
+        worker.execute(() -> {
+            if (!closed) apply(msg);
+        });
+    }
+
+    /** Applies a message to the tracked board. Board thread only. */
+    private void apply(NetworkMessage msg) {
         switch (msg.data()) {
-            case Msg.SendState m -> sendStateSync(m.playerId());
+            case Msg.SendState m -> sendStateSync(m);
+            case Msg.SendDiff m -> sendStateSync(m);
             case Msg.RequestOperator m -> handleRequestOperator(m);
             case Msg.ReshuffleCards m -> {
                 if (isOperator(m.playerId())) handleReshuffle();
@@ -363,17 +707,13 @@ public class HeadlessServer {
             }
             case Msg.ResetDice m -> {
                 if (isOperator(m.playerId())) {
-                    synchronized (stateLock) {
-                        dice.clear();
-                    }
+                    clearDice();
                     markDirty();
                 }
             }
             case Msg.ResetChips m -> {
                 if (isOperator(m.playerId())) {
-                    synchronized (stateLock) {
-                        chips.clear();
-                    }
+                    clearChips();
                     markDirty();
                 }
             }
@@ -386,21 +726,40 @@ public class HeadlessServer {
                 markDirty();
             }
             case Msg.DeletePiece m -> {
-                untrackPiece(m.pieceId());
+                untrackPiece(m.piece());
                 markDirty();
             }
             case Msg.PieceMove m -> {
-                updatePiecePos(m.pieceId(), m.x(), m.y());
+                updatePiecePos(m.piece(), m.x(), m.y());
                 markDirty();
             }
+            // Journaled as they came, one record for the whole pile rather than one per piece.
             case Msg.PieceMoveBatch m -> {
-                for (String pieceId : m.pieceIds()) {
-                    updatePiecePos(pieceId, m.x(), m.y());
+                if (journal != null) journal.moveAll(m.pieces(), m.x(), m.y());
+                placeAll(m.pieces(), m.x(), m.y());
+                markDirty();
+            }
+            case Msg.PileGrab m -> {
+                piles.grab(m);
+                if (journal != null) {
+                    journal.pile(m.playerId(), m.pile(), m.pieces());
+                    journal.movePile(m.playerId(), m.pile(), m.x(), m.y());
                 }
+                placeAll(m.pieces(), m.x(), m.y());
                 markDirty();
             }
+            case Msg.PileMove m -> {
+                int[] pieces = piles.resolve(m);
+                if (pieces == null) return;
+                if (journal != null) journal.movePile(m.playerId(), m.pile(), m.x(), m.y());
+                placeAll(pieces, m.x(), m.y());
+                markDirty();
+            }
+            case Msg.PlayerList m -> {
+                piles.retain(m.players());
+            }
             case Msg.PieceRotate m -> {
-                updatePieceRot(m.pieceId(), m.rotation());
+                updatePieceRot(m.piece(), m.rotation());
                 markDirty();
             }
             case Msg.PieceFlip m -> {
@@ -412,46 +771,70 @@ public class HeadlessServer {
         }
     }
 
-    /** The card index carried by a {@code "card:N"} id, or -1 if the id is not an in-range card. */
-    private int cardIndex(String pieceId) {
-        if (pieceId == null || !pieceId.startsWith("card:")) return -1;
-        try {
-            int i = Integer.parseInt(pieceId.substring("card:".length()));
-            return (i >= 0 && i < NUM_CARDS) ? i : -1;
-        } catch (NumberFormatException e) {
-            return -1;
+    /**
+     * Starts tracking a chip or die, replacing whatever already had its handle.
+     *
+     * @param store {@link #chips} or {@link #dice}, whichever the piece is
+     */
+    private void putSpawned(PieceStore store, int handle, double x, double y, double rotation,
+                            double r, double g, double b, double opacity,
+                            boolean front, boolean back, int sides, int value) {
+        if (handle < PieceHandles.FIRST_SPAWNED || !PieceHandles.isValid(handle)) {
+            System.err.println(tag + " Ignoring piece with out-of-range handle " + handle);
+            return;
         }
+        chips.remove(handle);
+        dice.remove(handle);
+        boardVersion++;
+        store.put(handle, x, y, rotation, r, g, b, opacity, front, back, sides, value);
+        if (journal != null) journal.put(store == dice, handle, x, y, rotation, r, g, b, opacity, front, back, sides, value);
+    }
+
+    private void clearChips() {
+        boardVersion++;
+        chips.clear();
+        if (journal != null) journal.clearChips();
+    }
+
+    private void clearDice() {
+        boardVersion++;
+        dice.clear();
+        if (journal != null) journal.clearDice();
+    }
+
+    /** One past the highest handle of any tracked chip or die, so the server never re-allocates one. */
+    private int spawnedHandleBound() {
+        return Math.max(chips.handleBound(), dice.handleBound());
     }
 
     /**
      * Resets every card to the face-down deck pile, the layout a new or reshuffled game starts from.
-     * Callers hold {@link #stateLock}.
      */
     private void resetCardsToDeck() {
+        boardVersion++;
         for (int i = 0; i < NUM_CARDS; i++) {
-            cardX[i] = 50;
-            cardY[i] = 50;
-            cardRot[i] = 0;
-            cardBackVis[i] = true;
-            cardFrontVis[i] = false;
-            cardTextVis[i] = false;
+            cards.move(i, CardCatalog.DECK_X, CardCatalog.DECK_Y);
+            cards.rotate(i, 0);
+            cards.flip(i, true, false, false);
         }
+        if (journal != null) journal.resetCards();
     }
 
     private void updateCardFlip(Msg.PieceFlip m) {
-        int i = cardIndex(m.pieceId());
-        if (i < 0) return;
-        synchronized (stateLock) {
-            // The client's StateSync convention: index 0 is the back, 1 the front, 2 the name text.
-            cardBackVis[i] = m.backVisible();
-            cardFrontVis[i] = m.frontVisible();
-            cardTextVis[i] = m.textVisible();
-        }
+        updateCardFlip(m.piece(), m.backVisible(), m.frontVisible(), m.textVisible());
+    }
+
+    private void updateCardFlip(int i, boolean back, boolean front, boolean text) {
+        if (!PieceHandles.isCard(i)) return;
+        boardVersion++;
+        // The client's StateSync convention: index 0 is the back, 1 the front, 2 the name text.
+        cards.flip(i, back, front, text);
+        if (journal != null) journal.flip(i, back, front, text);
     }
 
     private boolean isOperator(int playerId) {
         if (operators.contains(playerId)) return true;
-        System.out.println("[TarotBoard] Denied non-operator action from player " + playerId);
+        System.out.println(tag + " Denied non-operator action from player " + playerId);
         return false;
     }
 
@@ -459,186 +842,249 @@ public class HeadlessServer {
         boolean granted = !operatorPassword.isEmpty() && operatorPassword.equals(m.password());
         if (granted) {
             operators.add(m.playerId());
-            System.out.println("[TarotBoard] Player " + m.playerId() + " is now an operator");
+            System.out.println(tag + " Player " + m.playerId() + " is now an operator");
         } else {
-            System.out.println("[TarotBoard] Operator request denied for player " + m.playerId());
+            System.out.println(tag + " Operator request denied for player " + m.playerId());
         }
         gameServer.sendTo(m.playerId(),
                 NetworkMessage.of(new Msg.OperatorStatus(m.playerId(), granted)));
     }
 
-    private void sendStateSync(int playerId) {
-        NetworkMessage cardNamesMsg;
-        NetworkMessage syncMsg;
-        // Build the whole reply under the lock so the joiner sees one coherent snapshot even while
-        // other players are moving pieces, then send outside the lock so disk-slow clients cannot
-        // stall board updates.
-        synchronized (stateLock) {
-            cardNamesMsg = NetworkMessage.of(new Msg.CardNamesSync(new ArrayList<>(cardNames)));
-
-            int nCards = NUM_CARDS;
-            int[] cardIds = new int[nCards];
-            for (int i = 0; i < nCards; i++) {
-                cardIds[i] = i;
+    /**
+     * Sends a player the deck and the board, or what of the board it asked for.
+     *
+     * <p>The answer is cut from the latest {@link SyncSnapshot}, taken again only once the board
+     * has changed since; and the chunks for a request are encoded once per snapshot, so the
+     * players in a storm of joins, who mostly ask the same thing of the same board, share the
+     * bytes rather than each costing a copy of the board and an encode.</p>
+     */
+    private void sendStateSync(Msg request) {
+        int playerId;
+        SyncKey key;
+        switch (request) {
+            case Msg.SendState m -> {
+                playerId = m.playerId();
+                key = new SyncKey(m.viewX(), m.viewY(), m.viewWidth(), m.viewHeight(), false, 0);
             }
-
-            int nChips = chips.size();
-            String[] chipIds = new String[nChips];
-            double[] chipX = new double[nChips], chipY = new double[nChips], chipRot = new double[nChips];
-            boolean[] chipFrontVis = new boolean[nChips], chipBackVis = new boolean[nChips];
-            double[] chipR = new double[nChips], chipG = new double[nChips], chipB = new double[nChips], chipO = new double[nChips];
-
-            for (int i = 0; i < nChips; i++) {
-                var c = chips.get(i);
-                chipIds[i] = c.id;
-                chipX[i] = c.x;
-                chipY[i] = c.y;
-                chipRot[i] = c.rotation;
-                chipFrontVis[i] = c.frontVis;
-                chipBackVis[i] = c.backVis;
-                chipR[i] = c.r;
-                chipG[i] = c.g;
-                chipB[i] = c.b;
-                chipO[i] = c.opacity;
+            case Msg.SendDiff m -> {
+                playerId = m.playerId();
+                key = new SyncKey(m.viewX(), m.viewY(), m.viewWidth(), m.viewHeight(), true, m.root());
             }
-
-            int nDice = dice.size();
-            String[] dieIds = new String[nDice];
-            double[] dieX = new double[nDice], dieY = new double[nDice], dieRot = new double[nDice];
-            int[] dieSides = new int[nDice], dieVals = new int[nDice];
-            double[] dieR = new double[nDice], dieG = new double[nDice], dieB = new double[nDice], dieO = new double[nDice];
-
-            for (int i = 0; i < nDice; i++) {
-                var d = dice.get(i);
-                dieIds[i] = d.id;
-                dieX[i] = d.x;
-                dieY[i] = d.y;
-                dieRot[i] = d.rotation;
-                dieSides[i] = d.sides;
-                dieVals[i] = d.value;
-                dieR[i] = d.r;
-                dieG[i] = d.g;
-                dieB[i] = d.b;
-                dieO[i] = d.opacity;
+            default -> {
+                return;
             }
+        }
+        if (syncSnapshot == null || syncSnapshot.version != boardVersion) {
+            syncSnapshot = new SyncSnapshot(boardVersion, takeSnapshot(), deckOrderFrame());
+        }
+        SyncSnapshot snapshot = syncSnapshot;
+        List<EncodedMessage> frames = snapshot.frames(key, request);
+        gameServer.sendTo(playerId, snapshot.deckOrder);
+        gameServer.sendPaced(playerId, frames);
+        System.out.println(tag + " Syncing state to player " + playerId + " in " + (frames.size() - 1)
+                + " chunks (board version " + snapshot.version + ")");
+    }
 
-            var sync = new Msg.StateSync(cardIds, cardX.clone(), cardY.clone(), cardRot.clone(),
-                    cardBackVis.clone(), cardFrontVis.clone(), cardTextVis.clone(),
-                    chipIds, chipX, chipY, chipRot, chipFrontVis, chipBackVis,
-                    chipR, chipG, chipB, chipO,
-                    dieIds, dieX, dieY, dieRot, dieSides, dieVals,
-                    dieR, dieG, dieB, dieO);
-            syncMsg = NetworkMessage.of(sync);
+    /** Copies the tracked board into a full sync, every card by index. */
+    private Msg.StateSync takeSnapshot() {
+        int nCards = NUM_CARDS;
+        int[] cardIds = new int[nCards];
+        for (int i = 0; i < nCards; i++) {
+            cardIds[i] = i;
         }
 
-        gameServer.sendTo(playerId, cardNamesMsg);
-        gameServer.sendTo(playerId, syncMsg);
-        System.out.println("[TarotBoard] State synced to player " + playerId);
+        // Copied, as the snapshot is kept, and answers later requests, while the board moves on.
+        return new Msg.StateSync(cardIds, cards.xs(), cards.ys(), cards.rotations(),
+                cards.backVis(), cards.frontVis(), cards.textVis(),
+                chips.handles(), chips.xs(), chips.ys(), chips.rotations(), chips.frontVis(), chips.backVis(),
+                chips.reds(), chips.greens(), chips.blues(), chips.opacities(),
+                dice.handles(), dice.xs(), dice.ys(), dice.rotations(), dice.sides(), dice.values(),
+                dice.reds(), dice.greens(), dice.blues(), dice.opacities());
     }
 
-    private void handleReshuffle() {
-        synchronized (stateLock) {
-            Collections.shuffle(cardNames, new Random());
-            // The client's reshuffle handler drops every card back onto the deck pile, so the
-            // tracked layout has to follow or a later reconnect would restore the pre-shuffle spread.
-            resetCardsToDeck();
+    /**
+     * Returns the current deck order ready to send, building it if the deck has changed since it
+     * was last sent.
+     */
+    private EncodedMessage deckOrderFrame() {
+        if (deckOrderFrame == null) {
+            deckOrderFrame = EncodedMessage.of(DeckOrders.message(cardNames, deckSeed));
         }
+        return deckOrderFrame;
+    }
+
+    /** Deals a freshly shuffled deck from a new seed. */
+    private void shuffleDeck() {
+        dealDeck(new Random().nextLong());
+    }
+
+    /** Deals the deck shuffled from a seed. */
+    private void dealDeck(long seed) {
+        boardVersion++;
+        deckSeed = seed;
+        cardNames.clear();
+        cardNames.addAll(CardCatalog.namesInOrder(CardCatalog.shuffledOrder(seed)));
+        deckOrderFrame = null;
+        if (journal != null) journal.deal(seed);
+    }
+
+    private void handleReshuffle() {
+        EncodedMessage orderMsg;
+        shuffleDeck();
+        // The client's reshuffle handler drops every card back onto the deck pile, so the
+        // tracked layout has to follow or a later reconnect would restore the pre-shuffle spread.
+        resetCardsToDeck();
+        orderMsg = deckOrderFrame();
         markDirty();
         gameServer.broadcastToAll(
                 NetworkMessage.of(new Msg.ReshuffleCards(0)));
-        gameServer.broadcastToAll(
-                NetworkMessage.of(new Msg.CardNamesSync(new ArrayList<>(cardNames))));
-        System.out.println("[TarotBoard] Cards reshuffled");
+        gameServer.broadcastToAll(orderMsg);
+        System.out.println(tag + " Cards reshuffled");
     }
 
     private void handleNewGame() {
         initDeck();
         markDirty();
+        EncodedMessage orderMsg;
+        orderMsg = deckOrderFrame();
         gameServer.broadcastToAll(
                 NetworkMessage.of(new Msg.NewGame(0)));
-        gameServer.broadcastToAll(
-                NetworkMessage.of(new Msg.CardNamesSync(new ArrayList<>(cardNames))));
-        System.out.println("[TarotBoard] New game started");
+        gameServer.broadcastToAll(orderMsg);
+        System.out.println(tag + " New game started");
     }
 
     private void trackChip(Msg.SpawnChip m) {
-        synchronized (stateLock) {
-            chips.removeIf(c -> c.id.equals(m.pieceId()));
-            chips.add(new TrackedChip(m.pieceId(), m.x(), m.y(), 0,
-                    m.red(), m.green(), m.blue(), m.opacity(),
-                    true, false));
-        }
+        putSpawned(chips, m.piece(), m.x(), m.y(), 0,
+                m.red(), m.green(), m.blue(), m.opacity(), true, false, 0, 0);
     }
 
     private void trackDie(Msg.SpawnDie m) {
-        synchronized (stateLock) {
-            dice.removeIf(d -> d.id.equals(m.pieceId()));
-            dice.add(new TrackedDie(m.pieceId(), m.x(), m.y(), 0,
-                    m.sides(), (int) m.value(),
-                    m.red(), m.green(), m.blue(), m.opacity()));
+        putSpawned(dice, m.piece(), m.x(), m.y(), 0,
+                m.red(), m.green(), m.blue(), m.opacity(), false, false, m.sides(), (int) m.value());
+    }
+
+    private void untrackPiece(int handle) {
+        if (chips.remove(handle) || dice.remove(handle)) {
+            boardVersion++;
+            if (journal != null) journal.remove(handle);
         }
     }
 
-    private void untrackPiece(String pieceId) {
-        synchronized (stateLock) {
-            chips.removeIf(c -> c.id.equals(pieceId));
-            dice.removeIf(d -> d.id.equals(pieceId));
+    private void updatePiecePos(int handle, double x, double y) {
+        boardVersion++;
+        if (journal != null) journal.move(handle, x, y);
+        placePiece(handle, x, y);
+    }
+
+    /** Moves pieces to the same spot; the caller journals the move. */
+    private void placeAll(int[] handles, double x, double y) {
+        boardVersion++;
+        for (int handle : handles) placePiece(handle, x, y);
+    }
+
+    private void placePiece(int handle, double x, double y) {
+        if (PieceHandles.isCard(handle)) {
+            cards.move(handle, x, y);
+            return;
         }
+        if (!chips.move(handle, x, y)) dice.move(handle, x, y);
     }
 
-    private void updatePiecePos(String pieceId, double x, double y) {
-        synchronized (stateLock) {
-            int card = cardIndex(pieceId);
-            if (card >= 0) {
-                cardX[card] = x;
-                cardY[card] = y;
-                return;
-            }
-            for (var c : chips) {
-                if (c.id.equals(pieceId)) {
-                    c.x = x;
-                    c.y = y;
-                    return;
-                }
-            }
-            for (var d : dice) {
-                if (d.id.equals(pieceId)) {
-                    d.x = x;
-                    d.y = y;
-                    return;
-                }
-            }
+    private void updatePieceRot(int handle, double rot) {
+        boardVersion++;
+        if (journal != null) journal.rotate(handle, rot);
+        if (PieceHandles.isCard(handle)) {
+            cards.rotate(handle, rot);
+            return;
         }
+        if (!chips.rotate(handle, rot)) dice.rotate(handle, rot);
     }
 
-    private void updatePieceRot(String pieceId, double rot) {
-        synchronized (stateLock) {
-            int card = cardIndex(pieceId);
-            if (card >= 0) {
-                cardRot[card] = rot;
-                return;
-            }
-            for (var c : chips) {
-                if (c.id.equals(pieceId)) {
-                    c.rotation = rot;
-                    return;
-                }
-            }
-            for (var d : dice) {
-                if (d.id.equals(pieceId)) {
-                    d.rotation = rot;
-                    return;
-                }
-            }
+    /** Applies a journal to the board being loaded; the journal itself is not open yet, so nothing is journaled again. */
+    private final class Replay implements BoardJournal.Changes {
+        /** The piles the journal has named, resolved as {@link #piles} resolved them. */
+        private final PileRegistry replayed = new PileRegistry();
+
+        @Override
+        public void deal(long seed) {
+            dealDeck(seed);
+        }
+
+        @Override
+        public void resetCards() {
+            resetCardsToDeck();
+        }
+
+        @Override
+        public void move(int handle, double x, double y) {
+            updatePiecePos(handle, x, y);
+        }
+
+        @Override
+        public void moveAll(int[] handles, double x, double y) {
+            placeAll(handles, x, y);
+        }
+
+        @Override
+        public void pile(int playerId, int pile, int[] handles) {
+            replayed.grab(new Msg.PileGrab(playerId, pile, handles, 0, 0));
+        }
+
+        @Override
+        public void movePile(int playerId, int pile, double x, double y) {
+            int[] pieces = replayed.resolve(new Msg.PileMove(playerId, pile, x, y));
+            if (pieces != null) placeAll(pieces, x, y);
+        }
+
+        @Override
+        public void rotate(int handle, double rotation) {
+            updatePieceRot(handle, rotation);
+        }
+
+        @Override
+        public void flip(int handle, boolean back, boolean front, boolean text) {
+            updateCardFlip(handle, back, front, text);
+        }
+
+        @Override
+        public void put(boolean die, int handle, double x, double y, double rotation,
+                        double r, double g, double b, double opacity,
+                        boolean front, boolean back, int sides, int value) {
+            putSpawned(die ? dice : chips, handle, x, y, rotation, r, g, b, opacity, front, back, sides, value);
+        }
+
+        @Override
+        public void remove(int handle) {
+            untrackPiece(handle);
+        }
+
+        @Override
+        public void clearChips() {
+            HeadlessServer.this.clearChips();
+        }
+
+        @Override
+        public void clearDice() {
+            HeadlessServer.this.clearDice();
         }
     }
 
     public static void main(String[] args) throws IOException {
-        HeadlessServer server = new HeadlessServer(ServerAddress.resolvePort(List.of(args)), resolvePassword(List.of(args)));
+        if (List.of(args).contains("--no-compression")) MessageStream.setCompression(false);
+        int port = ServerAddress.resolvePort(List.of(args));
+        String password = resolvePassword(List.of(args));
         // A dedicated server is usually stopped with Ctrl-C or a container SIGTERM rather than a
         // clean stop() call, so flush the board on the way down or the last few minutes of play
         // would be lost.
-        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        if (List.of(args).contains("--rooms")) {
+            RoomServer server = new RoomServer(port, password, RoomServer.resolveIdleMinutes(List.of(args)) * 60_000L);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        } else {
+            HeadlessServer server = new HeadlessServer(port, password);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        }
 
         try {
             Thread.currentThread().join();
@@ -139,6 +139,7 @@ public class HeadlessServerLauncher extends Application {
         Thread startThread = new Thread(() -> {
             try {
                 HeadlessServer started = new HeadlessServer(port, password);
+                started.start();
                 server = started;
                 Platform.runLater(() -> onStarted(started.getPort(), password));
             } catch (IOException e) {
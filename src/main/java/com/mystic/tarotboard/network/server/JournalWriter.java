@@ -0,0 +1,71 @@
+package com.mystic.tarotboard.network.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The thread that writes one or more {@link BoardJournal journals} to disk: whenever a journal has
+ * records waiting, it writes them as one batch and forces them to disk, and meanwhile the next
+ * batch builds up in the journal.
+ *
+ * <p>A lone server has a writer of its own. A {@link RoomServer} shares a few among its rooms,
+ * one beside each {@link BoardWorker}, so hundreds of rooms do not mean hundreds of writer
+ * threads. A journal waiting while the writer syncs another only makes its own next batch
+ * bigger.</p>
+ */
+final class JournalWriter {
+    private final Thread thread;
+    /** The journals with something to write, in the order they asked. Guarded by this. */
+    private final Set<BoardJournal> due = new LinkedHashSet<>();
+    /** Guarded by this. */
+    private boolean stopped;
+
+    /**
+     * @param name the thread's name
+     */
+    JournalWriter(String name) {
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /** Has the writer write what a journal has waiting, after whichever journals asked first. */
+    synchronized void wake(BoardJournal journal) {
+        if (due.add(journal)) notifyAll();
+    }
+
+    /** Ends the writer once it has written what it was asked to. Only after its journals are closed. */
+    synchronized void stop() {
+        stopped = true;
+        notifyAll();
+    }
+
+    private void run() {
+        while (true) {
+            BoardJournal journal;
+            synchronized (this) {
+                while (due.isEmpty() && !stopped) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (due.isEmpty()) return;
+                Iterator<BoardJournal> next = due.iterator();
+                journal = next.next();
+                next.remove();
+            }
+            try {
+                journal.flush();
+            } catch (RuntimeException e) {
+                // One room's journal must not stop the others beside it being written.
+                System.err.println("[TarotBoard] Error writing a board journal: " + e);
+            }
+        }
+    }
+}
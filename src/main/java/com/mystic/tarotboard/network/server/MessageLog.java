@@ -0,0 +1,111 @@
+package com.mystic.tarotboard.network.server;
+
+import com.mystic.tarotboard.network.EncodedMessage;
+import com.mystic.tarotboard.network.NetworkMessage;
+import com.mystic.tarotboard.network.NetworkMessage.Msg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The most recent board-changing messages the server relayed, numbered, so a player whose
+ * connection drops can be sent just what it missed when it reconnects.
+ *
+ * <p>Before, a client that lost its connection for a second came back as a new player and was
+ * sent the whole board again. Every message that changes the board now goes out as a
+ * {@link Msg.Sequenced} carrying its number, the client remembers the last one it got, and on
+ * reconnecting it asks for everything after that. Only the last {@code capacity} messages are
+ * kept, in a ring; a client that has missed more than that is sent the board after all.</p>
+ *
+ * <p>Cursors, player lists and anything sent to one player alone are not logged: they are either
+ * sent again on reconnecting or superseded by the next one. Not thread-safe; {@link GameServer}
+ * locks around it, and relays every logged message under the same lock so the numbers reach each
+ * client in order.</p>
+ */
+final class MessageLog {
+    private final EncodedMessage[] frames;
+    private final int[] excluded;
+    private long nextSeq = 1;
+    private int size;
+
+    /**
+     * Creates an empty log.
+     *
+     * @param capacity how many messages to keep
+     */
+    MessageLog(int capacity) {
+        frames = new EncodedMessage[capacity];
+        excluded = new int[capacity];
+    }
+
+    /**
+     * Whether a message is one that changes the board, and so is numbered and kept.
+     *
+     * @param data the message
+     * @return true if it belongs in the log
+     */
+    static boolean logs(Msg data) {
+        return switch (data) {
+            case Msg.PieceMove ignored -> true;
+            case Msg.PieceMoveBatch ignored -> true;
+            case Msg.PileGrab ignored -> true;
+            case Msg.PileMove ignored -> true;
+            case Msg.PieceRotate ignored -> true;
+            case Msg.PieceFlip ignored -> true;
+            case Msg.PieceToFront ignored -> true;
+            case Msg.SpawnChip ignored -> true;
+            case Msg.SpawnDie ignored -> true;
+            case Msg.DeletePiece ignored -> true;
+            case Msg.DieRoll ignored -> true;
+            case Msg.NewGame ignored -> true;
+            case Msg.ReshuffleCards ignored -> true;
+            case Msg.ResetDice ignored -> true;
+            case Msg.ResetChips ignored -> true;
+            case Msg.CardNamesSync ignored -> true;
+            case Msg.DeckOrder ignored -> true;
+            case Msg.SetupGame ignored -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Numbers a message and keeps it, dropping the oldest if the log is full.
+     *
+     * @param msg       the message, as relayed
+     * @param excludeId the player it is not sent to, its sender, or -1
+     * @return the message wrapped with its number, to send in its place
+     */
+    EncodedMessage append(EncodedMessage msg, int excludeId) {
+        long seq = nextSeq++;
+        EncodedMessage sequenced = EncodedMessage.of(NetworkMessage.of(new Msg.Sequenced(seq, msg.message().data())));
+        int slot = (int) (seq % frames.length);
+        frames[slot] = sequenced;
+        excluded[slot] = excludeId;
+        if (size < frames.length) size++;
+        return sequenced;
+    }
+
+    /** Returns the number of the last message logged, or zero if there has been none. */
+    long lastSeq() {
+        return nextSeq - 1;
+    }
+
+    /**
+     * Returns what a player missed after the given message, in order.
+     *
+     * @param after    the number of the last message the player got
+     * @param playerId the player, whose own messages are left out as they were the first time
+     * @return the messages, or null if some have already been dropped from the log, or
+     * {@code after} is a number that has not been given out yet
+     */
+    List<EncodedMessage> since(long after, int playerId) {
+        long oldest = nextSeq - size;
+        if (after < oldest - 1 || after > lastSeq()) return null;
+        List<EncodedMessage> missed = new ArrayList<>();
+        for (long seq = after + 1; seq < nextSeq; seq++) {
+            int slot = (int) (seq % frames.length);
+            if (excluded[slot] != playerId) missed.add(frames[slot]);
+        }
+        return missed;
+    }
+}
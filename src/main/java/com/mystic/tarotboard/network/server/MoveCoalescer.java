@@ -0,0 +1,259 @@
+package com.mystic.tarotboard.network.server;
+
+import com.mystic.tarotboard.network.NetworkMessage;
+import com.mystic.tarotboard.network.NetworkMessage.Msg;
+import com.mystic.tarotboard.network.PileRegistry;
+import com.mystic.tarotboard.utils.PieceHandles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Holds back piece moves and rotations between relay ticks, keeping only the latest of each.
+ *
+ * <p>Each client throttles its own drags, but a server relaying every move the moment it arrives
+ * still sends each player the sum of everyone else's — several players dragging, or one dragging
+ * a pile, multiplies it again. Between ticks this keeps one entry per piece, so however many
+ * moves arrive for it, each player is sent at most one per tick. A move to where the piece
+ * already is is dropped outright.</p>
+ *
+ * <p>Order is kept exactly as the clients would have seen it, because applying a move also
+ * raises the piece: entries flush in the order of each piece's latest update, and a run of
+ * consecutive pieces moved by the same player to the same spot goes out as one
+ * {@link Msg.PieceMoveBatch}, which raises them in that same order. A pile drag is held as one
+ * entry for the whole pile, kept in that same order, and goes out as the one {@link Msg.PileMove}
+ * it came in as — or as its {@link Msg.PileGrab}, at the latest position, if the grab has not gone
+ * out yet. Anything else — a spawn, a
+ * delete, a flip — is not held here at all; {@link GameServer} flushes this first and then sends
+ * it, so it can never overtake the moves that came before it.</p>
+ *
+ * <p>One table serves every recipient: each player gets the same messages less their own, which
+ * the broadcast already leaves out. Not thread-safe; {@link GameServer} locks around it.</p>
+ */
+final class MoveCoalescer {
+
+    /** A flushed update and the player it must not be echoed to. */
+    record Relay(NetworkMessage message, int excludeId) {
+    }
+
+    /** Keys a held pile drag, alongside the {@code Integer} handles that key single pieces. */
+    private record PileKey(int playerId, int pile) {
+    }
+
+    /** The latest held update for one piece, or for one pile. */
+    private static final class Pending {
+        /** For a pile whose grab has not been sent yet, its pieces; otherwise null. */
+        int[] grabbed;
+        boolean moved;
+        int movePlayerId, moveExcludeId;
+        double x, y;
+        boolean rotated;
+        int rotatePlayerId, rotateExcludeId;
+        double rotation;
+    }
+
+    /** Held updates in the order their pieces (or piles) were last touched. */
+    private final LinkedHashMap<Object, Pending> pending = new LinkedHashMap<>();
+    private final PileRegistry piles = new PileRegistry();
+
+    // Where each piece was last sent or held, by handle, NaN if unknown; for dropping moves that
+    // change nothing. Grown on demand, and cleared at every barrier().
+    private double[] knownX = new double[0];
+    private double[] knownY = new double[0];
+    private double[] knownRot = new double[0];
+
+    /**
+     * Holds a message back if it is one this coalesces.
+     *
+     * @param msg       the message being broadcast
+     * @param excludeId the player the broadcast leaves out, usually the one who sent it
+     * @return true if the message was taken (or was redundant); false if the caller must send it
+     */
+    boolean offer(Msg msg, int excludeId) {
+        switch (msg) {
+            case Msg.PieceMove m -> {
+                if (!PieceHandles.isValid(m.piece())) return false;
+                move(m.playerId(), excludeId, m.piece(), m.x(), m.y());
+                return true;
+            }
+            case Msg.PieceMoveBatch m -> {
+                for (int piece : m.pieces()) {
+                    if (!PieceHandles.isValid(piece)) return false;
+                }
+                for (int piece : m.pieces()) move(m.playerId(), excludeId, piece, m.x(), m.y());
+                return true;
+            }
+            case Msg.PieceRotate m -> {
+                if (!PieceHandles.isValid(m.piece())) return false;
+                rotate(m.playerId(), excludeId, m.piece(), m.rotation());
+                return true;
+            }
+            case Msg.PileGrab m -> {
+                for (int piece : m.pieces()) {
+                    if (!PieceHandles.isValid(piece)) return false;
+                }
+                piles.grab(m);
+                Pending p = movePile(m.playerId(), excludeId, m.pile(), m.pieces(), m.x(), m.y());
+                p.grabbed = m.pieces();
+                return true;
+            }
+            case Msg.PileMove m -> {
+                // A move for a pile this never saw grabbed goes out as it is, and is dropped by
+                // every receiver for the same reason.
+                int[] pieces = piles.resolve(m);
+                if (pieces == null) return false;
+                movePile(m.playerId(), excludeId, m.pile(), pieces, m.x(), m.y());
+                return true;
+            }
+            case Msg.PlayerLeave m -> {
+                piles.forget(m.playerId());
+                return false;
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns whether anything is being held.
+     *
+     * @return true if {@link #drain()} would return anything
+     */
+    boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Takes everything held, as the messages to broadcast in order.
+     *
+     * @return the messages, with consecutive same-spot moves merged into batches
+     */
+    List<Relay> drain() {
+        List<Relay> out = new ArrayList<>();
+        int[] run = new int[16];
+        int runLength = 0;
+        Pending runHead = null;
+        for (var entry : pending.entrySet()) {
+            Pending p = entry.getValue();
+            if (entry.getKey() instanceof PileKey key) {
+                if (runLength > 0) out.add(moveRun(runHead, run, runLength));
+                runLength = 0;
+                runHead = null;
+                Msg msg = p.grabbed != null
+                        ? new Msg.PileGrab(key.playerId(), key.pile(), p.grabbed, p.x, p.y)
+                        : new Msg.PileMove(key.playerId(), key.pile(), p.x, p.y);
+                out.add(new Relay(NetworkMessage.of(msg), p.moveExcludeId));
+                continue;
+            }
+            int piece = (Integer) entry.getKey();
+            if (p.moved) {
+                if (runHead != null && !sameSpot(runHead, p)) {
+                    out.add(moveRun(runHead, run, runLength));
+                    runLength = 0;
+                }
+                if (runLength == 0) runHead = p;
+                if (runLength == run.length) run = Arrays.copyOf(run, runLength * 2);
+                run[runLength++] = piece;
+            }
+            if (p.rotated) {
+                // The rotation raises the piece too, so it has to land before any later move.
+                if (runLength > 0) out.add(moveRun(runHead, run, runLength));
+                runLength = 0;
+                runHead = null;
+                out.add(new Relay(NetworkMessage.of(new Msg.PieceRotate(p.rotatePlayerId, piece, p.rotation)), p.rotateExcludeId));
+            }
+        }
+        if (runLength > 0) out.add(moveRun(runHead, run, runLength));
+        pending.clear();
+        return out;
+    }
+
+    /**
+     * Takes everything held, ahead of a message this does not coalesce, and forgets where every
+     * piece was: that message may move pieces without saying where — a new game or a reshuffle
+     * puts every card back on the deck — so a later move back to a remembered spot is no longer
+     * redundant.
+     *
+     * @return as {@link #drain()}
+     */
+    List<Relay> barrier() {
+        List<Relay> out = pending.isEmpty() ? List.of() : drain();
+        Arrays.fill(knownX, Double.NaN);
+        Arrays.fill(knownY, Double.NaN);
+        Arrays.fill(knownRot, Double.NaN);
+        return out;
+    }
+
+    private void move(int playerId, int excludeId, int piece, double x, double y) {
+        grow(piece);
+        if (knownX[piece] == x && knownY[piece] == y) return;
+        knownX[piece] = x;
+        knownY[piece] = y;
+        Pending p = touch(piece);
+        p.moved = true;
+        p.movePlayerId = playerId;
+        p.moveExcludeId = excludeId;
+        p.x = x;
+        p.y = y;
+    }
+
+    private void rotate(int playerId, int excludeId, int piece, double rotation) {
+        grow(piece);
+        if (knownRot[piece] == rotation) return;
+        knownRot[piece] = rotation;
+        Pending p = touch(piece);
+        p.rotated = true;
+        p.rotatePlayerId = playerId;
+        p.rotateExcludeId = excludeId;
+        p.rotation = rotation;
+    }
+
+    private Pending movePile(int playerId, int excludeId, int pile, int[] pieces, double x, double y) {
+        for (int piece : pieces) {
+            grow(piece);
+            knownX[piece] = x;
+            knownY[piece] = y;
+        }
+        Pending p = touch(new PileKey(playerId, pile));
+        p.moved = true;
+        p.movePlayerId = playerId;
+        p.moveExcludeId = excludeId;
+        p.x = x;
+        p.y = y;
+        return p;
+    }
+
+    /** Returns the entry for a piece or pile, moved to the back as its most recent update. */
+    private Pending touch(Object key) {
+        Pending p = pending.remove(key);
+        if (p == null) p = new Pending();
+        pending.put(key, p);
+        return p;
+    }
+
+    private void grow(int piece) {
+        if (piece < knownX.length) return;
+        int size = Math.min(PieceHandles.MAX_HANDLE, Math.max(piece + 1, knownX.length * 2));
+        int old = knownX.length;
+        knownX = Arrays.copyOf(knownX, size);
+        knownY = Arrays.copyOf(knownY, size);
+        knownRot = Arrays.copyOf(knownRot, size);
+        Arrays.fill(knownX, old, size, Double.NaN);
+        Arrays.fill(knownY, old, size, Double.NaN);
+        Arrays.fill(knownRot, old, size, Double.NaN);
+    }
+
+    private static boolean sameSpot(Pending a, Pending b) {
+        return a.movePlayerId == b.movePlayerId && a.moveExcludeId == b.moveExcludeId && a.x == b.x && a.y == b.y;
+    }
+
+    private static Relay moveRun(Pending head, int[] run, int length) {
+        Msg msg = length == 1
+                ? new Msg.PieceMove(head.movePlayerId, run[0], head.x, head.y)
+                : new Msg.PieceMoveBatch(head.movePlayerId, Arrays.copyOf(run, length), head.x, head.y);
+        return new Relay(NetworkMessage.of(msg), head.moveExcludeId);
+    }
+}
@@ -0,0 +1,201 @@
+package com.mystic.tarotboard.network.server;
+
+import com.mystic.tarotboard.utils.PieceHandles;
+
+import java.util.Arrays;
+
+/**
+ * The chips, or the dice, {@link HeadlessServer} tracks: one primitive column per property,
+ * a row per piece.
+ *
+ * <p>Each piece used to be an object in a list, found through a handle-indexed array of them but
+ * removed from the list by a scan. Here a piece is a slot in the columns, and a table indexed by
+ * {@code handle - FIRST_SPAWNED} gives its slot, so a move, a rotation and a removal are each an
+ * index or two and never allocate; a removal moves the last row into the gap. The rows are
+ * therefore in no particular order. A sync or save copies whole columns.</p>
+ *
+ * <p>Chips leave {@code sides} and {@code value} at zero; dice have no faces to show or hide and
+ * leave {@code frontVis} and {@code backVis} false. Not thread-safe; the board thread owns it.</p>
+ */
+final class PieceStore {
+    private int[] handles = new int[16];
+    private double[] xs = new double[16];
+    private double[] ys = new double[16];
+    private double[] rotations = new double[16];
+    private double[] reds = new double[16];
+    private double[] greens = new double[16];
+    private double[] blues = new double[16];
+    private double[] opacities = new double[16];
+    private boolean[] frontVis = new boolean[16];
+    private boolean[] backVis = new boolean[16];
+    private int[] sides = new int[16];
+    private int[] values = new int[16];
+    private int size;
+    /** Each handle's slot plus one, by {@code handle - FIRST_SPAWNED}; zero where there is none. Grown on demand. */
+    private int[] slotOf = new int[64];
+
+    /** Returns how many pieces are stored. */
+    int size() {
+        return size;
+    }
+
+    /** Returns whether a piece with the handle is stored. */
+    boolean contains(int handle) {
+        return slot(handle) >= 0;
+    }
+
+    /**
+     * Stores a piece, replacing any with the same handle.
+     *
+     * @param handle the piece's handle, at least {@link PieceHandles#FIRST_SPAWNED}
+     */
+    void put(int handle, double x, double y, double rotation,
+             double r, double g, double b, double opacity,
+             boolean front, boolean back, int dieSides, int dieValue) {
+        int slot = slot(handle);
+        if (slot < 0) {
+            int key = handle - PieceHandles.FIRST_SPAWNED;
+            if (key >= slotOf.length) slotOf = Arrays.copyOf(slotOf, Math.max(slotOf.length * 2, key + 1));
+            if (size == handles.length) grow();
+            slot = size++;
+            slotOf[key] = slot + 1;
+            handles[slot] = handle;
+        }
+        xs[slot] = x;
+        ys[slot] = y;
+        rotations[slot] = rotation;
+        reds[slot] = r;
+        greens[slot] = g;
+        blues[slot] = b;
+        opacities[slot] = opacity;
+        frontVis[slot] = front;
+        backVis[slot] = back;
+        sides[slot] = dieSides;
+        values[slot] = dieValue;
+    }
+
+    /** Moves a piece; returns false if there is none with the handle. */
+    boolean move(int handle, double x, double y) {
+        int slot = slot(handle);
+        if (slot < 0) return false;
+        xs[slot] = x;
+        ys[slot] = y;
+        return true;
+    }
+
+    /** Turns a piece; returns false if there is none with the handle. */
+    boolean rotate(int handle, double rotation) {
+        int slot = slot(handle);
+        if (slot < 0) return false;
+        rotations[slot] = rotation;
+        return true;
+    }
+
+    /** Removes a piece, filling its slot with the last one; returns false if there is none with the handle. */
+    boolean remove(int handle) {
+        int slot = slot(handle);
+        if (slot < 0) return false;
+        slotOf[handle - PieceHandles.FIRST_SPAWNED] = 0;
+        int last = --size;
+        if (slot != last) {
+            handles[slot] = handles[last];
+            xs[slot] = xs[last];
+            ys[slot] = ys[last];
+            rotations[slot] = rotations[last];
+            reds[slot] = reds[last];
+            greens[slot] = greens[last];
+            blues[slot] = blues[last];
+            opacities[slot] = opacities[last];
+            frontVis[slot] = frontVis[last];
+            backVis[slot] = backVis[last];
+            sides[slot] = sides[last];
+            values[slot] = values[last];
+            slotOf[handles[slot] - PieceHandles.FIRST_SPAWNED] = slot + 1;
+        }
+        return true;
+    }
+
+    /** Removes every piece. */
+    void clear() {
+        for (int i = 0; i < size; i++) slotOf[handles[i] - PieceHandles.FIRST_SPAWNED] = 0;
+        size = 0;
+    }
+
+    /** Returns one past the highest handle stored, or {@link PieceHandles#FIRST_SPAWNED} if none is. */
+    int handleBound() {
+        int bound = PieceHandles.FIRST_SPAWNED;
+        for (int i = 0; i < size; i++) bound = Math.max(bound, handles[i] + 1);
+        return bound;
+    }
+
+    // Copies of the columns, a row per piece in slot order; the same order in each.
+
+    int[] handles() {
+        return Arrays.copyOf(handles, size);
+    }
+
+    double[] xs() {
+        return Arrays.copyOf(xs, size);
+    }
+
+    double[] ys() {
+        return Arrays.copyOf(ys, size);
+    }
+
+    double[] rotations() {
+        return Arrays.copyOf(rotations, size);
+    }
+
+    double[] reds() {
+        return Arrays.copyOf(reds, size);
+    }
+
+    double[] greens() {
+        return Arrays.copyOf(greens, size);
+    }
+
+    double[] blues() {
+        return Arrays.copyOf(blues, size);
+    }
+
+    double[] opacities() {
+        return Arrays.copyOf(opacities, size);
+    }
+
+    boolean[] frontVis() {
+        return Arrays.copyOf(frontVis, size);
+    }
+
+    boolean[] backVis() {
+        return Arrays.copyOf(backVis, size);
+    }
+
+    int[] sides() {
+        return Arrays.copyOf(sides, size);
+    }
+
+    int[] values() {
+        return Arrays.copyOf(values, size);
+    }
+
+    private int slot(int handle) {
+        int key = handle - PieceHandles.FIRST_SPAWNED;
+        return key >= 0 && key < slotOf.length ? slotOf[key] - 1 : -1;
+    }
+
+    private void grow() {
+        int n = handles.length * 2;
+        handles = Arrays.copyOf(handles, n);
+        xs = Arrays.copyOf(xs, n);
+        ys = Arrays.copyOf(ys, n);
+        rotations = Arrays.copyOf(rotations, n);
+        reds = Arrays.copyOf(reds, n);
+        greens = Arrays.copyOf(greens, n);
+        blues = Arrays.copyOf(blues, n);
+        opacities = Arrays.copyOf(opacities, n);
+        frontVis = Arrays.copyOf(frontVis, n);
+        backVis = Arrays.copyOf(backVis, n);
+        sides = Arrays.copyOf(sides, n);
+        values = Arrays.copyOf(values, n);
+    }
+}
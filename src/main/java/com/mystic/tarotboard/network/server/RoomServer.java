@@ -0,0 +1,483 @@
+package com.mystic.tarotboard.network.server;
+
+import com.mystic.tarotboard.network.MessageStream;
+import com.mystic.tarotboard.utils.PlatformPaths;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A dedicated server hosting many tables on one port: each is a room with its own board,
+ * operators, deck and save, served by a {@link HeadlessServer} of its own.
+ *
+ * <p>A client names the room it wants in its greeting; see {@link MessageStream#hello(String)}.
+ * One that names none gets the default room, whose save is the one a lone server keeps, so a
+ * server switched over to rooms carries on the game it had. A room is opened the first time
+ * someone asks for it. Names are case-insensitive, since each is also a file name.</p>
+ *
+ * <p>A room nobody has been in for the {@link #resolveIdleMinutes idle period} is hibernated: its
+ * board is saved, its journal is closed, and the room is let go, so the memory a server holds
+ * follows the tables in play rather than every table ever opened. The next player to ask for it
+ * opens it again from the save, as if the server had restarted.</p>
+ *
+ * <p>A lone server runs network loops, a board thread, a journal writer and an autosave thread
+ * for its one board; here every room shares the same few. The {@link GameServer#NIO_LOOPS network
+ * loops} read a new connection's greeting and then serve it for its room. There is one
+ * {@link BoardWorker} per core, and each room is pinned, when it opens, to the one with the fewest
+ * rooms, so its board is only ever touched by that thread; its journal is written by the
+ * {@link JournalWriter} beside that worker. One autosave thread saves whichever rooms are due, hibernates
+ * the idle ones, and now and then logs how many rooms are open, the players in each, and the heap
+ * they take.</p>
+ */
+public class RoomServer {
+
+    /** The longest room name, in characters. */
+    public static final int MAX_NAME_LENGTH = 32;
+
+    /** Most rooms open at once; a connection asking for another is turned away. */
+    private static final int MAX_ROOMS = 1000;
+
+    /** How many threads the rooms' boards are sharded across. */
+    private static final int WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    /** How often the rooms, their players and their memory are logged. */
+    private static final long STATS_INTERVAL_MS = 60_000;
+
+    /** How many minutes a room may stay empty before it is hibernated, unless configured otherwise. */
+    public static final int DEFAULT_IDLE_MINUTES = 10;
+
+    private final ServerSocketChannel channel;
+    private final GameServer.NioLoop[] loops;
+    private final BoardWorker[] workers;
+    /** The rooms' journal writers, one beside each of {@link #workers}. */
+    private final JournalWriter[] journalWriters;
+    /** How many rooms are pinned to each of {@link #workers}. Guarded by itself. */
+    private final int[] pinned;
+    private final String password;
+    /** How long a room may stay empty before it is hibernated; 0 never to. */
+    private final long idleMs;
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+    private Thread autosaveThread;
+    private volatile boolean running = true;
+
+    /**
+     * A room and the worker it is pinned to. {@code board} is set by that worker once it has
+     * opened the room, and read by the network loops it then hands connections to. A room is in
+     * {@link #rooms} from when it is first asked for until it is hibernated.
+     */
+    private static final class Room {
+        final String name;
+        /** Which of {@link #workers} the room is pinned to. */
+        final int slot;
+        final BoardWorker worker;
+        volatile HeadlessServer board;
+        /** When the room was first seen empty, or 0 while it has players. Autosave thread only. */
+        long emptySince;
+
+        Room(String name, int slot, BoardWorker worker) {
+            this.name = name;
+            this.slot = slot;
+            this.worker = worker;
+        }
+    }
+
+    /**
+     * Creates a room server on the given port, hibernating rooms after
+     * {@link #DEFAULT_IDLE_MINUTES}. No room is open until someone asks for one.
+     *
+     * @param port     the port to listen on
+     * @param password the operator password of every room (maybe empty for no auth)
+     * @throws IOException if the server socket cannot be opened
+     */
+    public RoomServer(int port, String password) throws IOException {
+        this(port, password, DEFAULT_IDLE_MINUTES * 60_000L);
+    }
+
+    /**
+     * Creates a room server on the given port. No room is open until someone asks for one, and
+     * no one can ask until the server is {@link #start started}.
+     *
+     * @param port     the port to listen on
+     * @param password the operator password of every room (maybe empty for no auth)
+     * @param idleMs   how long a room may stay empty before it is hibernated; 0 never to
+     * @throws IOException if the server socket cannot be opened
+     */
+    public RoomServer(int port, String password, long idleMs) throws IOException {
+        this.password = password;
+        this.idleMs = idleMs;
+        channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(port));
+        channel.configureBlocking(false);
+        loops = new GameServer.NioLoop[GameServer.NIO_LOOPS];
+        for (int i = 0; i < loops.length; i++) loops[i] = new GameServer.NioLoop("tarotboard-nio-" + i);
+        workers = new BoardWorker[WORKERS];
+        pinned = new int[WORKERS];
+        journalWriters = new JournalWriter[WORKERS];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new BoardWorker("tarotboard-board-" + i, HeadlessServer.RELAY_TICK_MS);
+            journalWriters[i] = new JournalWriter("tarotboard-journal-" + i);
+        }
+    }
+
+    /**
+     * Starts the board workers, the network loops and the autosave thread, and begins taking
+     * connections.
+     *
+     * @throws IOException if the port cannot be listened on
+     */
+    public void start() throws IOException {
+        loops[0].listen(channel, loops, this::accepted);
+        for (JournalWriter writer : journalWriters) writer.start();
+        for (BoardWorker worker : workers) worker.start();
+        for (GameServer.NioLoop loop : loops) loop.thread.start();
+        autosaveThread = new Thread(this::runAutosave, "tarotboard-autosave");
+        autosaveThread.setDaemon(true);
+        autosaveThread.start();
+        System.out.println("[TarotBoard] Room server started on port " + getPort() + " ("
+                + workers.length + " board workers, " + loops.length + " network loops)"
+                + (password.isEmpty() ? "" : " (operator auth enabled)")
+                + (idleMs > 0 ? "; idle rooms hibernate after " + idleMs / 1000 + "s" : ""));
+    }
+
+    /**
+     * Resolves how many minutes a room may stay empty before it is hibernated: an explicit
+     * {@code --room-idle=N} or {@code --room-idle N} argument first, then the
+     * {@code ROOM_IDLE_MINUTES} environment variable, then {@link #DEFAULT_IDLE_MINUTES}. Zero
+     * keeps every room open until the server stops.
+     *
+     * @param args the command-line arguments
+     * @return the idle period in minutes
+     * @throws IllegalArgumentException if the value is not a whole number of minutes, 0 or more
+     */
+    public static int resolveIdleMinutes(List<String> args) {
+        String value = null;
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (arg.startsWith("--room-idle=")) {
+                value = arg.substring("--room-idle=".length());
+            } else if (arg.equals("--room-idle") && i + 1 < args.size()) {
+                value = args.get(++i);
+            }
+        }
+        if (value == null) value = System.getenv("ROOM_IDLE_MINUTES");
+        if (value == null || value.isBlank()) return DEFAULT_IDLE_MINUTES;
+        try {
+            int minutes = Integer.parseInt(value.trim());
+            if (minutes >= 0) return minutes;
+        } catch (NumberFormatException ignored) {
+            // Reported below, with the value.
+        }
+        throw new IllegalArgumentException("Room idle period must be a whole number of minutes, 0 or more: " + value);
+    }
+
+    /**
+     * Returns whether a name can be a room's: one to {@link #MAX_NAME_LENGTH} letters, digits,
+     * hyphens and underscores.
+     *
+     * @param name the name
+     * @return true if it is allowed
+     */
+    public static boolean isValidName(String name) {
+        if (name.isEmpty() || name.length() > MAX_NAME_LENGTH) return false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean ok = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_';
+            if (!ok) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     *
+     * @return the local port
+     */
+    public int getPort() {
+        return channel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops the server: saves and closes every room, and releases the port.
+     */
+    public void stop() {
+        running = false;
+        if (autosaveThread != null) autosaveThread.interrupt();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        for (Room room : rooms.values()) {
+            HeadlessServer board = room.board;
+            if (board != null) board.stop();
+        }
+        for (BoardWorker worker : workers) worker.stop(HeadlessServer.BOARD_WAIT_MS);
+        for (JournalWriter writer : journalWriters) writer.stop();
+        for (GameServer.NioLoop loop : loops) loop.stop();
+    }
+
+    /** Reads the greeting of a connection the first loop accepted, on the loop it was dealt to. */
+    private void accepted(SocketChannel channel, GameServer.NioLoop target) throws IOException {
+        target.execute(() -> new Greeter(channel, target).register());
+    }
+
+    /** Pins a room to the worker with the fewest rooms. */
+    private Room pin(String name) {
+        synchronized (pinned) {
+            int least = 0;
+            for (int i = 1; i < pinned.length; i++) {
+                if (pinned[i] < pinned[least]) least = i;
+            }
+            pinned[least]++;
+            return new Room(name, least, workers[least]);
+        }
+    }
+
+    private void unpin(Room room) {
+        synchronized (pinned) {
+            pinned[room.slot]--;
+        }
+    }
+
+    /**
+     * Hands a connection to its room, opening the room on its worker first if it is not open yet.
+     * Called on the loop serving the connection.
+     */
+    private void route(String name, SocketChannel client, GameServer.NioLoop loop, ByteBuffer alreadyRead) throws IOException {
+        Room room = rooms.get(name);
+        if (room == null) {
+            if (rooms.size() >= MAX_ROOMS) {
+                System.err.println("[TarotBoard] Refused a connection for room '" + name + "': " + MAX_ROOMS + " rooms are open");
+                refuse(client, alreadyRead);
+                return;
+            }
+            room = rooms.computeIfAbsent(name, this::pin);
+        }
+        // A board that has just hibernated turns the connection back, and it waits for the room
+        // to open again like any other.
+        HeadlessServer board = room.board;
+        if (board != null && board.adopt(client, loop, alreadyRead)) return;
+        Room opening = room;
+        opening.worker.execute(() -> {
+            if (rooms.get(opening.name) != opening) {
+                // Hibernated while this waited behind it; ask again, for the room as it is now.
+                try {
+                    loop.execute(() -> route(opening.name, client, loop, alreadyRead));
+                } catch (IOException e) {
+                    refuse(client, alreadyRead);
+                }
+                return;
+            }
+            if (opening.board == null && running) {
+                try {
+                    opening.board = HeadlessServer.openRoom(opening.name, saveFileOf(opening.name),
+                            password, opening.worker, journalWriters[opening.slot], loops);
+                } catch (Throwable t) {
+                    System.err.println("[TarotBoard] Could not open room '" + opening.name + "': " + t);
+                }
+            }
+            HeadlessServer opened = opening.board;
+            if (opened == null || !running) {
+                refuse(client, alreadyRead);
+                return;
+            }
+            try {
+                loop.execute(() -> {
+                    if (!opened.adopt(client, loop, alreadyRead)) route(opening.name, client, loop, alreadyRead);
+                });
+            } catch (IOException e) {
+                refuse(client, alreadyRead);
+            }
+        });
+    }
+
+    private static void refuse(SocketChannel client, ByteBuffer alreadyRead) {
+        GameServer.READ_BUFFERS.release(alreadyRead);
+        try {
+            client.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /** Where a room's board is saved; the default room's is the lone server's save. */
+    private static Path saveFileOf(String room) {
+        return Path.of(room.isEmpty() ? PlatformPaths.getServerSaveFilePath() : PlatformPaths.getServerRoomSaveFilePath(room));
+    }
+
+    /** Saves whichever rooms are due, hibernates the idle ones, and logs the rooms now and then. */
+    private void runAutosave() {
+        long lastStats = System.nanoTime();
+        while (running) {
+            try {
+                Thread.sleep(HeadlessServer.SNAPSHOT_CHECK_MS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            long now = System.currentTimeMillis();
+            for (Room room : rooms.values()) {
+                HeadlessServer board = room.board;
+                if (board == null) continue;
+                board.autosave();
+                if (board.playerCount() > 0) {
+                    room.emptySince = 0;
+                } else if (room.emptySince == 0) {
+                    room.emptySince = now;
+                } else if (idleMs > 0 && now - room.emptySince >= idleMs) {
+                    room.emptySince = 0;
+                    hibernate(room, board);
+                }
+            }
+            if (System.nanoTime() - lastStats >= STATS_INTERVAL_MS * 1_000_000L) {
+                lastStats = System.nanoTime();
+                logStats();
+            }
+        }
+    }
+
+    /**
+     * Hibernates a room on its worker, unless someone has joined it, or is partway through
+     * joining it, since it was found idle. A join already queued on the worker finds the room
+     * gone and opens it again.
+     */
+    private void hibernate(Room room, HeadlessServer board) {
+        room.worker.execute(() -> {
+            if (room.board != board || !running || !board.hibernate()) return;
+            rooms.remove(room.name, room);
+            unpin(room);
+            room.board = null;
+            System.out.println("[TarotBoard" + (room.name.isEmpty() ? "" : "/" + room.name) + "] "
+                    + (room.name.isEmpty() ? "Default room" : "Room") + " hibernated after "
+                    + idleMs / 1000 + "s idle");
+        });
+    }
+
+    /**
+     * Logs the open rooms, the players in each, and the heap in use. Memory is not counted room
+     * by room: the heap in use over the rooms open is what a room costs, near enough to size a
+     * machine by.
+     */
+    private void logStats() {
+        Map<String, Integer> players = new TreeMap<>();
+        int total = 0;
+        for (Room room : rooms.values()) {
+            HeadlessServer board = room.board;
+            if (board == null) continue;
+            int n = board.playerCount();
+            players.put(room.name.isEmpty() ? "(default)" : room.name, n);
+            total += n;
+        }
+        if (players.isEmpty()) return;
+        Runtime rt = Runtime.getRuntime();
+        long used = rt.totalMemory() - rt.freeMemory();
+        System.out.println("[TarotBoard] " + players.size() + " rooms, " + total + " players; "
+                + (used >> 20) + " MiB heap in use, about " + (used / players.size() >> 10) + " KiB per room");
+        System.out.println("[TarotBoard] Players by room: " + players);
+    }
+
+    /**
+     * A connection whose greeting is still being read, to learn which room it is for. Once it
+     * has all of it, the connection goes to the room with the bytes read so far, the greeting
+     * still in them, and the room's server greets it back.
+     */
+    private final class Greeter implements GameServer.NioLoop.Client {
+        private final SocketChannel client;
+        private final GameServer.NioLoop loop;
+        private final long deadline = System.currentTimeMillis() + MessageStream.HANDSHAKE_TIMEOUT_MS;
+        private SelectionKey key;
+        /** Bytes read so far, in write mode; null until the first arrive, and once handed on. */
+        private ByteBuffer in;
+        /** Set once the connection has gone to its room, which closes it from then on. */
+        private boolean routed;
+
+        Greeter(SocketChannel client, GameServer.NioLoop loop) {
+            this.client = client;
+            this.loop = loop;
+        }
+
+        /** Joins the loop's selector. Called on the loop thread. */
+        void register() throws IOException {
+            key = client.register(loop.selector, SelectionKey.OP_READ, this);
+            loop.handshaking.add(this);
+        }
+
+        @Override
+        public void ready() {
+            try {
+                if (in == null) in = GameServer.READ_BUFFERS.acquire();
+                if (client.read(in) < 0) {
+                    close();
+                    return;
+                }
+                String room = room();
+                if (room == null) return;
+                // The room's server reads from here on; until it has the connection, nobody does.
+                key.interestOps(0);
+                ByteBuffer alreadyRead = in;
+                in = null;
+                route(room, client, loop, alreadyRead);
+                routed = true;
+            } catch (IOException | CancelledKeyException e) {
+                close();
+            }
+        }
+
+        /**
+         * Returns the room the greeting asks for, or null if it has not all arrived yet.
+         *
+         * @throws IOException if it is not a greeting this build speaks, or names no room that may exist
+         */
+        private String room() throws IOException {
+            in.flip();
+            try {
+                if (in.remaining() < 2) return null;
+                if (MessageStream.isStreamHeader(in.get(0), in.get(1))) {
+                    IOException outdated = MessageStream.outdated("The client");
+                    System.err.println("[TarotBoard] Refused a connection: " + outdated.getMessage());
+                    throw outdated;
+                }
+                int length = MessageStream.greetingLength(in);
+                if (length < 0 || in.remaining() < length) return null;
+                byte[] hello = new byte[MessageStream.HELLO_LENGTH];
+                in.get(0, hello);
+                MessageStream.checkHello(hello);
+                String room = MessageStream.room(in).toLowerCase(Locale.ROOT);
+                if (!room.isEmpty() && !isValidName(room)) throw new IOException("bad room name " + room);
+                return room;
+            } finally {
+                in.compact();
+            }
+        }
+
+        @Override
+        public boolean awaitingGreeting(long now) {
+            if (routed || !client.isOpen()) return false;
+            if (now <= deadline) return true;
+            close();
+            return false;
+        }
+
+        @Override
+        public void close() {
+            if (routed) return;
+            if (key != null) key.cancel();
+            if (in != null) {
+                GameServer.READ_BUFFERS.release(in);
+                in = null;
+            }
+            try {
+                client.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
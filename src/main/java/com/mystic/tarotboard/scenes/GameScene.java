@@ -11,6 +11,8 @@ import com.mystic.tarotboard.utils.Styles;
 import com.mystic.tarotboard.utils.UIUtils;
 import javafx.animation.PauseTransition;
 import javafx.collections.FXCollections;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
 import javafx.geometry.Point2D;
 import javafx.geometry.Pos;
 import javafx.scene.Group;
@@ -766,6 +768,15 @@ public class GameScene {
         return gameContent.sceneToLocal(scene.getWidth() / 2, scene.getHeight() / 2);
     }
 
+    /**
+     * Returns what the player can currently see, in board coordinates, by the same conversion as
+     * {@link #visibleBoardCentre()}; it shrinks as they zoom in. Empty until the scene has been
+     * laid out in a window.
+     */
+    public Bounds visibleBoardBounds() {
+        return gameContent.sceneToLocal(new BoundingBox(0, 0, scene.getWidth(), scene.getHeight()));
+    }
+
     /**
      * Returns the background pane for the game board.
      *
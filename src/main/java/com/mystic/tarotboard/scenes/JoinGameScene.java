@@ -32,6 +32,9 @@ public class JoinGameScene {
     private final Label cursorStatusLabel;
     private final Label operatorStatusLabel;
     private final Label networkStatusLabel;
+    private final ProgressBar syncProgressBar;
+    private final Label syncProgressLabel;
+    private final HBox syncProgressRow;
 
     /**
      * Constructs the join game scene with all join-specific controls.
@@ -90,6 +93,17 @@ public class JoinGameScene {
         networkStatusLabel.setStyle(Styles.mpLabel());
         networkStatusLabel.setAlignment(Pos.CENTER);
 
+        syncProgressBar = new ProgressBar(0);
+        syncProgressBar.setPrefWidth(250);
+        syncProgressLabel = new Label("");
+        syncProgressLabel.setStyle(Styles.mpSmallLabel());
+        syncProgressRow = new HBox(10, syncProgressBar, syncProgressLabel);
+        syncProgressRow.setAlignment(Pos.CENTER);
+        syncProgressRow.setMaxWidth(Double.MAX_VALUE);
+        // Only takes up room while a table is loading.
+        syncProgressRow.managedProperty().bind(syncProgressRow.visibleProperty());
+        syncProgressRow.setVisible(false);
+
         VBox layout = new VBox(10);
         layout.setAlignment(Pos.CENTER);
         layout.setFillWidth(true);
@@ -130,7 +144,8 @@ public class JoinGameScene {
         backToStartBtn.setStyle(Styles.mpBtn());
         backToStartBtn.setOnAction(event -> tarotBoard.switchToStart());
 
-        layout.getChildren().addAll(title, nameRow, joinRow, opRow, cursorRow, networkStatusLabel, backToStartBtn);
+        layout.getChildren().addAll(title, nameRow, joinRow, opRow, cursorRow, networkStatusLabel, syncProgressRow,
+                backToStartBtn);
 
         StackPane root = new StackPane();
         mpBg = new Pane();
@@ -272,6 +287,26 @@ public class JoinGameScene {
         return networkStatusLabel;
     }
 
+    /**
+     * Shows how much of the table has arrived since joining. The board is usable throughout; the
+     * chunks still to come only fill in where the pieces are.
+     *
+     * @param applied how many chunks of the board sync have been applied
+     * @param total   how many the sync was announced with
+     */
+    public void showSyncProgress(int applied, int total) {
+        syncProgressBar.setProgress(total > 0 ? (double) applied / total : 0);
+        syncProgressLabel.setText("Loading table: " + applied + " / " + total);
+        syncProgressRow.setVisible(true);
+    }
+
+    /**
+     * Hides the join progress, once the table has fully arrived or the game has been left.
+     */
+    public void hideSyncProgress() {
+        syncProgressRow.setVisible(false);
+    }
+
     private void addColorPickerCss(Scene s) {
         var url = getClass().getResource("/com/mystic/tarotboard/assets/colorpicker.css");
         if (url != null) s.getStylesheets().add(url.toExternalForm());
@@ -1,6 +1,12 @@
 package com.mystic.tarotboard.utils;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 /**
  * The one definition of what a deck contains.
@@ -74,4 +80,116 @@ public final class CardCatalog {
 
     /** How many cards a full deck holds: every suit crossed with every value, plus the wilds. */
     public static final int NUM_CARDS = (SUITS.size() * VALUES.size()) + WILDS.size();
+
+    /**
+     * Where the deck sits, and so where every card goes back to, face down and unrotated, on a
+     * new game or a reshuffle. Both ends of a state sync take it as the baseline that only cards
+     * elsewhere are sent against, so it must be the same on each.
+     */
+    public static final double DECK_X = 50;
+    /** See {@link #DECK_X}. */
+    public static final double DECK_Y = 50;
+
+    /**
+     * Every card's name in catalog order: the wilds, then each suit's values in turn. A deck's
+     * order is sent as positions in this list rather than as the names themselves.
+     */
+    public static final List<String> NAMES = buildNames();
+
+    /**
+     * A hash of {@link #NAMES}, sent alongside every deck order. Two builds whose catalogs differ
+     * in any name or in their order disagree on it, even when the card counts happen to match,
+     * so a deck order from the wrong catalog is refused instead of dealing the wrong cards.
+     */
+    public static final long FINGERPRINT = fingerprint(NAMES);
+
+    /** Each name's position in {@link #NAMES}. */
+    private static final Map<String, Integer> INDEX = new HashMap<>();
+
+    static {
+        for (int i = 0; i < NAMES.size(); i++) INDEX.put(NAMES.get(i), i);
+    }
+
+    private static List<String> buildNames() {
+        List<String> names = new ArrayList<>(WILDS);
+        for (String suit : SUITS) {
+            for (String value : VALUES) {
+                names.add(value + " of " + suit);
+            }
+        }
+        return List.copyOf(names);
+    }
+
+    /** 64-bit FNV-1a over each name's UTF-8 bytes, with a zero byte after each. */
+    private static long fingerprint(List<String> names) {
+        long hash = 0xcbf29ce484222325L;
+        for (String name : names) {
+            for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+                hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+            }
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Shuffles the catalog from a seed, the same way on every build and every machine.
+     *
+     * <p>Fisher–Yates, written out here rather than left to {@code Collections.shuffle}, over a
+     * {@link Random} — whose sequence for a given seed is fixed by its specification. That is what
+     * lets a reshuffle travel as the seed alone: every end expands it to the same deck.</p>
+     *
+     * @param seed the seed
+     * @return the catalog positions of the cards, top of the deck first
+     */
+    public static int[] shuffledOrder(long seed) {
+        int[] order = new int[NUM_CARDS];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Random random = new Random(seed);
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        return order;
+    }
+
+    /**
+     * Returns where each card of a deck sits in the catalog.
+     *
+     * @param names a deck, as card names
+     * @return the catalog positions, or null if the deck is not exactly this catalog's cards
+     */
+    public static int[] orderOf(List<String> names) {
+        if (names.size() != NUM_CARDS) return null;
+        int[] order = new int[names.size()];
+        boolean[] seen = new boolean[NUM_CARDS];
+        for (int i = 0; i < order.length; i++) {
+            Integer index = INDEX.get(names.get(i));
+            if (index == null || seen[index]) return null;
+            seen[index] = true;
+            order[i] = index;
+        }
+        return order;
+    }
+
+    /**
+     * Turns catalog positions back into the deck they describe.
+     *
+     * @param order catalog positions, as from {@link #orderOf} or {@link #shuffledOrder}
+     * @return the card names, or null unless the positions name every card exactly once
+     */
+    public static List<String> namesInOrder(int[] order) {
+        if (order.length != NUM_CARDS) return null;
+        boolean[] seen = new boolean[NUM_CARDS];
+        String[] names = new String[order.length];
+        for (int i = 0; i < order.length; i++) {
+            int index = order[i];
+            if (index < 0 || index >= NUM_CARDS || seen[index]) return null;
+            seen[index] = true;
+            names[i] = NAMES.get(index);
+        }
+        return Arrays.asList(names);
+    }
 }
@@ -5,8 +5,8 @@ import javafx.scene.text.Text;
 import javafx.scene.text.TextAlignment;
 import javafx.scene.text.TextBoundsType;
 
-import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import static com.mystic.tarotboard.TarotBoard.CARD_WIDTH;
 
@@ -50,11 +50,18 @@ public class CardDataHelper {
     }
 
     /**
-     * Randomly shuffles the given card name list in place.
+     * Replaces the given card name list with a freshly shuffled deck.
      *
-     * @param cardNames the list to shuffle
+     * <p>The deck is dealt from a new seed by {@link CardCatalog#shuffledOrder}, not shuffled in
+     * place, so that the seed alone says what the deck is and can be sent to other players in
+     * place of the names.</p>
+     *
+     * @param cardNames the list to fill
+     * @return the seed the deck was shuffled from
      */
-    public static void generateShuffledCardNames(ObservableList<String> cardNames) {
-        Collections.shuffle(cardNames);
+    public static long generateShuffledCardNames(ObservableList<String> cardNames) {
+        long seed = new Random().nextLong();
+        cardNames.setAll(CardCatalog.namesInOrder(CardCatalog.shuffledOrder(seed)));
+        return seed;
     }
 }
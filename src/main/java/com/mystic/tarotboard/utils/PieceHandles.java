@@ -0,0 +1,60 @@
+package com.mystic.tarotboard.utils;
+
+/**
+ * How pieces are named on the wire and in the piece tables on either end.
+ *
+ * <p>A piece used to be named by a string — {@code "card:12"}, {@code "chip:3"} — which both
+ * ends then parsed or hashed on every single move. It is now a plain int handle, so finding the
+ * piece a message is about is an array index:</p>
+ * <ul>
+ *   <li>Card {@code i} is always handle {@code i}, {@code 0 ≤ i < }{@link CardCatalog#NUM_CARDS}.
+ *   Every deck has every card, so these never need allocating.</li>
+ *   <li>Chips and dice take handles from {@link #FIRST_SPAWNED} up. In a networked game only the
+ *   server hands these out, in blocks of {@link #GRANT_SIZE}, so two players spawning at once can
+ *   never pick the same one — which the old per-process {@code chipCounter} happily did, both
+ *   players' first chip being {@code "chip:0"}.</li>
+ * </ul>
+ *
+ * <p>Handles are never reused within a session; a deleted chip's handle simply stays dead.
+ * {@link #MAX_HANDLE} bounds them so a corrupt or hostile message cannot make a receiver grow its
+ * piece table without limit.</p>
+ *
+ * <p>Deliberately free of JavaFX so the headless server can share it.</p>
+ */
+public final class PieceHandles {
+
+    private PieceHandles() {
+    }
+
+    /** The first handle that is not a card; every chip and die handle is at least this. */
+    public static final int FIRST_SPAWNED = CardCatalog.NUM_CARDS;
+
+    /** Exclusive upper bound on any handle; receivers ignore anything at or above it. */
+    public static final int MAX_HANDLE = 1 << 20;
+
+    /** How many spawn handles the server grants a client at once. */
+    public static final int GRANT_SIZE = 256;
+
+    /** A client asks for its next grant once fewer than this many handles are left in the current one. */
+    public static final int GRANT_LOW_WATER = 64;
+
+    /**
+     * Returns whether a handle names a card.
+     *
+     * @param handle the handle
+     * @return true for {@code 0 ≤ handle < NUM_CARDS}
+     */
+    public static boolean isCard(int handle) {
+        return handle >= 0 && handle < FIRST_SPAWNED;
+    }
+
+    /**
+     * Returns whether a handle is in the range any piece could have.
+     *
+     * @param handle the handle
+     * @return true for {@code 0 ≤ handle < MAX_HANDLE}
+     */
+    public static boolean isValid(int handle) {
+        return handle >= 0 && handle < MAX_HANDLE;
+    }
+}
@@ -64,6 +64,16 @@ public class PlatformPaths {
         return getAppDataDir() + File.separator + "server-save.dat";
     }
 
+    /**
+     * Returns the path to the save file of a named room of a multi-room dedicated server.
+     *
+     * @param room the room's name, already checked to be safe as a file name
+     * @return Path to the room's save file, in the rooms subdirectory of app data
+     */
+    public static String getServerRoomSaveFilePath(String room) {
+        return getAppDataDir() + File.separator + "rooms" + File.separator + room + ".dat";
+    }
+
     /**
      * Returns the path to the themes' directory.
      *
@@ -4,7 +4,9 @@ import java.io.*;
 import java.util.*;
 
 /**
- * Serializable record holding the complete game state for save/load operations.
+ * Serializable record holding the complete game state, as saves were written before
+ * {@link com.mystic.tarotboard.board.SnapshotCodec}. Only read now, so that such a save is migrated
+ * on Continue rather than lost.
  *
  * @param cards                list of card states
  * @param chips                list of chip states
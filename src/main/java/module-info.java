@@ -13,6 +13,7 @@ module tarotboard {
     opens com.mystic.tarotboard.network.server to javafx.graphics; // For HeadlessServerLauncher
 
     exports com.mystic.tarotboard;
+    exports com.mystic.tarotboard.board;
     exports com.mystic.tarotboard.network;
     exports com.mystic.tarotboard.network.client;
     exports com.mystic.tarotboard.network.server;